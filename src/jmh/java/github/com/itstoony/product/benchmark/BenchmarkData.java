@@ -0,0 +1,39 @@
+package github.com.itstoony.product.benchmark;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.model.Product.Product;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.LongStream;
+
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static Product product(long id) {
+        return Product.builder()
+                .id(id)
+                .name("Refrigerante " + id)
+                .description("Convenção Guaraná 2L")
+                .productValue(new BigDecimal("10.0"))
+                .quantity(20)
+                .build();
+    }
+
+    static ProductDTO productDTO(long id) {
+        return ProductDTO.builder()
+                .id(id)
+                .name("Refrigerante " + id)
+                .description("Convenção Guaraná 2L")
+                .productValue(new BigDecimal("10.0"))
+                .quantity(20)
+                .build();
+    }
+
+    static List<ProductDTO> productDTOs(int size) {
+        return LongStream.rangeClosed(1, size).mapToObj(BenchmarkData::productDTO).toList();
+    }
+
+}
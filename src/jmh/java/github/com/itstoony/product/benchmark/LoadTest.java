@@ -0,0 +1,280 @@
+package github.com.itstoony.product.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import github.com.itstoony.product.ProductApplication;
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.security.jwt.DataTokenJWT;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load test against an in-process instance of the service, booted with the passed
+ * Spring profiles. Each client repeatedly reads a random product or a list page and the latency
+ * percentiles, throughput, errors and the memory held while the clients were running are written
+ * as JSON, so the platform and virtual thread modes, the servlet and reactive variants (or any two
+ * commits) can be compared with {@link LoadTestReport}.
+ * <p>
+ * Arguments, all optional: {@code variant=mvc profiles=dev clients=200 seconds=30 products=2000 cache=true
+ * out=target/load-dev.json}. The reactive variant needs the reactive Maven profile and reads the
+ * database on every call, {@code cache=false} turns the product cache and search index of the
+ * servlet variant off for a like-for-like comparison.
+ */
+public class LoadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final String REACTIVE_APPLICATION = "github.com.itstoony.product.reactive.ReactiveProductApplication";
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String variant = options.getOrDefault("variant", "mvc");
+        boolean reactive = variant.equals("reactive");
+        String profiles = options.getOrDefault("profiles", "dev") + (reactive ? ",reactive" : "");
+        int clients = Integer.parseInt(options.getOrDefault("clients", "200"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int products = Integer.parseInt(options.getOrDefault("products", "2000"));
+        boolean cache = Boolean.parseBoolean(options.getOrDefault("cache", "true"));
+        Path out = Path.of(options.getOrDefault("out", "target/load-" + profiles.replace(',', '-') + ".json"));
+
+        // devtools would restart the context through this class' main method
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        List<String> properties = new ArrayList<>(List.of(
+                "server.port=0", "logging.level.root=WARN", "logging.file.name=target/load-test.log"));
+        if (!cache) {
+            properties.addAll(List.of("spring.cache.type=none", "product.search.mode=like"));
+        }
+
+        // looked up by name, the reactive variant is only compiled with the reactive Maven profile
+        Class<?> application = reactive ? Class.forName(REACTIVE_APPLICATION) : ProductApplication.class;
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(application)
+                .profiles(profiles.split(","))
+                .properties(properties.toArray(String[]::new))
+                .run();
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        LoadTest loadTest = new LoadTest("http://localhost:" + port);
+        try {
+
+            String token = loadTest.authenticate();
+            List<Long> ids = loadTest.seed(token, products);
+
+            Map<String, Object> result = loadTest.run(token, ids, clients, Duration.ofSeconds(seconds));
+            result.put("variant", variant);
+            result.put("profiles", profiles);
+            result.put("cache", cache);
+            result.put("java", Runtime.version().toString());
+
+            Files.createDirectories(out.toAbsolutePath().getParent());
+            MAPPER.writeValue(out.toFile(), result);
+            System.out.println(MAPPER.writeValueAsString(result));
+        } finally {
+            // the client's threads aren't daemons and would keep the JVM running
+            loadTest.clientExecutor.shutdownNow();
+            context.close();
+        }
+    }
+
+    private final String baseUrl;
+
+    private final ExecutorService clientExecutor;
+
+    private final HttpClient client;
+
+    private LoadTest(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.clientExecutor = Executors.newFixedThreadPool(4);
+        this.client = HttpClient.newBuilder()
+                .executor(clientExecutor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private String authenticate() throws IOException, InterruptedException {
+        String credentials = "{\"login\":\"load-test\",\"password\":\"load-test\"}";
+
+        send(post("/auth/register", null, credentials));
+        HttpResponse<String> login = send(post("/auth/login", null, credentials));
+
+        return MAPPER.readValue(login.body(), DataTokenJWT.class).token();
+    }
+
+    private List<Long> seed(String token, int products) throws IOException, InterruptedException {
+        List<Long> ids = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            ProductDTO dto = BenchmarkData.productDTO(i);
+            dto.setId(null);
+
+            HttpResponse<String> response = send(post("/api/product", token, MAPPER.writeValueAsString(dto)));
+            ids.add(MAPPER.readValue(response.body(), ProductDTO.class).getId());
+        }
+        return ids;
+    }
+
+    private Map<String, Object> run(String token, List<Long> ids, int clients, Duration duration) throws Exception {
+        System.gc();
+        long baselineHeap = usedHeap();
+        int baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        // heap and threads are sampled while the clients run, the clients' own threads are counted apart
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        LongSummaryStatistics heapSamples = new LongSummaryStatistics();
+        AtomicInteger peakThreads = new AtomicInteger();
+        sampler.scheduleAtFixedRate(() -> {
+            synchronized (heapSamples) {
+                heapSamples.accept(usedHeap());
+            }
+            peakThreads.accumulateAndGet(ManagementFactory.getThreadMXBean().getThreadCount(), Math::max);
+        }, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        List<Future<long[]>> futures = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            futures.add(pool.submit(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = nextRequest(token, ids);
+                    long start = System.nanoTime();
+                    try {
+                        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException ex) {
+                        errors.incrementAndGet();
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+
+        long[] all = new long[0];
+        for (Future<long[]> future : futures) {
+            long[] latencies = future.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + latencies.length);
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+        }
+        pool.shutdown();
+        sampler.shutdownNow();
+        Arrays.sort(all);
+
+        double averageHeap;
+        long peakHeap;
+        synchronized (heapSamples) {
+            averageHeap = heapSamples.getCount() == 0 ? baselineHeap : heapSamples.getAverage();
+            peakHeap = heapSamples.getCount() == 0 ? baselineHeap : heapSamples.getMax();
+        }
+        int serverThreads = Math.max(0, peakThreads.get() - clients - baselineThreads);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clients", clients);
+        result.put("seconds", duration.toSeconds());
+        result.put("requests", all.length);
+        result.put("errors", errors.get());
+        result.put("throughputPerSecond", all.length / (double) duration.toSeconds());
+        result.put("p50Millis", percentile(all, 0.50));
+        result.put("p90Millis", percentile(all, 0.90));
+        result.put("p99Millis", percentile(all, 0.99));
+        result.put("maxMillis", percentile(all, 1.0));
+        result.put("heapUsedMb", usedHeap() / (1024.0 * 1024.0));
+        result.put("heapBaselineMb", baselineHeap / (1024.0 * 1024.0));
+        result.put("heapAverageMb", averageHeap / (1024.0 * 1024.0));
+        result.put("heapPeakMb", peakHeap / (1024.0 * 1024.0));
+        result.put("heapPerClientKb", Math.max(0, averageHeap - baselineHeap) / 1024.0 / clients);
+        result.put("liveThreads", ManagementFactory.getThreadMXBean().getThreadCount());
+        result.put("peakThreads", peakThreads.get());
+        result.put("threadsAddedUnderLoad", serverThreads);
+        return result;
+    }
+
+    private HttpRequest nextRequest(String token, List<Long> ids) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(4) == 0) {
+            return get("/api/product/list?name=refrigerante&size=20&page=" + random.nextInt(10), token);
+        }
+        return get("/api/product/" + ids.get(random.nextInt(ids.size())), token);
+    }
+
+    private HttpRequest get(String path, String token) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, String token, String json) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+}
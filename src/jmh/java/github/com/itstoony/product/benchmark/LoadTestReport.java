@@ -0,0 +1,64 @@
+package github.com.itstoony.product.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prints the results of several {@link LoadTest} runs side by side, each metric followed by its
+ * change relative to the first run, e.g. the servlet variant against the reactive one.
+ * <p>
+ * Arguments: the result files, the first one being the baseline.
+ */
+public class LoadTestReport {
+
+    private static final List<String> METRICS = List.of(
+            "throughputPerSecond", "errors",
+            "p50Millis", "p90Millis", "p99Millis", "maxMillis",
+            "heapAverageMb", "heapPeakMb", "heapPerClientKb",
+            "peakThreads", "threadsAddedUnderLoad");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Pass at least two load test result files, the first one is the baseline");
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        List<JsonNode> results = new ArrayList<>(args.length);
+        for (String arg : args) {
+            results.add(mapper.readTree(Path.of(arg).toFile()));
+        }
+
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%-22s", "metric"));
+        for (JsonNode result : results) {
+            table.append(String.format(Locale.ROOT, "%26s", label(result)));
+        }
+        table.append('\n');
+
+        for (String metric : METRICS) {
+            table.append(String.format(Locale.ROOT, "%-22s", metric));
+            double baseline = results.get(0).path(metric).asDouble();
+            for (int i = 0; i < results.size(); i++) {
+                double value = results.get(i).path(metric).asDouble();
+                String cell = i == 0 || baseline == 0
+                        ? String.format(Locale.ROOT, "%.2f", value)
+                        : String.format(Locale.ROOT, "%.2f (%+.0f%%)", value, (value - baseline) * 100 / baseline);
+                table.append(String.format(Locale.ROOT, "%26s", cell));
+            }
+            table.append('\n');
+        }
+
+        System.out.print(table);
+    }
+
+    private static String label(JsonNode result) {
+        return result.path("profiles").asText() + (result.path("cache").asBoolean(true) ? "" : ",no-cache")
+                + " x" + result.path("clients").asInt();
+    }
+
+}
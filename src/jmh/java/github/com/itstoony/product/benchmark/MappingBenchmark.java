@@ -0,0 +1,68 @@
+package github.com.itstoony.product.benchmark;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Product/ProductDTO mapping cost, paid once per returned product on every endpoint. The reflective
+ * ModelMapper is kept as the baseline for the ProductMapper used by the controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    private ModelMapper modelMapper;
+
+    private ProductMapper productMapper;
+
+    private Product product;
+
+    private ProductDTO dto;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        productMapper = new ProductMapper();
+        product = BenchmarkData.product(1L);
+        dto = BenchmarkData.productDTO(1L);
+    }
+
+    @Benchmark
+    public ProductDTO modelMapperToDTO() {
+        return modelMapper.map(product, ProductDTO.class);
+    }
+
+    @Benchmark
+    public Product modelMapperToEntity() {
+        return modelMapper.map(dto, Product.class);
+    }
+
+    @Benchmark
+    public ProductDTO productMapperToDTO() {
+        return productMapper.toDTO(product);
+    }
+
+    @Benchmark
+    public Product productMapperToEntity() {
+        return productMapper.toEntity(dto);
+    }
+
+}
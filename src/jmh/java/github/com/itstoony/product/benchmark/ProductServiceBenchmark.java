@@ -0,0 +1,95 @@
+package github.com.itstoony.product.benchmark;
+
+import github.com.itstoony.product.ProductApplication;
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductService operations against the in-memory H2 database of the dev profile, with the
+ * whole Spring context (caches, search index, transactions) in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    private static final int PRODUCTS = 5_000;
+
+    private ConfigurableApplicationContext context;
+
+    private ProductService productService;
+
+    private long firstId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // devtools would restart the context through this class' main method
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        context = new SpringApplicationBuilder(ProductApplication.class)
+                .profiles("dev")
+                .properties("server.port=0", "logging.level.root=WARN")
+                .run();
+        productService = context.getBean(ProductService.class);
+
+        firstId = productService.register(unsavedProduct(0)).getId();
+        for (int i = 1; i < PRODUCTS; i++) {
+            productService.register(unsavedProduct(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Product> findById() {
+        return productService.findById(randomId());
+    }
+
+    @Benchmark
+    public Page<ProductDTO> listAll() {
+        return productService.listAll("refrigerante 42", PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Optional<Product> addStorage() {
+        return productService.addStorage(randomId(), 1);
+    }
+
+    private Product unsavedProduct(long index) {
+        Product product = BenchmarkData.product(index);
+        product.setId(null);
+        return product;
+    }
+
+    private long randomId() {
+        return firstId + ThreadLocalRandom.current().nextInt(PRODUCTS);
+    }
+
+}
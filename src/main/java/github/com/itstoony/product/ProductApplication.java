@@ -1,6 +1,7 @@
 package github.com.itstoony.product;
 
-import org.modelmapper.ModelMapper;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.mapper.UserMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -9,8 +10,13 @@ import org.springframework.context.annotation.Bean;
 public class ProductApplication {
 
     @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
+    public ProductMapper productMapper() {
+        return new ProductMapper();
+    }
+
+    @Bean
+    public UserMapper userMapper() {
+        return new UserMapper();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,17 @@
+package github.com.itstoony.product.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Caching advice runs outside the transaction advice, so cached entries are only refreshed or
+ * evicted once the surrounding transaction has committed.
+ */
+@Configuration
+@EnableCaching(order = Ordered.HIGHEST_PRECEDENCE)
+public class CacheConfig {
+
+    public static final String PRODUCTS = "products";
+
+}
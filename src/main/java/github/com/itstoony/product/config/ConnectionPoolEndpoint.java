@@ -0,0 +1,60 @@
+package github.com.itstoony.product.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * {@code /actuator/connectionpool}, a point-in-time view of the Hikari pool. Saturation is the share
+ * of the maximum pool size in use; requests waiting for a connection show up as threadsAwaiting
+ * once it reaches 1. The hikaricp.connections.* metrics carry the same figures over time.
+ */
+@Component
+@Endpoint(id = "connectionpool")
+public class ConnectionPoolEndpoint {
+
+    private final DataSource dataSource;
+
+    public ConnectionPoolEndpoint(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the pool state, or null (404) when the data source isn't a started Hikari pool
+     */
+    @ReadOperation
+    public PoolState pool() throws SQLException {
+        if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+            return null;
+        }
+
+        HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        if (pool == null) {
+            return null;
+        }
+
+        int maximum = hikari.getMaximumPoolSize();
+        int active = pool.getActiveConnections();
+
+        return new PoolState(hikari.getPoolName(), active, pool.getIdleConnections(), pool.getTotalConnections(),
+                maximum, pool.getThreadsAwaitingConnection(), maximum == 0 ? 0 : (double) active / maximum);
+    }
+
+    public record PoolState(
+            String pool,
+            int active,
+            int idle,
+            int total,
+            int maximum,
+            int threadsAwaiting,
+            double saturation
+    ) {
+    }
+
+}
@@ -0,0 +1,35 @@
+package github.com.itstoony.product.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Records the {@code @Timed} methods of services and controllers. The timer runs right inside the
+ * caching advice, so service timers include the transaction commit but not the cache hits, which
+ * are already counted by the cache metrics.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public OrderedTimedAspect timedAspect(MeterRegistry registry) {
+        return new OrderedTimedAspect(registry);
+    }
+
+    public static class OrderedTimedAspect extends TimedAspect implements Ordered {
+
+        public OrderedTimedAspect(MeterRegistry registry) {
+            super(registry);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE + 1;
+        }
+
+    }
+
+}
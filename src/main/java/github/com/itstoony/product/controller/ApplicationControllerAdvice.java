@@ -2,7 +2,14 @@ package github.com.itstoony.product.controller;
 
 import github.com.itstoony.product.exception.ApiErrors;
 import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.exception.ServiceOverloadedException;
+import github.com.itstoony.product.exception.StaleVersionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -10,11 +17,15 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 @RestControllerAdvice
+@RequiredArgsConstructor
 public class ApplicationControllerAdvice {
 
+    private final MeterRegistry registry;
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ApiErrors handleValidationExceptions(MethodArgumentNotValidException ex) {
+        count(ex);
         BindingResult bindingResult = ex.getBindingResult();
         return new ApiErrors(bindingResult);
     }
@@ -22,8 +33,45 @@ public class ApplicationControllerAdvice {
     @ExceptionHandler(BusinessException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ApiErrors handleBusinessExceptions(BusinessException ex) {
+        count(ex);
         return new ApiErrors(ex);
     }
 
+    @ExceptionHandler(StaleVersionException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public ApiErrors handleStaleVersionExceptions(StaleVersionException ex) {
+        count(ex);
+        return new ApiErrors(ex);
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ApiErrors handleOptimisticLockingFailures(OptimisticLockingFailureException ex) {
+        count(ex);
+        return new ApiErrors(new StaleVersionException("Product is being modified concurrently, try again"));
+    }
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ApiErrors> handleServiceOverloadedExceptions(ServiceOverloadedException ex) {
+        count(ex);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ApiErrors(ex));
+    }
+
+    /**
+     * Counts handled errors by exception type and by the class and method that threw them, which
+     * tells the different business rule failures apart without using their free text messages.
+     */
+    private void count(Exception ex) {
+        StackTraceElement[] trace = ex.getStackTrace();
+        String source = "unknown";
+        if (trace.length > 0) {
+            String className = trace[0].getClassName();
+            source = className.substring(className.lastIndexOf('.') + 1) + "." + trace[0].getMethodName();
+        }
+
+        registry.counter("api.errors", "exception", ex.getClass().getSimpleName(), "source", source).increment();
+    }
 
-}
\ No newline at end of file
+}
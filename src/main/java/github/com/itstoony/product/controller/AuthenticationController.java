@@ -2,14 +2,15 @@ package github.com.itstoony.product.controller;
 
 import github.com.itstoony.product.dto.AuthenticationData;
 import github.com.itstoony.product.dto.UserDTO;
+import github.com.itstoony.product.mapper.UserMapper;
 import github.com.itstoony.product.model.Product.User;
 import github.com.itstoony.product.security.jwt.DataTokenJWT;
 import github.com.itstoony.product.security.jwt.TokenService;
 import github.com.itstoony.product.service.UserService;
+import io.micrometer.core.annotation.Timed;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -26,17 +27,18 @@ import java.net.URI;
 @RequestMapping("/auth")
 @RequiredArgsConstructor
 @Slf4j
+@Timed(value = "api.handler", histogram = true)
 public class AuthenticationController {
 
     private final AuthenticationManager manager;
     private final TokenService tokenService;
     private final UserService userService;
-    private final ModelMapper modelMapper;
+    private final UserMapper userMapper;
 
 
     @PostMapping("/login")
     public ResponseEntity<DataTokenJWT> login(@RequestBody @Valid AuthenticationData data) {
-        log.info("Login with user: {}", data.login());
+        log.debug("Login with user: {}", data.login());
 
         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(data.login(), data.password());
         Authentication authentication = manager.authenticate(authenticationToken);
@@ -48,8 +50,8 @@ public class AuthenticationController {
 
     @PostMapping("/register")
     public ResponseEntity<Void> register(@RequestBody @Valid UserDTO dto) {
-        log.info("Registering user: {}", dto.getLogin());
-        User user = modelMapper.map(dto, User.class);
+        log.debug("Registering user: {}", dto.getLogin());
+        User user = userMapper.toEntity(dto);
 
         User savedUser = userService.register(user);
 
@@ -1,39 +1,83 @@
 package github.com.itstoony.product.controller;
 
+import github.com.itstoony.product.dto.ProductBatchGetDTO;
+import github.com.itstoony.product.dto.ProductCursor;
+import github.com.itstoony.product.dto.ProductCursorPageDTO;
 import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.ProductETag;
+import github.com.itstoony.product.dto.ProductImportReportDTO;
+import github.com.itstoony.product.dto.ProductStockDTO;
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.dto.StockMovementResultDTO;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.mapper.ProductMapper;
 import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.service.ProductExportService;
+import github.com.itstoony.product.service.ProductImportService;
 import github.com.itstoony.product.service.ProductService;
+import github.com.itstoony.product.stock.StockWriteBehind;
+import github.com.itstoony.product.stream.ProductStockBroadcaster;
+import io.micrometer.core.annotation.Timed;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/product")
 @RequiredArgsConstructor
 @Tag(name = "Product", description = "API responsible for Product management")
 @Slf4j
+@Timed(value = "api.handler", histogram = true)
 public class ProductController {
 
-    private final ModelMapper modelMapper;
+    private static final int MAX_CURSOR_PAGE_SIZE = 500;
+
+    private static final int MAX_BATCH_GET_IDS = 1000;
+
+    private static final int MAX_STREAM_IDS = 100;
+
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ProductMapper productMapper;
 
     private final ProductService productService;
 
+    private final ProductImportService productImportService;
+
+    private final ProductExportService productExportService;
+
+    private final ProductStockBroadcaster productStockBroadcaster;
+
+    private final StockWriteBehind stockWriteBehind;
+
     @PostMapping
     @Operation(summary = "Create a product")
     @ApiResponses(value = {
@@ -42,17 +86,17 @@ public class ProductController {
             @ApiResponse(responseCode = "403", description = "User not authenticated.")
     })
     public ResponseEntity<ProductDTO> register(@RequestBody @Valid ProductDTO dto) {
-        log.info("Registering a product: {}", dto.getName());
+        log.debug("Registering a product: {}", dto.getName());
 
-        Product product = modelMapper.map(dto, Product.class);
+        Product product = productMapper.toEntity(dto);
         Product savedProduct = productService.register(product);
 
         URI uri = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}")
                 .buildAndExpand(savedProduct.getId()).toUri();
 
-        ProductDTO updatedDTO = modelMapper.map(savedProduct, ProductDTO.class);
+        ProductDTO updatedDTO = productMapper.toDTO(savedProduct);
 
-        return ResponseEntity.created(uri).body(updatedDTO) ;
+        return ResponseEntity.created(uri).eTag(ProductETag.of(savedProduct.getVersion())).body(updatedDTO) ;
     }
 
     @PutMapping("/{id}")
@@ -60,57 +104,161 @@ public class ProductController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product updated successfully."),
             @ApiResponse(responseCode = "400", description = "Failed to update a contact."),
-            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "409", description = "Product kept being modified concurrently."),
+            @ApiResponse(responseCode = "412", description = "Product doesn't match the If-Match version anymore.")
     })
-    public ResponseEntity<ProductDTO> update(@PathVariable Long id, @RequestBody ProductDTO dto) {
-        log.info("Updating product: {}", dto.getName());
-        Product product = productService.findById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+    public ResponseEntity<ProductDTO> update(@PathVariable Long id, @RequestBody ProductDTO dto,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.debug("Updating product: {}", dto.getName());
 
-        Product updatedProduct = productService.update(product, dto);
+        Product updatedProduct = productService
+                .update(id, dto, ProductETag.expectedVersion(ifMatch))
+                .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
 
-        ProductDTO updatedDTO = modelMapper.map(updatedProduct, ProductDTO.class);
+        ProductDTO updatedDTO = productMapper.toDTO(updatedProduct);
 
-        return ResponseEntity.ok(updatedDTO);
+        return ResponseEntity.ok().eTag(ProductETag.of(updatedProduct.getVersion())).body(updatedDTO);
     }
 
     @GetMapping("/{id}")
     @Operation(summary = "Get a product")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product found successfully."),
+            @ApiResponse(responseCode = "304", description = "Product didn't change since the given ETag or date."),
             @ApiResponse(responseCode = "400", description = "Failed to find a product."),
             @ApiResponse(responseCode = "403", description = "User not authenticated.")
     })
-    public ResponseEntity<ProductDTO> findById(@PathVariable Long id) {
-        log.info("Finding product by id: {}", id);
+    public ResponseEntity<ProductDTO> findById(@PathVariable Long id, WebRequest request) {
+        log.debug("Finding product by id: {}", id);
 
         Product product = productService
                 .findById(id)
                 .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 
-        ProductDTO dto = modelMapper.map(product, ProductDTO.class);
+        // answered from the cached entity, before it is mapped and serialized
+        String eTag = ProductETag.of(product.getVersion());
+        long lastModified = product.getUpdatedAt() == null ? -1 : product.getUpdatedAt().toEpochMilli();
+        if (request.checkNotModified(eTag, lastModified)) {
+            return null;
+        }
 
-        return ResponseEntity.ok(dto);
+        ProductDTO dto = productMapper.toDTO(product);
+
+        return ResponseEntity.ok().eTag(eTag).lastModified(lastModified).body(dto);
+    }
+
+    @PostMapping("/batch-get")
+    @Operation(summary = "Get many products by id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products found in request order, unknown ids listed as missing."),
+            @ApiResponse(responseCode = "400", description = "Null ids or too many ids."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+    })
+    public ResponseEntity<ProductBatchGetDTO> batchGet(@RequestBody List<Long> ids) {
+        log.debug("Finding a batch of {} products", ids.size());
+
+        if (ids.size() > MAX_BATCH_GET_IDS) {
+            throw new BusinessException("At most " + MAX_BATCH_GET_IDS + " products can be fetched at once");
+        }
+        if (ids.contains(null)) {
+            throw new BusinessException("Product ids must not be null");
+        }
+
+        Map<Long, Product> found = productService.findAllById(ids);
+
+        List<ProductDTO> products = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Product product = found.get(id);
+            if (product != null) {
+                products.add(productMapper.toDTO(product));
+            } else {
+                missing.add(id);
+            }
+        }
+
+        return ResponseEntity.ok(new ProductBatchGetDTO(products, missing));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream stock changes of products as server-sent events")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Current stock of the found products, followed by their changes."),
+            @ApiResponse(responseCode = "400", description = "No ids, null ids or too many ids."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "503", description = "Too many subscribers on this node.")
+    })
+    public SseEmitter streamStock(@RequestParam List<Long> ids) {
+        log.debug("Streaming stock changes of {} products", ids.size());
+
+        if (ids.isEmpty() || ids.size() > MAX_STREAM_IDS) {
+            throw new BusinessException("Between 1 and " + MAX_STREAM_IDS + " products can be streamed at once");
+        }
+        if (ids.contains(null)) {
+            throw new BusinessException("Product ids must not be null");
+        }
+
+        List<ProductStockDTO> snapshot = productService.findAllById(ids).values().stream()
+                .map(ProductStockDTO::of)
+                .toList();
+
+        return productStockBroadcaster.subscribe(new LinkedHashSet<>(ids), snapshot);
     }
 
     @GetMapping("/list")
     @Operation(summary = "List all products")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product page found successfully."),
+            @ApiResponse(responseCode = "304", description = "Product page didn't change since the given ETag."),
             @ApiResponse(responseCode = "400", description = "Failed to find a product."),
             @ApiResponse(responseCode = "403", description = "User not authenticated.")
     })
-    public ResponseEntity<PageImpl<ProductDTO>> listAllProducts(@RequestParam String name, Pageable pageable) {
-        log.info("Listing product by name: {}", name);
+    public ResponseEntity<PageImpl<ProductDTO>> listAllProducts(@RequestParam String name, Pageable pageable,
+                                                                WebRequest request) {
+        log.debug("Listing product by name: {}", name);
 
-        Page<Product> page = productService.listAll(name, pageable);
+        Page<ProductDTO> page = productService.listAll(name, pageable);
 
-        List<ProductDTO> listDTO = page
+        String eTag = ProductETag.ofPage(page);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(new PageImpl<>(page.getContent(), pageable, page.getTotalElements()));
+    }
+
+    @GetMapping("/list/cursor")
+    @Operation(summary = "List products by name using a continuation cursor")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Product slice found successfully."),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+    })
+    public ResponseEntity<ProductCursorPageDTO> listProductsByCursor(@RequestParam(defaultValue = "") String name,
+                                                                     @RequestParam(required = false) String cursor,
+                                                                     @RequestParam(defaultValue = "20") int size,
+                                                                     @RequestParam(defaultValue = "false") boolean count) {
+        log.debug("Listing product by name: {} after cursor: {}", name, cursor);
+
+        ProductCursor position = cursor == null ? null : ProductCursor.decode(cursor);
+        Slice<Product> slice = productService.listAfter(name, position, Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE)));
+
+        List<ProductDTO> listDTO = slice
                 .getContent()
                 .stream()
-                .map(product -> modelMapper.map(product, ProductDTO.class))
+                .map(productMapper::toDTO)
                 .toList();
 
-        return ResponseEntity.ok(new PageImpl<>(listDTO, pageable, page.getTotalElements()));
+        String nextCursor = null;
+        if (slice.hasNext()) {
+            Product last = slice.getContent().get(slice.getNumberOfElements() - 1);
+            nextCursor = new ProductCursor(last.getName(), last.getId()).encode();
+        }
+
+        Long totalElements = count ? productService.countByName(name) : null;
+
+        return ResponseEntity.ok(new ProductCursorPageDTO(listDTO, slice.getSize(), slice.hasNext(), nextCursor, totalElements));
     }
 
     @DeleteMapping("/{id}")
@@ -121,7 +269,7 @@ public class ProductController {
             @ApiResponse(responseCode = "403", description = "User not authenticated.")
     })
     public ResponseEntity<Void> delete(@PathVariable Long id) {
-        log.info("Deleting product by id: {}", id);
+        log.debug("Deleting product by id: {}", id);
 
         Product product = productService.findById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
         productService.delete(product);
@@ -134,17 +282,20 @@ public class ProductController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Quantity added successfully."),
             @ApiResponse(responseCode = "400", description = "Failed to add quantity to a product."),
-            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "503", description = "Write-behind mode couldn't write a sync change in time.")
     })
     public ResponseEntity<ProductDTO> addStorage(@PathVariable(value = "id") Long id,
-                                                 @PathVariable(value = "quantity") Integer quantity) {
-        log.info("Adding {} units to product with ID: {}", quantity, id);
-
-        Product updatingProduct = productService.findById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+                                                 @PathVariable(value = "quantity") Integer quantity,
+                                                 @RequestParam(defaultValue = "false") boolean sync) {
+        log.debug("Adding {} units to product with ID: {}", quantity, id);
 
-        Product updatedProduct = productService.addStorage(updatingProduct, quantity);
+        Optional<Product> result = stockWriteBehind.isEnabled()
+                ? stockWriteBehind.addStorage(id, quantity, sync)
+                : productService.addStorage(id, quantity);
+        Product updatedProduct = result.orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
 
-        ProductDTO dto = modelMapper.map(updatedProduct, ProductDTO.class);
+        ProductDTO dto = productMapper.toDTO(updatedProduct);
 
         return ResponseEntity.ok(dto);
     }
@@ -154,18 +305,77 @@ public class ProductController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Quantity removed successfully."),
             @ApiResponse(responseCode = "400", description = "Failed to remove quantity from a product."),
-            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "503", description = "Write-behind mode couldn't write a sync change in time.")
     })
     public ResponseEntity<ProductDTO> removeStorage(@PathVariable(value = "id") Long id,
-                                                    @PathVariable(value = "quantity") Integer quantity) {
-        log.info("Removing {} units to product with ID: {}", quantity, id);
-
-        Product updatingProduct = productService.findById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+                                                    @PathVariable(value = "quantity") Integer quantity,
+                                                    @RequestParam(defaultValue = "false") boolean sync) {
+        log.debug("Removing {} units to product with ID: {}", quantity, id);
 
-        Product updatedProduct = productService.removeStorage(updatingProduct, quantity);
+        Optional<Product> result = stockWriteBehind.isEnabled()
+                ? stockWriteBehind.removeStorage(id, quantity, sync)
+                : productService.removeStorage(id, quantity);
+        Product updatedProduct = result.orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
 
-        ProductDTO dto = modelMapper.map(updatedProduct, ProductDTO.class);
+        ProductDTO dto = productMapper.toDTO(updatedProduct);
 
         return ResponseEntity.ok(dto);
     }
+
+    @PostMapping("/storage/batch")
+    @Operation(summary = "Apply a batch of stock movements")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stock movements processed, check each item's status."),
+            @ApiResponse(responseCode = "400", description = "Failed to process the stock movements."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+    })
+    public ResponseEntity<List<StockMovementResultDTO>> applyStockMovements(@RequestBody List<StockMovementDTO> movements) {
+        log.debug("Applying a batch of {} stock movements", movements.size());
+
+        return ResponseEntity.ok(productService.applyStockMovements(movements));
+    }
+
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, "text/csv"})
+    @Operation(summary = "Import products from a JSON array or a CSV file")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products imported, check the rejected rows."),
+            @ApiResponse(responseCode = "400", description = "Failed to read the imported products."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+    })
+    public ResponseEntity<ProductImportReportDTO> importProducts(HttpServletRequest request) throws IOException {
+        log.debug("Importing products from a {} payload", request.getContentType());
+
+        ProductImportReportDTO report = productImportService
+                .importProducts(request.getInputStream(), MediaType.parseMediaType(request.getContentType()));
+
+        return ResponseEntity.ok(report);
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @Operation(summary = "Export every product as newline delimited JSON")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products streamed successfully."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated.")
+    })
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = "false") boolean gzip) {
+        log.debug("Exporting every product, gzip: {}", gzip);
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192)) {
+                    productExportService.exportProducts(gzipOut);
+                }
+            } else {
+                productExportService.exportProducts(out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(APPLICATION_NDJSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return response.body(body);
+    }
 }
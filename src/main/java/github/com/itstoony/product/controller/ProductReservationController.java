@@ -0,0 +1,126 @@
+package github.com.itstoony.product.controller;
+
+import github.com.itstoony.product.dto.ProductAvailabilityDTO;
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.ReservationDTO;
+import github.com.itstoony.product.dto.ReservationRequestDTO;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductBatchRepository.ProductStock;
+import github.com.itstoony.product.reservation.ProductReservationService;
+import github.com.itstoony.product.reservation.Reservation;
+import github.com.itstoony.product.service.ProductService;
+import io.micrometer.core.annotation.Timed;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/api/product")
+@RequiredArgsConstructor
+@Tag(name = "Product reservation", description = "API responsible for holding product stock during checkouts")
+@Slf4j
+@Timed(value = "api.handler", histogram = true)
+public class ProductReservationController {
+
+    private final ProductMapper productMapper;
+
+    private final ProductService productService;
+
+    private final ProductReservationService reservationService;
+
+    @PostMapping("/{id}/reservations")
+    @Operation(summary = "Hold units of a product until they are confirmed, released or expire")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Units held successfully."),
+            @ApiResponse(responseCode = "400", description = "Invalid quantity or ttl, or not enough available units."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "404", description = "Product not found.")
+    })
+    public ResponseEntity<ReservationDTO> reserve(@PathVariable Long id, @RequestBody ReservationRequestDTO dto) {
+        log.debug("Reserving {} units of product with ID: {}", dto.quantity(), id);
+
+        Duration ttl = dto.ttlSeconds() == null ? null : Duration.ofSeconds(dto.ttlSeconds());
+        Reservation reservation = reservationService.reserve(id, dto.quantity(), ttl)
+                .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+
+        URI uri = ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/product/reservations/{reservationId}")
+                .buildAndExpand(reservation.id()).toUri();
+
+        return ResponseEntity.created(uri).body(ReservationDTO.of(reservation));
+    }
+
+    @GetMapping("/reservations/{reservationId}")
+    @Operation(summary = "Get an active reservation")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reservation found successfully."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "404", description = "Reservation unknown, ended or expired.")
+    })
+    public ResponseEntity<ReservationDTO> findReservation(@PathVariable Long reservationId) {
+        Reservation reservation = reservationService.findById(reservationId)
+                .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+
+        return ResponseEntity.ok(ReservationDTO.of(reservation));
+    }
+
+    @PostMapping("/reservations/{reservationId}/confirm")
+    @Operation(summary = "Take the reserved units out of the product's storage")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reservation confirmed successfully."),
+            @ApiResponse(responseCode = "400", description = "Product's quantity went below the reserved one."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "404", description = "Reservation unknown, ended or expired.")
+    })
+    public ResponseEntity<ProductDTO> confirm(@PathVariable Long reservationId) {
+        log.debug("Confirming reservation with ID: {}", reservationId);
+
+        Product product = reservationService.confirm(reservationId)
+                .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+
+        return ResponseEntity.ok(productMapper.toDTO(product));
+    }
+
+    @DeleteMapping("/reservations/{reservationId}")
+    @Operation(summary = "Release the reserved units")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Reservation released successfully."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "404", description = "Reservation unknown, ended or expired.")
+    })
+    public ResponseEntity<Void> release(@PathVariable Long reservationId) {
+        log.debug("Releasing reservation with ID: {}", reservationId);
+
+        if (!reservationService.release(reservationId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{id}/availability")
+    @Operation(summary = "Get a product's quantity minus its active reservations")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Availability found successfully."),
+            @ApiResponse(responseCode = "403", description = "User not authenticated."),
+            @ApiResponse(responseCode = "404", description = "Product not found.")
+    })
+    public ResponseEntity<ProductAvailabilityDTO> availability(@PathVariable Long id) {
+        ProductStock stock = productService.findStock(id)
+                .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+
+        return ResponseEntity.ok(new ProductAvailabilityDTO(id, stock.quantity(), stock.held(), Math.max(0, stock.available())));
+    }
+
+}
@@ -0,0 +1,9 @@
+package github.com.itstoony.product.dto;
+
+public record ProductAvailabilityDTO(
+        Long id,
+        Integer quantity,
+        Integer reserved,
+        Integer available
+) {
+}
@@ -0,0 +1,9 @@
+package github.com.itstoony.product.dto;
+
+import java.util.List;
+
+public record ProductBatchGetDTO(
+        List<ProductDTO> products,
+        List<Long> missing
+) {
+}
@@ -0,0 +1,31 @@
+package github.com.itstoony.product.dto;
+
+import github.com.itstoony.product.exception.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last product of a keyset page, sent to clients as an opaque continuation token.
+ */
+public record ProductCursor(
+        String name,
+        Long id
+) {
+
+    public String encode() {
+        String position = id + ":" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String token) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            return new ProductCursor(position.substring(separator + 1), Long.valueOf(position.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new BusinessException("Invalid cursor");
+        }
+    }
+
+}
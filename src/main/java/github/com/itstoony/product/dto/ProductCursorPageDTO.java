@@ -0,0 +1,12 @@
+package github.com.itstoony.product.dto;
+
+import java.util.List;
+
+public record ProductCursorPageDTO(
+        List<ProductDTO> content,
+        int size,
+        boolean hasNext,
+        String nextCursor,
+        Long totalElements
+) {
+}
@@ -27,4 +27,6 @@ public class ProductDTO {
     @NotNull
     private Integer quantity;
 
+    private Long version;
+
 }
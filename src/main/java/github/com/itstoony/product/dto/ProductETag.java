@@ -0,0 +1,65 @@
+package github.com.itstoony.product.dto;
+
+import github.com.itstoony.product.exception.StaleVersionException;
+import org.springframework.data.domain.Page;
+
+/**
+ * Strong entity tags of products, built from their optimistic locking versions so they can be
+ * compared without mapping or serializing the response.
+ */
+public final class ProductETag {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ProductETag() {
+    }
+
+    public static String of(Long version) {
+        return "\"" + (version == null ? 0 : version) + "\"";
+    }
+
+    /**
+     * Tag of a list page, hashed from the page position, the total and the id and version of every
+     * product in it, in order. Any update to a listed product bumps its version and so the tag.
+     */
+    public static String ofPage(Page<ProductDTO> page) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, page.getNumber());
+        hash = mix(hash, page.getSize());
+        hash = mix(hash, page.getTotalElements());
+        for (ProductDTO dto : page.getContent()) {
+            hash = mix(hash, dto.getId() == null ? 0 : dto.getId());
+            hash = mix(hash, dto.getVersion() == null ? 0 : dto.getVersion());
+        }
+        return "\"p-" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * Reads the version a conditional request expects from an If-Match header.
+     *
+     * @return the expected version, or null when the header is absent or matches any version
+     */
+    public static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String tag = ifMatch.trim();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            throw new StaleVersionException("If-Match must be a single strong entity tag");
+        }
+
+        try {
+            return Long.valueOf(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException ex) {
+            throw new StaleVersionException("Product has been modified");
+        }
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+}
@@ -0,0 +1,12 @@
+package github.com.itstoony.product.dto;
+
+import java.util.List;
+
+public record ProductImportReportDTO(
+        long imported,
+        long rejected,
+        List<Long> rejectedRows,
+        long elapsedMillis,
+        double rowsPerSecond
+) {
+}
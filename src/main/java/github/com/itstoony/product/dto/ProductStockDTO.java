@@ -0,0 +1,23 @@
+package github.com.itstoony.product.dto;
+
+import github.com.itstoony.product.model.Product.Product;
+
+public record ProductStockDTO(
+        Long id,
+        Integer quantity,
+        Long version
+) {
+
+    public static ProductStockDTO of(Product product) {
+        return new ProductStockDTO(product.getId(), product.getQuantity(), product.getVersion());
+    }
+
+    /**
+     * Whether this is a later state of the product than the passed one, states without a version
+     * are taken as the latest.
+     */
+    public boolean isNewerThan(ProductStockDTO other) {
+        return other == null || version == null || other.version() == null || version >= other.version();
+    }
+
+}
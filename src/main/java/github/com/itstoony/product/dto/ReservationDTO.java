@@ -0,0 +1,18 @@
+package github.com.itstoony.product.dto;
+
+import github.com.itstoony.product.reservation.Reservation;
+
+import java.time.Instant;
+
+public record ReservationDTO(
+        Long id,
+        Long productId,
+        Integer quantity,
+        Instant expiresAt
+) {
+
+    public static ReservationDTO of(Reservation reservation) {
+        return new ReservationDTO(reservation.id(), reservation.productId(), reservation.quantity(), reservation.expiresAt());
+    }
+
+}
@@ -0,0 +1,7 @@
+package github.com.itstoony.product.dto;
+
+public record ReservationRequestDTO(
+        Integer quantity,
+        Long ttlSeconds
+) {
+}
@@ -0,0 +1,7 @@
+package github.com.itstoony.product.dto;
+
+public record StockMovementDTO(
+        Long id,
+        Integer delta
+) {
+}
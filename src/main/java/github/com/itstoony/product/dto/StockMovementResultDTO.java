@@ -0,0 +1,24 @@
+package github.com.itstoony.product.dto;
+
+public record StockMovementResultDTO(
+        Long id,
+        Integer delta,
+        Status status,
+        Integer quantity,
+        String message
+) {
+
+    public enum Status {
+        APPLIED,
+        REJECTED
+    }
+
+    public static StockMovementResultDTO applied(StockMovementDTO movement, Integer quantity) {
+        return new StockMovementResultDTO(movement.id(), movement.delta(), Status.APPLIED, quantity, null);
+    }
+
+    public static StockMovementResultDTO rejected(StockMovementDTO movement, String message) {
+        return new StockMovementResultDTO(movement.id(), movement.delta(), Status.REJECTED, null, message);
+    }
+
+}
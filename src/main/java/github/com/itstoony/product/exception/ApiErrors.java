@@ -20,6 +20,14 @@ public class ApiErrors {
         this.errors = Collections.singletonList(ex.getMessage());
     }
 
+    public ApiErrors(ServiceOverloadedException ex) {
+        this.errors = Collections.singletonList(ex.getMessage());
+    }
+
+    public ApiErrors(StaleVersionException ex) {
+        this.errors = Collections.singletonList(ex.getMessage());
+    }
+
     public ApiErrors(ResponseStatusException ex) {
         this.errors = Collections.singletonList(ex.getReason());
     }
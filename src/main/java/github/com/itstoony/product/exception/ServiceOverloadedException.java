@@ -0,0 +1,7 @@
+package github.com.itstoony.product.exception;
+
+public class ServiceOverloadedException extends RuntimeException {
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package github.com.itstoony.product.exception;
+
+public class StaleVersionException extends RuntimeException {
+    public StaleVersionException(String message) {
+        super(message);
+    }
+}
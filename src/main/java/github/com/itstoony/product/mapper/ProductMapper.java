@@ -0,0 +1,39 @@
+package github.com.itstoony.product.mapper;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.model.Product.Product;
+
+/**
+ * Plain field copies between Product and ProductDTO, replacing the reflective ModelMapper lookup
+ * that used to run for every returned product.
+ */
+public class ProductMapper {
+
+    public ProductDTO toDTO(Product product) {
+        if (product == null) {
+            return null;
+        }
+        return ProductDTO.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .productValue(product.getProductValue())
+                .quantity(product.getQuantity())
+                .version(product.getVersion())
+                .build();
+    }
+
+    public Product toEntity(ProductDTO dto) {
+        if (dto == null) {
+            return null;
+        }
+        return Product.builder()
+                .id(dto.getId())
+                .name(dto.getName())
+                .description(dto.getDescription())
+                .productValue(dto.getProductValue())
+                .quantity(dto.getQuantity())
+                .build();
+    }
+
+}
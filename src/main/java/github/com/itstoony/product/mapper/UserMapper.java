@@ -0,0 +1,19 @@
+package github.com.itstoony.product.mapper;
+
+import github.com.itstoony.product.dto.UserDTO;
+import github.com.itstoony.product.model.Product.User;
+
+public class UserMapper {
+
+    public User toEntity(UserDTO dto) {
+        if (dto == null) {
+            return null;
+        }
+        return User.builder()
+                .id(dto.getId())
+                .login(dto.getLogin())
+                .password(dto.getPassword())
+                .build();
+    }
+
+}
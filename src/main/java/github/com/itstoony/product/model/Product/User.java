@@ -12,7 +12,7 @@ import java.util.List;
 @Getter
 @Setter
 @Builder
-@Table(name = "users")
+@Table(name = "users", indexes = @Index(name = "ux_users_login", columnList = "login", unique = true))
 @Entity(name = "user")
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,44 @@
+package github.com.itstoony.product.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the latest published events in memory, a stand-in for development and tests.
+ */
+@Component
+@ConditionalOnProperty(name = "product.outbox.sink", havingValue = "memory", matchIfMissing = true)
+public class InMemoryProductEventSink implements ProductEventSink {
+
+    private final Deque<ProductEvent> events = new ArrayDeque<>();
+
+    private final int capacity;
+
+    public InMemoryProductEventSink(@Value("${product.outbox.memory.capacity:10000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void publish(List<ProductEvent> batch) {
+        for (ProductEvent event : batch) {
+            if (events.size() == capacity) {
+                events.removeFirst();
+            }
+            events.addLast(event);
+        }
+    }
+
+    public synchronized List<ProductEvent> events() {
+        return List.copyOf(events);
+    }
+
+    public synchronized void clear() {
+        events.clear();
+    }
+
+}
@@ -0,0 +1,53 @@
+package github.com.itstoony.product.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes events to a Kafka topic keyed by product id, so every change of a product lands on the
+ * same partition in order. The whole batch is sent before waiting for the acknowledgements.
+ */
+@Component
+@ConditionalOnProperty(name = "product.outbox.sink", havingValue = "kafka")
+public class KafkaProductEventSink implements ProductEventSink {
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final String topic;
+
+    private final Duration timeout;
+
+    public KafkaProductEventSink(KafkaTemplate<String, String> kafkaTemplate,
+                                 ObjectMapper objectMapper,
+                                 @Value("${product.outbox.kafka.topic:product-events}") String topic,
+                                 @Value("${product.outbox.kafka.timeout:10s}") Duration timeout) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.topic = topic;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void publish(List<ProductEvent> events) throws Exception {
+        List<CompletableFuture<SendResult<String, String>>> sends = new ArrayList<>(events.size());
+        for (ProductEvent event : events) {
+            sends.add(kafkaTemplate.send(topic, String.valueOf(event.productId()), objectMapper.writeValueAsString(event)));
+        }
+        kafkaTemplate.flush();
+
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,26 @@
+package github.com.itstoony.product.outbox;
+
+import java.time.Instant;
+
+/**
+ * A product change as published to the event sink. The sequence grows with every recorded change,
+ * so consumers can drop the duplicates an at-least-once relay may deliver.
+ *
+ * @param payload the product as JSON right after the change
+ */
+public record ProductEvent(
+        long sequence,
+        Long productId,
+        Type type,
+        Instant occurredAt,
+        String payload
+) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        STOCK_CHANGED
+    }
+
+}
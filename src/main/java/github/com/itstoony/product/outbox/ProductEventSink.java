@@ -0,0 +1,14 @@
+package github.com.itstoony.product.outbox;
+
+import java.util.List;
+
+/**
+ * Destination of the product events drained from the outbox. A batch only leaves the outbox once
+ * publish returns, so implementations must throw unless every event of it was accepted, and must
+ * keep the order of the events of a same product.
+ */
+public interface ProductEventSink {
+
+    void publish(List<ProductEvent> events) throws Exception;
+
+}
@@ -0,0 +1,131 @@
+package github.com.itstoony.product.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import jakarta.persistence.EntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The product_outbox table. Events are appended inside the transaction of the change they describe,
+ * so they are committed, or rolled back, together with it. Pending entity changes are flushed
+ * first, so the payload carries the version the change is committed with and a lost optimistic
+ * lock surfaces right there.
+ * <p>
+ * Relays take turns through the single row of product_outbox_relay: only the holder of its
+ * unexpired lease reads and publishes, so batches go out in id order without any row staying
+ * locked while the sink is slow.
+ */
+@Repository
+public class ProductOutbox {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO product_outbox (product_id, type, payload, created_at) VALUES (?, ?, ?, ?)";
+
+    private static final String SELECT_BATCH_SQL =
+            "SELECT id, product_id, type, payload, created_at FROM product_outbox ORDER BY id LIMIT ?";
+
+    private static final String PENDING_SQL = "SELECT id FROM product_outbox ORDER BY id LIMIT 1";
+
+    private static final String CLAIM_SQL = "UPDATE product_outbox_relay SET owner = ?, lease_until = ? " +
+            "WHERE id = 1 AND (owner = ? OR lease_until IS NULL OR lease_until < ?)";
+
+    private static final String RELEASE_SQL = "UPDATE product_outbox_relay SET owner = NULL, lease_until = NULL WHERE id = 1 AND owner = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM product_outbox WHERE id = ?";
+
+    private static final String OLDEST_SQL = "SELECT MIN(created_at) FROM product_outbox";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManager entityManager;
+
+    private final ObjectMapper objectMapper;
+
+    private final ProductMapper productMapper;
+
+    public ProductOutbox(JdbcTemplate jdbcTemplate, EntityManager entityManager, ObjectMapper objectMapper, ProductMapper productMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.productMapper = productMapper;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(ProductEvent.Type type, Product product) {
+        appendAll(type, List.of(product));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void appendAll(ProductEvent.Type type, List<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        entityManager.flush();
+
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, products, products.size(), (ps, product) -> {
+            ps.setLong(1, product.getId());
+            ps.setString(2, type.name());
+            ps.setString(3, toJson(product));
+            ps.setTimestamp(4, now);
+        });
+    }
+
+    public boolean hasPending() {
+        return !jdbcTemplate.queryForList(PENDING_SQL, Long.class).isEmpty();
+    }
+
+    /**
+     * Takes, or renews, the relay lease for the passed owner until the passed instant, committed
+     * right away. Fails while another owner holds a lease that hasn't expired yet.
+     */
+    public boolean claimRelay(String owner, Instant until) {
+        Timestamp now = Timestamp.from(Instant.now());
+        return jdbcTemplate.update(CLAIM_SQL, owner, Timestamp.from(until), owner, now) == 1;
+    }
+
+    public void releaseRelay(String owner) {
+        jdbcTemplate.update(RELEASE_SQL, owner);
+    }
+
+    /**
+     * The oldest pending events in the order they were recorded. Only the holder of the relay lease
+     * should publish them, see {@link #claimRelay}.
+     */
+    public List<ProductEvent> next(int limit) {
+        return jdbcTemplate.query(SELECT_BATCH_SQL, (rs, row) -> new ProductEvent(
+                rs.getLong("id"),
+                rs.getLong("product_id"),
+                ProductEvent.Type.valueOf(rs.getString("type")),
+                rs.getTimestamp("created_at").toInstant(),
+                rs.getString("payload")), limit);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void remove(List<ProductEvent> events) {
+        jdbcTemplate.batchUpdate(DELETE_SQL, events, events.size(), (ps, event) -> ps.setLong(1, event.sequence()));
+    }
+
+    public Optional<Instant> oldestPending() {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(OLDEST_SQL, Timestamp.class)).map(Timestamp::toInstant);
+    }
+
+    private String toJson(Product product) {
+        try {
+            return objectMapper.writeValueAsString(productMapper.toDTO(product));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Couldn't serialize product " + product.getId(), ex);
+        }
+    }
+
+}
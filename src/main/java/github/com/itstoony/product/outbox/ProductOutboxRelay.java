@@ -0,0 +1,136 @@
+package github.com.itstoony.product.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the outbox to the event sink in batches, oldest first. A batch is removed from the outbox
+ * only after the sink accepted it, so events are delivered at least once and a failing sink holds
+ * back everything after them, which keeps each product's events in order.
+ * <p>
+ * No transaction stays open while the sink works: the relay takes the outbox lease in a statement
+ * of its own, reads and publishes the batch outside of any transaction, and then deletes it in a
+ * short one. The lease is renewed for every batch and given back once the outbox is drained or the
+ * sink failed, so another node's relay can take over. {@code product.outbox.relay.lease} has to
+ * outlast a publish, sink timeout included, otherwise a second relay may publish the same batch
+ * again, which the at-least-once delivery already allows for.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "product.outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class ProductOutboxRelay {
+
+    private final ProductOutbox outbox;
+
+    private final ProductEventSink sink;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+
+    private final Duration lease;
+
+    private final String owner = UUID.randomUUID().toString();
+
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    private final Counter published;
+
+    private final Timer publishTimer;
+
+    public ProductOutboxRelay(ProductOutbox outbox,
+                              ProductEventSink sink,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry registry,
+                              @Value("${product.outbox.batch-size:200}") int batchSize,
+                              @Value("${product.outbox.relay.lease:30s}") Duration lease) {
+        this.outbox = outbox;
+        this.sink = sink;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.lease = lease;
+
+        this.published = Counter.builder("product.outbox.published")
+                .description("Product events handed over to the sink")
+                .register(registry);
+        this.publishTimer = Timer.builder("product.outbox.publish")
+                .description("Time spent publishing a batch of product events")
+                .publishPercentileHistogram()
+                .register(registry);
+        TimeGauge.builder("product.outbox.lag", lagMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Age of the oldest product event not yet published, as of the last relay run")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${product.outbox.poll-interval-ms:500}")
+    public void drain() {
+        try {
+            while (relayBatch() == batchSize) {
+                // a full batch means more events are probably waiting
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Product events couldn't be published, retrying on the next run", ex);
+        } finally {
+            lagMillis.set(outbox.oldestPending()
+                    .map(oldest -> Math.max(0, Duration.between(oldest, Instant.now()).toMillis()))
+                    .orElse(0L));
+        }
+    }
+
+    /**
+     * Publishes the next batch of events and removes them from the outbox, unless another relay
+     * holds the lease.
+     *
+     * @return the number of published events
+     */
+    public int relayBatch() {
+        if (!outbox.hasPending() || !outbox.claimRelay(owner, Instant.now().plus(lease))) {
+            return 0;
+        }
+
+        boolean drained = true;
+        try {
+            List<ProductEvent> events = outbox.next(batchSize);
+            if (events.isEmpty()) {
+                return 0;
+            }
+
+            publishTimer.record(() -> publish(events));
+            transactionTemplate.executeWithoutResult(status -> outbox.remove(events));
+            published.increment(events.size());
+            drained = events.size() < batchSize;
+            return events.size();
+        } finally {
+            if (drained) {
+                outbox.releaseRelay(owner);
+            }
+        }
+    }
+
+    private void publish(List<ProductEvent> events) {
+        try {
+            sink.publish(events);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("Product event sink failed", ex);
+        }
+    }
+
+}
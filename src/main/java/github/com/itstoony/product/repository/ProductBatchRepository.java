@@ -0,0 +1,91 @@
+package github.com.itstoony.product.repository;
+
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.model.Product.Product;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Statements sent through plain JDBC. The stock removals among them leave alone the units held by
+ * the unexpired rows of product_reservation: they lock the product rows first, the lock every hold
+ * of the product is taken under too, then sum the holds with a locking read, so a hold committed
+ * while they waited is always seen.
+ */
+public interface ProductBatchRepository {
+
+    /**
+     * Applies every movement as a conditional quantity update sent through JDBC batching, after
+     * locking the products in id order.
+     *
+     * @return the updated row count of each movement, in the same order, 0 when the product
+     * doesn't exist, a removal would take more than its quantity minus its held units or an
+     * addition would take its quantity beyond the int range
+     */
+    int[] adjustQuantities(List<StockMovementDTO> movements);
+
+    /**
+     * Conditionally removes units from a product, the row is only touched when it holds enough stock
+     * besides its held units, so concurrent callers can never drive the quantity below zero nor
+     * sell held units nor overwrite each other. Must run in a transaction.
+     *
+     * @return the number of updated rows, 0 when the product doesn't exist or has insufficient stock
+     */
+    int decreaseQuantity(Long id, Integer quantity);
+
+    /**
+     * Locks the product row until the surrounding transaction ends and reads its quantity and the
+     * units held by its unexpired reservations. Holds are only taken under this lock.
+     *
+     * @return empty when the product doesn't exist
+     */
+    Optional<ProductStock> lockStock(Long id);
+
+    /**
+     * Same as {@link #lockStock(Long)} for many products, locked in id order so concurrent callers
+     * can't deadlock on them.
+     *
+     * @return the stock of every existing product
+     */
+    Map<Long, ProductStock> lockStocks(Collection<Long> ids);
+
+    /**
+     * Reads the product's quantity and held units without locking anything.
+     *
+     * @return empty when the product doesn't exist
+     */
+    Optional<ProductStock> findStockById(Long id);
+
+    /**
+     * @return the quantity minus the held units, what stock removals can still take
+     */
+    Optional<Integer> findAvailableQuantityById(Long id);
+
+    /**
+     * @return the units held by unexpired reservations of the passed products, products without
+     * holds are absent
+     */
+    Map<Long, Integer> findHeldQuantities(Collection<Long> ids);
+
+    /**
+     * Inserts the products through a single JDBC batch, bypassing the IDENTITY generator which
+     * prevents Hibernate from batching inserts.
+     *
+     * @return the generated ids, in the same order as the passed products
+     */
+    List<Long> insertAll(List<Product> products);
+
+    /**
+     * @param held the units held by unexpired reservations
+     */
+    record ProductStock(int quantity, int held) {
+
+        public int available() {
+            return quantity - held;
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+package github.com.itstoony.product.repository;
+
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.model.Product.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+public class ProductBatchRepositoryImpl implements ProductBatchRepository {
+
+    private static final String ADJUST_QUANTITY_SQL =
+            "UPDATE product SET quantity = quantity + ?, version = version + 1, updated_at = CURRENT_TIMESTAMP " +
+                    "WHERE id = ? AND quantity <= ? AND quantity - ? >= ?";
+
+    private static final String DECREASE_QUANTITY_SQL =
+            "UPDATE product SET quantity = quantity - ?, version = version + 1, updated_at = CURRENT_TIMESTAMP " +
+                    "WHERE id = ? AND quantity - ? >= ?";
+
+    private static final String LOCK_PRODUCTS_SQL = "SELECT id, quantity FROM product WHERE id IN (%s) ORDER BY id FOR UPDATE";
+
+    private static final String LOCK_HOLDS_SQL =
+            "SELECT product_id, quantity FROM product_reservation WHERE product_id IN (%s) AND expires_at > ? FOR UPDATE";
+
+    private static final String HELD_SQL = "SELECT product_id, SUM(quantity) FROM product_reservation " +
+            "WHERE product_id IN (%s) AND expires_at > ? GROUP BY product_id";
+
+    private static final String STOCK_SQL = "SELECT p.quantity, (SELECT COALESCE(SUM(r.quantity), 0) FROM product_reservation r " +
+            "WHERE r.product_id = p.id AND r.expires_at > ?) FROM product p WHERE p.id = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO product (name, description, product_value, quantity, version, updated_at) VALUES (?, ?, ?, ?, 0, CURRENT_TIMESTAMP)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int batchSize;
+
+    public ProductBatchRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                      @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public int[] adjustQuantities(List<StockMovementDTO> movements) {
+        if (movements.isEmpty()) {
+            return new int[0];
+        }
+
+        Map<Long, ProductStock> stocks = lockStocks(movements.stream().map(StockMovementDTO::id).toList());
+        int[][] batches = jdbcTemplate.batchUpdate(ADJUST_QUANTITY_SQL, movements, batchSize, (ps, movement) -> {
+            int delta = movement.delta();
+            ProductStock stock = stocks.get(movement.id());
+            ps.setInt(1, delta);
+            ps.setLong(2, movement.id());
+            // both bounds are computed here, so the guard itself can't overflow the int column
+            ps.setInt(3, delta > 0 ? Integer.MAX_VALUE - delta : Integer.MAX_VALUE);
+            ps.setInt(4, stock == null ? 0 : stock.held());
+            ps.setInt(5, delta < 0 ? -delta : Integer.MIN_VALUE);
+        });
+
+        int[] counts = new int[movements.size()];
+        int index = 0;
+        for (int[] batch : batches) {
+            for (int count : batch) {
+                counts[index++] = count;
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int decreaseQuantity(Long id, Integer quantity) {
+        Optional<ProductStock> stock = lockStock(id);
+        if (stock.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(DECREASE_QUANTITY_SQL, quantity, id, stock.get().held(), quantity);
+    }
+
+    @Override
+    public Optional<ProductStock> lockStock(Long id) {
+        return Optional.ofNullable(lockStocks(List.of(id)).get(id));
+    }
+
+    @Override
+    public Map<Long, ProductStock> lockStocks(Collection<Long> ids) {
+        List<Long> ordered = new ArrayList<>(new TreeSet<>(ids));
+        String placeholders = placeholders(ordered.size());
+
+        Map<Long, Integer> quantities = new HashMap<>();
+        jdbcTemplate.query(LOCK_PRODUCTS_SQL.formatted(placeholders),
+                rs -> {
+                    quantities.put(rs.getLong("id"), rs.getInt("quantity"));
+                }, ordered.toArray());
+
+        Map<Long, Integer> held = new HashMap<>();
+        List<Object> params = new ArrayList<>(ordered);
+        params.add(now());
+        // a locking read, under repeatable read a plain one could miss holds committed while waiting
+        jdbcTemplate.query(LOCK_HOLDS_SQL.formatted(placeholders),
+                rs -> {
+                    held.merge(rs.getLong("product_id"), rs.getInt("quantity"), Integer::sum);
+                }, params.toArray());
+
+        Map<Long, ProductStock> stocks = new HashMap<>();
+        quantities.forEach((id, quantity) -> stocks.put(id, new ProductStock(quantity, held.getOrDefault(id, 0))));
+        return stocks;
+    }
+
+    @Override
+    public Optional<ProductStock> findStockById(Long id) {
+        return jdbcTemplate.query(STOCK_SQL, (rs, row) -> new ProductStock(rs.getInt(1), rs.getInt(2)), now(), id)
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public Optional<Integer> findAvailableQuantityById(Long id) {
+        return findStockById(id).map(ProductStock::available);
+    }
+
+    @Override
+    public Map<Long, Integer> findHeldQuantities(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Long, Integer> held = new HashMap<>();
+        List<Object> params = new ArrayList<>(ids);
+        params.add(now());
+        jdbcTemplate.query(HELD_SQL.formatted(placeholders(ids.size())),
+                rs -> {
+                    held.put(rs.getLong(1), rs.getInt(2));
+                }, params.toArray());
+        return held;
+    }
+
+    @Override
+    public List<Long> insertAll(List<Product> products) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (Product product : products) {
+                    ps.setString(1, product.getName());
+                    ps.setString(2, product.getDescription());
+                    ps.setBigDecimal(3, product.getProductValue());
+                    ps.setInt(4, product.getQuantity());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                List<Long> ids = new ArrayList<>(products.size());
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                return ids;
+            }
+        });
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static Timestamp now() {
+        return Timestamp.from(Instant.now());
+    }
+
+}
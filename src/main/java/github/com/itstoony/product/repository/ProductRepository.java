@@ -1,15 +1,80 @@
 package github.com.itstoony.product.repository;
 
+import github.com.itstoony.product.dto.ProductDTO;
 import github.com.itstoony.product.model.Product.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductBatchRepository {
 
     @Query("SELECT P FROM Product P WHERE LOWER(P.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     Page<Product> findByName(@Param("name") String name, Pageable pageable);
 
+    /**
+     * Read-only listing, rows are read straight into DTOs so no managed entity nor dirty-checking
+     * snapshot is created for them.
+     */
+    @Query(value = "SELECT new github.com.itstoony.product.dto.ProductDTO(P.id, P.name, P.description, P.productValue, P.quantity, P.version) " +
+            "FROM Product P WHERE LOWER(P.name) LIKE LOWER(CONCAT('%', :name, '%'))",
+            countQuery = "SELECT COUNT(P) FROM Product P WHERE LOWER(P.name) LIKE LOWER(CONCAT('%', :name, '%'))")
+    Page<ProductDTO> findDTOsByName(@Param("name") String name, Pageable pageable);
+
+    @Query("SELECT new github.com.itstoony.product.dto.ProductDTO(P.id, P.name, P.description, P.productValue, P.quantity, P.version) " +
+            "FROM Product P WHERE P.id IN :ids")
+    List<ProductDTO> findDTOsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Every product ordered by id, fetched from the driver in chunks and loaded as read-only entities.
+     * The stream must be consumed and closed inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT P FROM Product P ORDER BY P.id")
+    Stream<Product> streamAll();
+
+    @Query("SELECT P FROM Product P WHERE LOWER(P.name) LIKE LOWER(CONCAT('%', :name, '%')) ORDER BY P.name, P.id")
+    List<Product> findFirstSliceByName(@Param("name") String name, Pageable limit);
+
+    /**
+     * Keyset page, seeks past the last seen (name, id) pair instead of skipping rows with an OFFSET.
+     */
+    @Query("SELECT P FROM Product P WHERE LOWER(P.name) LIKE LOWER(CONCAT('%', :name, '%')) " +
+            "AND (P.name > :lastName OR (P.name = :lastName AND P.id > :lastId)) ORDER BY P.name, P.id")
+    List<Product> findByNameAfter(@Param("name") String name,
+                                  @Param("lastName") String lastName,
+                                  @Param("lastId") Long lastId,
+                                  Pageable limit);
+
+    @Query("SELECT COUNT(P) FROM Product P WHERE LOWER(P.name) LIKE LOWER(CONCAT('%', :name, '%'))")
+    long countByName(@Param("name") String name);
+
+    /**
+     * Conditionally adds units to a product, the row is only touched when the new quantity still
+     * fits the int column.
+     *
+     * @return the number of updated rows, 0 when the product doesn't exist or would overflow
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product P SET P.quantity = P.quantity + :quantity, P.version = P.version + 1, " +
+            "P.updatedAt = INSTANT WHERE P.id = :id AND P.quantity <= 2147483647 - :quantity")
+    int increaseQuantity(@Param("id") Long id, @Param("quantity") Integer quantity);
+
+    @Query("SELECT P.quantity FROM Product P WHERE P.id = :id")
+    Optional<Integer> findQuantityById(@Param("id") Long id);
+
 }
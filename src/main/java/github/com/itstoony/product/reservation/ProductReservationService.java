@@ -0,0 +1,268 @@
+package github.com.itstoony.product.reservation;
+
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.service.ProductService;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds units of a product for a checkout until they are confirmed, released or expire. A hold is
+ * a row of product_reservation: taking, releasing or expiring it writes that row only, never the
+ * product's. The available quantity is the product's quantity minus the units of its unexpired
+ * holds, which every stock removal subtracts, see ProductBatchRepository.
+ * <p>
+ * Holds and removals of a product serialize on the product row lock: a hold is inserted while
+ * its transaction holds that lock, and removals take it before summing the holds. A hold stops
+ * counting as soon as its expiry has passed, whether its row is deleted yet or not, so no hold
+ * depends on the node that took it: confirm and release work on the table from any node, each
+ * node's {@link TimerWheel} deletes the rows of the holds it took once they expire, and a sweep on
+ * every node deletes the expired rows left over, those of a node that went down included. Expiry
+ * is judged by each node's clock, so the skew between nodes shifts it by as much.
+ */
+@Slf4j
+@Service
+@Timed(value = "product.reservation", histogram = true)
+public class ProductReservationService implements SmartInitializingSingleton, DisposableBean {
+
+    private final ProductService productService;
+
+    private final ProductReservationStore store;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final MeterRegistry registry;
+
+    private final Duration defaultTtl;
+
+    private final Duration maxTtl;
+
+    private final Duration tick;
+
+    private final Duration sweepInterval;
+
+    /** The unended holds taken on this node, scheduled on the wheel for their expiry. */
+    private final ConcurrentMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+
+    private final TimerWheel<Long> wheel;
+
+    private final ScheduledExecutorService ticker;
+
+    public ProductReservationService(ProductService productService,
+                                     ProductReservationStore store,
+                                     PlatformTransactionManager transactionManager,
+                                     MeterRegistry registry,
+                                     @Value("${product.reservation.default-ttl:5m}") Duration defaultTtl,
+                                     @Value("${product.reservation.max-ttl:30m}") Duration maxTtl,
+                                     @Value("${product.reservation.tick:100ms}") Duration tick,
+                                     @Value("${product.reservation.wheel-size:1024}") int wheelSize,
+                                     @Value("${product.reservation.sweep-interval:1m}") Duration sweepInterval) {
+        this.productService = productService;
+        this.store = store;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.registry = registry;
+        this.defaultTtl = defaultTtl;
+        this.maxTtl = maxTtl;
+        this.tick = tick;
+        this.sweepInterval = sweepInterval;
+        this.wheel = new TimerWheel<>(tick, wheelSize, Instant.now());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("reservation-expiry-"));
+
+        Gauge.builder("product.reservations.active", reservations, ConcurrentMap::size)
+                .description("Stock reservations taken on this node neither confirmed, released nor expired")
+                .register(registry);
+    }
+
+    /**
+     * Holds the quantity of the product for the passed time, or the default one when it's null.
+     *
+     * @return the reservation, or empty when the product doesn't exist
+     * @throws BusinessException when the available quantity is lower than the passed one
+     */
+    public Optional<Reservation> reserve(Long productId, Integer quantity, Duration ttl) {
+        if (quantity == null || quantity <= 0) {
+            throw new BusinessException("Passed quantity should be equal or higher than 1");
+        }
+        Duration duration = ttl == null ? defaultTtl : ttl;
+        if (duration.toSeconds() < 1 || duration.compareTo(maxTtl) > 0) {
+            throw new BusinessException("Reservation ttl should be between 1 and " + maxTtl.toSeconds() + " seconds");
+        }
+
+        Instant expiresAt = Instant.now().plus(duration);
+        Reservation reservation;
+        try {
+            reservation = transactionTemplate.execute(status -> productService.lockAvailableStorage(productId)
+                    .map(available -> {
+                        if (available < quantity) {
+                            throw new BusinessException("Product's available quantity is less than passed quantity");
+                        }
+                        return store.insert(productId, quantity, expiresAt);
+                    })
+                    .orElse(null));
+        } catch (BusinessException ex) {
+            count("rejected");
+            throw ex;
+        }
+        if (reservation == null) {
+            return Optional.empty();
+        }
+
+        register(reservation);
+        count("reserved");
+        return Optional.of(reservation);
+    }
+
+    /**
+     * Ends the hold and takes its units out of the product's quantity, in one transaction, on any
+     * node. A confirmation that fails leaves the hold in place until it is released or expires.
+     *
+     * @return the product with its new quantity, or empty when the reservation is unknown, ended or expired
+     */
+    public Optional<Product> confirm(Long reservationId) {
+        Optional<Reservation> found = Optional.ofNullable(reservations.get(reservationId))
+                .or(() -> store.findById(reservationId, Instant.now()));
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Reservation reservation = found.get();
+        Optional<Product> product = transactionTemplate.execute(status -> {
+            // the product row is locked before the hold's, the order stock removals take them in
+            if (productService.lockAvailableStorage(reservation.productId()).isEmpty()
+                    || !store.delete(reservationId, Instant.now())) {
+                return Optional.<Product>empty();
+            }
+            return productService.removeReservedStorage(reservation.productId(), reservation.quantity());
+        });
+
+        if (product.isPresent()) {
+            reservations.remove(reservationId);
+            count("confirmed");
+        }
+        return product;
+    }
+
+    /**
+     * Ends the hold on any node.
+     *
+     * @return false when the reservation is unknown, ended or expired
+     */
+    public boolean release(Long reservationId) {
+        if (!store.delete(reservationId, Instant.now())) {
+            return false;
+        }
+
+        reservations.remove(reservationId);
+        count("released");
+        return true;
+    }
+
+    /**
+     * @return the reservation, or empty when it is unknown, ended or expired, whichever node took it
+     */
+    public Optional<Reservation> findById(Long reservationId) {
+        return store.findById(reservationId, Instant.now());
+    }
+
+    /**
+     * Deletes the rows of this node's holds whose expiry has been reached at the passed time,
+     * called on every tick. They stopped counting already, a row left over is swept later.
+     */
+    public void expireDue(Instant now) {
+        List<Long> due;
+        synchronized (wheel) {
+            due = wheel.advance(now);
+        }
+
+        List<Reservation> expired = new ArrayList<>();
+        for (Long id : due) {
+            Reservation reservation = reservations.get(id);
+            if (reservation != null && !reservation.expiresAt().isAfter(now) && reservations.remove(id, reservation)) {
+                expired.add(reservation);
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        try {
+            registry.counter("product.reservations", "outcome", "expired").increment(store.deleteAll(expired));
+        } catch (RuntimeException ex) {
+            log.warn("Couldn't delete {} expired reservations, leaving them to the sweep", expired.size(), ex);
+        }
+    }
+
+    /**
+     * Deletes the rows of every hold expired at the passed time, whichever node took it.
+     */
+    public void sweepExpired(Instant now) {
+        int swept = store.deleteExpired(now);
+        if (swept > 0) {
+            log.debug("Swept {} expired stock reservations", swept);
+            registry.counter("product.reservations", "outcome", "expired").increment(swept);
+        }
+    }
+
+    /**
+     * Starts the expiry ticks and the sweeps once the schema is migrated, the first sweep right
+     * away for the holds that expired while the application was down.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        ticker.scheduleAtFixedRate(this::tick, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(this::sweep, 0, sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        ticker.shutdownNow();
+    }
+
+    private void tick() {
+        try {
+            expireDue(Instant.now());
+        } catch (RuntimeException ex) {
+            log.warn("Stock reservation expiry failed", ex);
+        }
+    }
+
+    private void sweep() {
+        try {
+            sweepExpired(Instant.now());
+        } catch (RuntimeException ex) {
+            log.warn("Stock reservation sweep failed", ex);
+        }
+    }
+
+    private void register(Reservation reservation) {
+        reservations.put(reservation.id(), reservation);
+        synchronized (wheel) {
+            wheel.schedule(reservation.id(), reservation.expiresAt());
+        }
+    }
+
+    private void count(String outcome) {
+        registry.counter("product.reservations", "outcome", outcome).increment();
+    }
+
+}
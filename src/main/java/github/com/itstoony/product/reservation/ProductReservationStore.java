@@ -0,0 +1,121 @@
+package github.com.itstoony.product.reservation;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The product_reservation table, where holds live. A row holds its units until it is deleted or
+ * its expiry has passed, whichever comes first, so every node sees the same holds; expired rows
+ * no longer count anywhere and are only deleted to keep the table small.
+ * <p>
+ * Rows with a holder are the removal budgets of stock write-behind nodes, they count like any
+ * other hold but are never found nor ended through reservations.
+ */
+@Repository
+public class ProductReservationStore {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO product_reservation (product_id, quantity, expires_at) VALUES (?, ?, ?)";
+
+    private static final String DELETE_SQL = "DELETE FROM product_reservation WHERE id = ?";
+
+    private static final String DELETE_ACTIVE_SQL =
+            "DELETE FROM product_reservation WHERE id = ? AND holder IS NULL AND expires_at > ?";
+
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM product_reservation WHERE expires_at <= ?";
+
+    private static final String SELECT_ALL_SQL =
+            "SELECT id, product_id, quantity, expires_at FROM product_reservation WHERE holder IS NULL";
+
+    private static final String SELECT_ACTIVE_SQL = SELECT_ALL_SQL + " AND id = ? AND expires_at > ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProductReservationStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Reservation insert(Long productId, Integer quantity, Instant expiry) {
+        // the column keeps microseconds
+        Instant expiresAt = expiry.truncatedTo(ChronoUnit.MICROS);
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            ps.setLong(1, productId);
+            ps.setInt(2, quantity);
+            ps.setTimestamp(3, Timestamp.from(expiresAt));
+            return ps;
+        }, keyHolder);
+
+        Long id = Objects.requireNonNull(keyHolder.getKey()).longValue();
+        return new Reservation(id, productId, quantity, expiresAt);
+    }
+
+    /**
+     * Ends a hold unless it has already ended or expired at the passed time.
+     *
+     * @return whether the hold was still active
+     */
+    public boolean delete(Long id, Instant now) {
+        return jdbcTemplate.update(DELETE_ACTIVE_SQL, id, Timestamp.from(now)) > 0;
+    }
+
+    /**
+     * @return the number of reservations that were still stored
+     */
+    public int deleteAll(List<Reservation> reservations) {
+        int[][] batches = jdbcTemplate.batchUpdate(DELETE_SQL, reservations, reservations.size(),
+                (ps, reservation) -> ps.setLong(1, reservation.id()));
+
+        int deleted = 0;
+        for (int[] batch : batches) {
+            for (int count : batch) {
+                deleted += count == 0 ? 0 : 1;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes every hold expired at the passed time, whichever node took it.
+     *
+     * @return the number of deleted holds
+     */
+    public int deleteExpired(Instant now) {
+        return jdbcTemplate.update(DELETE_EXPIRED_SQL, Timestamp.from(now));
+    }
+
+    /**
+     * @return the hold, or empty when it has ended or expired at the passed time
+     */
+    public Optional<Reservation> findById(Long id, Instant now) {
+        return jdbcTemplate.query(SELECT_ACTIVE_SQL, this::toReservation, id, Timestamp.from(now)).stream().findFirst();
+    }
+
+    public List<Reservation> findAll() {
+        return jdbcTemplate.query(SELECT_ALL_SQL, this::toReservation);
+    }
+
+    private Reservation toReservation(ResultSet rs, int row) throws SQLException {
+        return new Reservation(
+                rs.getLong("id"),
+                rs.getLong("product_id"),
+                rs.getInt("quantity"),
+                rs.getTimestamp("expires_at").toInstant());
+    }
+
+}
@@ -0,0 +1,11 @@
+package github.com.itstoony.product.reservation;
+
+import java.time.Instant;
+
+public record Reservation(
+        Long id,
+        Long productId,
+        Integer quantity,
+        Instant expiresAt
+) {
+}
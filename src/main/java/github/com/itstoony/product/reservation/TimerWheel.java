@@ -0,0 +1,88 @@
+package github.com.itstoony.product.reservation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: deadlines are rounded up to ticks and hashed into a fixed ring of buckets, so
+ * scheduling is O(1) and every tick only looks at one bucket, however many timers are pending.
+ * Timers are not cancelled, their owner ignores the ones that fire for work already done.
+ * <p>
+ * Not thread safe, callers synchronize on the wheel.
+ */
+public class TimerWheel<T> {
+
+    private final long tickMillis;
+
+    private final long startMillis;
+
+    private final List<Timer<T>>[] buckets;
+
+    private long currentTick;
+
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(Duration tick, int wheelSize, Instant start) {
+        if (tick.toMillis() <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.tickMillis = tick.toMillis();
+        this.startMillis = start.toEpochMilli();
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Schedules the item to fire on the first tick at or after the deadline, deadlines already in
+     * the past fire on the next tick.
+     */
+    public void schedule(T item, Instant deadline) {
+        long elapsed = deadline.toEpochMilli() - startMillis;
+        long deadlineTick = Math.max(currentTick + 1, Math.floorDiv(elapsed + tickMillis - 1, tickMillis));
+
+        buckets[(int) (deadlineTick % buckets.length)].add(new Timer<>(item, deadlineTick));
+        size++;
+    }
+
+    /**
+     * Moves the wheel forward to the passed time.
+     *
+     * @return the items whose deadline has been reached, in no particular order
+     */
+    public List<T> advance(Instant now) {
+        long targetTick = Math.floorDiv(now.toEpochMilli() - startMillis, tickMillis);
+        if (targetTick <= currentTick) {
+            return List.of();
+        }
+
+        // once the wheel lags a whole turn behind, a single pass over every bucket catches up
+        long steps = Math.min(targetTick - currentTick, buckets.length);
+        List<T> expired = new ArrayList<>();
+        for (long step = 1; step <= steps; step++) {
+            buckets[(int) ((currentTick + step) % buckets.length)].removeIf(timer -> {
+                if (timer.deadlineTick() <= targetTick) {
+                    expired.add(timer.item());
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        currentTick = targetTick;
+        size -= expired.size();
+        return expired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private record Timer<T>(T item, long deadlineTick) {
+    }
+
+}
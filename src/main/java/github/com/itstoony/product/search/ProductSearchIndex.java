@@ -0,0 +1,310 @@
+package github.com.itstoony.product.search;
+
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Embedded Lucene inverted index over product names and descriptions. Searches match every typed
+ * token as a prefix, accent and case insensitive, and are ordered by relevance with name matches
+ * boosted over description matches.
+ * <p>
+ * With {@code product.search.mode=like} the index is never built and {@link #search} always
+ * returns empty, so callers fall back to the database LIKE query. The same happens until the first
+ * {@link #rebuild} finished, so requests served during startup never see a half-filled index.
+ * <p>
+ * The index is node-local: this node's writes reach it once they commit, everyone else's, other
+ * replicas and the reactive profile included, only through {@link ProductSearchIndexFeed}, which
+ * follows the product events the outbox relay publishes. Without that feed, with a memory or file
+ * sink, other writers' changes only show up after a restart.
+ */
+@Slf4j
+@Component
+public class ProductSearchIndex {
+
+    private static final String ID = "id";
+    private static final String NAME = "name";
+    private static final String DESCRIPTION = "description";
+
+    private static final float NAME_BOOST = 2.0f;
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final ProductRepository repository;
+
+    private final boolean enabled;
+
+    private final Analyzer analyzer = new ProductAnalyzer();
+
+    private Directory directory;
+
+    private IndexWriter writer;
+
+    private SearcherManager searcherManager;
+
+    private volatile boolean ready;
+
+    public ProductSearchIndex(ProductRepository repository,
+                              @Value("${product.search.mode:lucene}") String mode,
+                              @Value("${product.search.index-path:}") String indexPath) {
+        this.repository = repository;
+        this.enabled = "lucene".equalsIgnoreCase(mode);
+
+        if (enabled) {
+            open(indexPath);
+        }
+    }
+
+    /**
+     * Searches the index for the passed text.
+     *
+     * @return the matching product ids for the requested page, ordered by relevance, or empty when
+     * the index is disabled, not rebuilt yet, or the text has no searchable tokens
+     */
+    public Optional<SearchHits> search(String text, Pageable pageable) {
+        if (!enabled || !ready) {
+            return Optional.empty();
+        }
+
+        Optional<Query> query = buildQuery(text);
+        if (query.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                int offset = (int) pageable.getOffset();
+                TopDocs topDocs = searcher.search(query.get(), offset + pageable.getPageSize());
+
+                List<Long> ids = new ArrayList<>(pageable.getPageSize());
+                ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+                for (int i = offset; i < scoreDocs.length; i++) {
+                    ids.add(Long.valueOf(searcher.storedFields().document(scoreDocs[i].doc).get(ID)));
+                }
+
+                long totalHits = topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO
+                        ? topDocs.totalHits.value
+                        : searcher.count(query.get());
+
+                return Optional.of(new SearchHits(ids, totalHits));
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to search the product index", ex);
+        }
+    }
+
+    public void index(Product product) {
+        index(List.of(product));
+    }
+
+    /**
+     * Indexes the products once the surrounding transaction commits, or right away outside of one,
+     * so a rolled back write never shows up in search results.
+     */
+    public void index(Collection<Product> products) {
+        if (!enabled || products.isEmpty()) {
+            return;
+        }
+
+        List<Document> documents = products.stream().map(this::toDocument).toList();
+        afterCommit(() -> {
+            try {
+                for (Document document : documents) {
+                    writer.updateDocument(new Term(ID, document.get(ID)), document);
+                }
+                searcherManager.maybeRefreshBlocking();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to index products", ex);
+            }
+        });
+    }
+
+    /**
+     * Removes the product once the surrounding transaction commits, or right away outside of one.
+     */
+    public void remove(Long id) {
+        if (!enabled) {
+            return;
+        }
+
+        afterCommit(() -> {
+            try {
+                writer.deleteDocuments(new Term(ID, id.toString()));
+                searcherManager.maybeRefreshBlocking();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to remove product " + id + " from the index", ex);
+            }
+        });
+    }
+
+    /**
+     * Drops the whole index and reads every product back from the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            writer.deleteAll();
+
+            Pageable pageable = PageRequest.of(0, REBUILD_PAGE_SIZE, Sort.by(ID));
+            Page<Product> page;
+            do {
+                page = repository.findAll(pageable);
+                for (Product product : page) {
+                    writer.addDocument(toDocument(product));
+                }
+                pageable = page.nextPageable();
+            } while (page.hasNext());
+
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+            ready = true;
+
+            log.info("Product search index rebuilt with {} products", writer.getDocStats().numDocs);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to rebuild the product index", ex);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private void open(String indexPath) {
+        try {
+            directory = StringUtils.hasText(indexPath) ? FSDirectory.open(Path.of(indexPath)) : new ByteBuffersDirectory();
+            writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+            searcherManager = new SearcherManager(writer, null);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open the product index", ex);
+        }
+    }
+
+    private void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    private Optional<Query> buildQuery(String text) {
+        if (!StringUtils.hasText(text)) {
+            return Optional.empty();
+        }
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        boolean hasTokens = false;
+
+        try (TokenStream tokens = analyzer.tokenStream(NAME, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                String token = term.toString();
+                Query tokenQuery = new BooleanQuery.Builder()
+                        .add(new BoostQuery(new PrefixQuery(new Term(NAME, token)), NAME_BOOST), BooleanClause.Occur.SHOULD)
+                        .add(new PrefixQuery(new Term(DESCRIPTION, token)), BooleanClause.Occur.SHOULD)
+                        .build();
+                query.add(tokenQuery, BooleanClause.Occur.MUST);
+                hasTokens = true;
+            }
+            tokens.end();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to analyze search text", ex);
+        }
+
+        return hasTokens ? Optional.of(query.build()) : Optional.empty();
+    }
+
+    private Document toDocument(Product product) {
+        Document document = new Document();
+        document.add(new StringField(ID, product.getId().toString(), Field.Store.YES));
+        if (product.getName() != null) {
+            document.add(new TextField(NAME, product.getName(), Field.Store.NO));
+        }
+        if (product.getDescription() != null) {
+            document.add(new TextField(DESCRIPTION, product.getDescription(), Field.Store.NO));
+        }
+        return document;
+    }
+
+    public record SearchHits(List<Long> ids, long totalHits) {
+    }
+
+    private static class ProductAnalyzer extends Analyzer {
+
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer tokenizer = new StandardTokenizer();
+            TokenStream stream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+            return new TokenStreamComponents(tokenizer, stream);
+        }
+
+    }
+
+}
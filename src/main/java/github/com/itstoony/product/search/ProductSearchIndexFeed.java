@@ -0,0 +1,58 @@
+package github.com.itstoony.product.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.outbox.ProductEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps this node's search index in line with the product changes made anywhere, other replicas
+ * and the reactive profile included, by following the events the outbox relay publishes to Kafka.
+ * <p>
+ * Every node reads the whole topic under a consumer group of its own, starting from the latest
+ * offset, since the index is rebuilt from the database on startup anyway. Re-indexing is
+ * idempotent, so the node's own changes, already indexed on commit, and redelivered events are
+ * simply applied again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "product.outbox.sink", havingValue = "kafka")
+public class ProductSearchIndexFeed {
+
+    private final ProductSearchIndex searchIndex;
+
+    private final ObjectMapper objectMapper;
+
+    private final ProductMapper productMapper;
+
+    public ProductSearchIndexFeed(ProductSearchIndex searchIndex, ObjectMapper objectMapper, ProductMapper productMapper) {
+        this.searchIndex = searchIndex;
+        this.objectMapper = objectMapper;
+        this.productMapper = productMapper;
+    }
+
+    @KafkaListener(topics = "${product.outbox.kafka.topic:product-events}",
+            groupId = "#{'product-search-' + T(java.util.UUID).randomUUID()}",
+            properties = "auto.offset.reset=latest")
+    public void onEvent(String message) {
+        try {
+            ProductEvent event = objectMapper.readValue(message, ProductEvent.class);
+            switch (event.type()) {
+                case DELETED -> searchIndex.remove(event.productId());
+                case CREATED, UPDATED -> searchIndex.index(productMapper.toEntity(
+                        objectMapper.readValue(event.payload(), ProductDTO.class)));
+                default -> {
+                    // stock changes leave the name and description alone
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            log.warn("Skipping a product event the search index couldn't read", ex);
+        }
+    }
+
+}
@@ -1,12 +1,14 @@
 package github.com.itstoony.product.security;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import github.com.itstoony.product.repository.UserRepository;
 import github.com.itstoony.product.security.jwt.TokenService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -16,30 +18,58 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 
 @Component
-@RequiredArgsConstructor
 public class SecurityFilter extends OncePerRequestFilter {
 
     private final TokenService tokenService;
 
     private final UserRepository userRepository;
 
+    private final TokenPrincipalCache principalCache;
+
+    private final Timer authenticationTimer;
+
+    private final Timer userLookupTimer;
+
+    public SecurityFilter(TokenService tokenService, UserRepository userRepository,
+                          TokenPrincipalCache principalCache, MeterRegistry registry) {
+        this.tokenService = tokenService;
+        this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.authenticationTimer = Timer.builder("security.authentication")
+                .description("Time spent resolving the principal of a bearer token, cache hits included")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.userLookupTimer = Timer.builder("security.user.lookup")
+                .description("Time spent loading the user of a freshly verified token")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String tokenJWT = getToken(request);
 
         if (tokenJWT != null) {
-            String subject = tokenService.getSubject(tokenJWT);
+            UserDetails user = authenticationTimer.record(() -> principalCache.get(tokenJWT, () -> loadPrincipal(tokenJWT)));
 
-            UserDetails user = userRepository.findByLogin(subject);
+            if (user != null) {
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
 
-            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
-
-            SecurityContextHolder.getContext().setAuthentication(authentication);
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
         }
 
         filterChain.doFilter(request, response);
     }
 
+    private TokenPrincipalCache.VerifiedPrincipal loadPrincipal(String tokenJWT) {
+        DecodedJWT decodedJWT = tokenService.verify(tokenJWT);
+
+        UserDetails user = userLookupTimer.record(() -> userRepository.findByLogin(decodedJWT.getSubject()));
+
+        return new TokenPrincipalCache.VerifiedPrincipal(user, decodedJWT.getExpiresAtAsInstant());
+    }
+
     private String getToken(HttpServletRequest request) {
         String authorization = request.getHeader("Authorization");
 
@@ -0,0 +1,122 @@
+package github.com.itstoony.product.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of already verified JWTs and the principal they resolved to, so authenticated
+ * requests skip the signature check and the user query. Entries are keyed by the token's SHA-256
+ * hash and expire together with the token itself.
+ */
+@Component
+public class TokenPrincipalCache implements MeterBinder {
+
+    private final Cache<String, VerifiedPrincipal> cache;
+
+    public TokenPrincipalCache(@Value("${api.security.token.cache.maximum-size:10000}") long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new UntilTokenExpires())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached principal of the token, verifying it through the passed loader on a miss.
+     * Tokens without an expiration date, or whose user couldn't be resolved, are never cached.
+     *
+     * @return the principal, or null when the loader couldn't resolve a user
+     */
+    public UserDetails get(String token, Supplier<VerifiedPrincipal> loader) {
+        UserDetails cached = getIfPresent(token);
+        if (cached != null) {
+            return cached;
+        }
+
+        VerifiedPrincipal loaded = loader.get();
+        put(token, loaded);
+
+        return loaded.user();
+    }
+
+    /**
+     * The cached principal of the token, for callers that can't block on a loader and resolve the
+     * misses themselves before handing them to {@link #put(String, VerifiedPrincipal)}.
+     *
+     * @return the principal, or null when the token isn't cached
+     */
+    public UserDetails getIfPresent(String token) {
+        VerifiedPrincipal cached = cache.getIfPresent(hash(token));
+        return cached == null ? null : cached.user();
+    }
+
+    /**
+     * Caches the principal a token was verified to, unless it has no user or no expiration date.
+     */
+    public void put(String token, VerifiedPrincipal principal) {
+        if (principal.user() != null && principal.expiresAt() != null) {
+            cache.put(hash(token), principal);
+        }
+    }
+
+    /**
+     * Drops every cached token of the user, so the next request reloads the account. Anything that
+     * changes the credentials or authorities of an existing user, or removes it, must call this;
+     * accounts can only be registered today, and a new login has nothing cached.
+     */
+    public void evictUser(String login) {
+        cache.asMap().values().removeIf(principal -> login.equals(principal.user().getUsername()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "jwt.principals");
+    }
+
+    private String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    public record VerifiedPrincipal(UserDetails user, Instant expiresAt) {
+    }
+
+    private static class UntilTokenExpires implements Expiry<String, VerifiedPrincipal> {
+
+        @Override
+        public long expireAfterCreate(String key, VerifiedPrincipal value, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), value.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedPrincipal value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedPrincipal value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+    }
+
+}
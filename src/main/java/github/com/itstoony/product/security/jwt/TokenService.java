@@ -2,10 +2,13 @@ package github.com.itstoony.product.security.jwt;
 
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTCreationException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import github.com.itstoony.product.model.Product.User;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -16,14 +19,24 @@ import java.time.ZoneOffset;
 @Service
 public class TokenService {
 
-    @Value("${api.security.token.secret}")
-    private String secret;
+    private static final String ISSUER = "Contacts API";
 
+    private final Algorithm algorithm;
+
+    private final JWTVerifier verifier;
+
+    public TokenService(@Value("${api.security.token.secret}") String secret) {
+        this.algorithm = Algorithm.HMAC256(secret);
+        this.verifier = JWT.require(algorithm)
+                .withIssuer(ISSUER)
+                .build();
+    }
+
+    @Timed(value = "jwt.sign", histogram = true)
     public String generateToken(User user) {
         try {
-            Algorithm algorithm = Algorithm.HMAC256(secret);
             return JWT.create()
-                    .withIssuer("Contacts API")
+                    .withIssuer(ISSUER)
                     .withSubject(user.getLogin())
                     .withExpiresAt(expirationDate())
                     .sign(algorithm);
@@ -33,13 +46,13 @@ public class TokenService {
     }
 
     public String getSubject(String tokenJWT) {
+        return verify(tokenJWT).getSubject();
+    }
+
+    @Timed(value = "jwt.verify", histogram = true)
+    public DecodedJWT verify(String tokenJWT) {
         try {
-            Algorithm algorithm = Algorithm.HMAC256(secret);
-            return JWT.require(algorithm)
-                    .withIssuer("Contacts API")
-                    .build()
-                    .verify(tokenJWT)
-                    .getSubject();
+            return verifier.verify(tokenJWT);
         } catch (JWTVerificationException exception) {
             throw new JWTVerificationException("Token JWT invalid or expired");
         }
@@ -0,0 +1,105 @@
+package github.com.itstoony.product.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the whole catalog as newline delimited JSON, one product per line, reading it through a
+ * database cursor and clearing the persistence context every few rows so memory use doesn't grow
+ * with the catalog size.
+ */
+@Slf4j
+@Service
+public class ProductExportService {
+
+    private final ProductRepository repository;
+
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectWriter writer;
+
+    private final ProductMapper productMapper;
+
+    private final int clearInterval;
+
+    public ProductExportService(ProductRepository repository,
+                                EntityManager entityManager,
+                                PlatformTransactionManager transactionManager,
+                                ObjectMapper objectMapper,
+                                ProductMapper productMapper,
+                                @Value("${product.export.clear-interval:500}") int clearInterval) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.writer = objectMapper.writerFor(ProductDTO.class)
+                .withRootValueSeparator("\n")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.productMapper = productMapper;
+        this.clearInterval = clearInterval;
+    }
+
+    /**
+     * @return the number of exported products
+     */
+    public long exportProducts(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+
+        try (JsonGenerator generator = writer.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            Long exported = transactionTemplate.execute(status -> write(generator));
+
+            generator.flush();
+
+            log.info("Exported {} products in {} ms", exported, (System.nanoTime() - start) / 1_000_000);
+            return exported;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private long write(JsonGenerator generator) {
+        long exported = 0;
+
+        try (Stream<Product> products = repository.streamAll()) {
+            Iterator<Product> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, productMapper.toDTO(iterator.next()));
+
+                if (++exported % clearInterval == 0) {
+                    entityManager.clear();
+                }
+            }
+
+            if (exported > 0) {
+                generator.writeRaw('\n');
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return exported;
+    }
+
+}
@@ -0,0 +1,177 @@
+package github.com.itstoony.product.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.ProductImportReportDTO;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductEvent;
+import github.com.itstoony.product.outbox.ProductOutbox;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.search.ProductSearchIndex;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports products from a JSON array or a CSV body, reading one record at a time and inserting
+ * them in fixed-size batches, each one committed in its own transaction together with its
+ * CREATED events.
+ * <p>
+ * A record that can't be read, such as a text quantity or a CSV line with extra columns, is
+ * reported as a rejected row like an invalid one; only a payload that can't be parsed any further
+ * ends the import.
+ */
+@Slf4j
+@Service
+public class ProductImportService {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    private final ProductRepository repository;
+
+    private final ProductSearchIndex searchIndex;
+
+    private final ProductOutbox outbox;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final int batchSize;
+
+    public ProductImportService(ProductRepository repository,
+                                ProductSearchIndex searchIndex,
+                                ProductOutbox outbox,
+                                PlatformTransactionManager transactionManager,
+                                ObjectMapper objectMapper,
+                                Validator validator,
+                                @Value("${product.import.batch-size:500}") int batchSize) {
+        this.repository = repository;
+        this.searchIndex = searchIndex;
+        this.outbox = outbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchSize = batchSize;
+    }
+
+    public ProductImportReportDTO importProducts(InputStream body, MediaType contentType) {
+        long start = System.nanoTime();
+        long row = 0;
+        long imported = 0;
+        List<Long> rejectedRows = new ArrayList<>();
+        List<Product> batch = new ArrayList<>(batchSize);
+
+        try (MappingIterator<ProductDTO> records = openRecords(body, contentType)) {
+            while (records.hasNextValue()) {
+                ProductDTO dto;
+                try {
+                    dto = records.nextValue();
+                } catch (JsonProcessingException ex) {
+                    // the iterator skips the rest of the record on the next call, which fails for a
+                    // payload that can't be parsed any further
+                    row++;
+                    log.warn("Rejected import row {} at line {}: {}", row, lineOf(ex), ex.getOriginalMessage());
+                    rejectedRows.add(row);
+                    continue;
+                }
+                row++;
+
+                if (!validator.validate(dto).isEmpty()) {
+                    rejectedRows.add(row);
+                    continue;
+                }
+
+                batch.add(toProduct(dto));
+                if (batch.size() == batchSize) {
+                    imported += insert(batch);
+                }
+            }
+        } catch (IOException ex) {
+            throw new BusinessException("Malformed import payload after row " + row + ", "
+                    + imported + " products were imported before the failure");
+        }
+
+        imported += insert(batch);
+
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        double rowsPerSecond = row * 1000.0 / elapsedMillis;
+
+        log.info("Imported {} products, rejected {} rows in {} ms ({} rows/s)",
+                imported, rejectedRows.size(), elapsedMillis, Math.round(rowsPerSecond));
+
+        return new ProductImportReportDTO(imported, rejectedRows.size(), rejectedRows, elapsedMillis, rowsPerSecond);
+    }
+
+    private MappingIterator<ProductDTO> openRecords(InputStream body, MediaType contentType) throws IOException {
+        if (contentType != null && TEXT_CSV.isCompatibleWith(contentType)) {
+            return CSV_MAPPER
+                    .readerFor(ProductDTO.class)
+                    .with(CsvSchema.emptySchema().withHeader())
+                    .readValues(body);
+        }
+
+        JsonParser parser = objectMapper.getFactory().createParser(body);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new BusinessException("Imported JSON payload must be an array of products");
+        }
+        parser.nextToken();
+
+        return objectMapper.readerFor(ProductDTO.class).readValues(parser);
+    }
+
+    private static int lineOf(JsonProcessingException ex) {
+        return ex.getLocation() == null ? -1 : ex.getLocation().getLineNr();
+    }
+
+    private int insert(List<Product> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<Product> products = List.copyOf(batch);
+        batch.clear();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> ids = repository.insertAll(products);
+            for (int i = 0; i < ids.size(); i++) {
+                products.get(i).setId(ids.get(i));
+                products.get(i).setVersion(0L);
+            }
+            outbox.appendAll(ProductEvent.Type.CREATED, products);
+        });
+        searchIndex.index(products);
+
+        return products.size();
+    }
+
+    private Product toProduct(ProductDTO dto) {
+        return Product.builder()
+                .name(dto.getName())
+                .description(dto.getDescription())
+                .productValue(dto.getProductValue())
+                .quantity(dto.getQuantity())
+                .build();
+    }
+
+}
@@ -1,77 +1,441 @@
 package github.com.itstoony.product.service;
 
+import github.com.itstoony.product.config.CacheConfig;
 import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.exception.StaleVersionException;
 import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.dto.ProductCursor;
 import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.dto.StockMovementResultDTO;
+import github.com.itstoony.product.outbox.ProductEvent;
+import github.com.itstoony.product.outbox.ProductOutbox;
+import github.com.itstoony.product.repository.ProductBatchRepository.ProductStock;
 import github.com.itstoony.product.repository.ProductRepository;
-import lombok.RequiredArgsConstructor;
+import github.com.itstoony.product.search.ProductSearchIndex;
+import github.com.itstoony.product.stream.ProductStockBroadcaster;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
-@RequiredArgsConstructor
+@Timed(value = "product.service", histogram = true)
 public class ProductService {
 
     private final ProductRepository repository;
 
-    public Product register(Product product) {
-        return repository.save(product);
-    }
+    private final ProductSearchIndex searchIndex;
 
-    public Product update(Product product, ProductDTO dto) {
+    private final CacheManager cacheManager;
 
-        product.setProductValue(Optional.ofNullable(dto.getProductValue()).orElse(product.getProductValue()));
-        product.setName(Optional.ofNullable(dto.getName()).orElse(product.getName()));
-        product.setDescription(Optional.ofNullable(dto.getDescription()).orElse(product.getDescription()));
-        product.setQuantity(Optional.ofNullable(dto.getQuantity()).orElse(product.getQuantity()));
+    private final ProductOutbox outbox;
 
-        repository.save(product);
+    private final ProductStockBroadcaster stockBroadcaster;
 
-        return product;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int updateMaxAttempts;
+
+    private final Duration updateBackoff;
+
+    private final int batchGetChunkSize;
+
+    public ProductService(ProductRepository repository,
+                          ProductSearchIndex searchIndex,
+                          CacheManager cacheManager,
+                          ProductOutbox outbox,
+                          ProductStockBroadcaster stockBroadcaster,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${product.update.max-attempts:3}") int updateMaxAttempts,
+                          @Value("${product.update.backoff:20ms}") Duration updateBackoff,
+                          @Value("${product.batch-get.chunk-size:100}") int batchGetChunkSize) {
+        this.repository = repository;
+        this.searchIndex = searchIndex;
+        this.cacheManager = cacheManager;
+        this.outbox = outbox;
+        this.stockBroadcaster = stockBroadcaster;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.updateMaxAttempts = updateMaxAttempts;
+        this.updateBackoff = updateBackoff;
+        this.batchGetChunkSize = batchGetChunkSize;
+    }
+
+    @Transactional
+    @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#result.id")
+    public Product register(Product product) {
+        Product savedProduct = repository.save(product);
+        outbox.append(ProductEvent.Type.CREATED, savedProduct);
+        searchIndex.index(savedProduct);
+        return savedProduct;
+    }
+
+    /**
+     * Copies the non null fields of the DTO onto the current state of the product, relying on its
+     * version instead of row locks. A write that loses the race against a concurrent one is retried
+     * on a fresh copy with exponential backoff, unless the caller expects a specific version, which
+     * can no longer match once someone else has written.
+     *
+     * @param expectedVersion the version the caller based its changes on, or null to apply them to
+     *                        whatever the current version is
+     * @throws StaleVersionException when the product is no longer at the expected version
+     * @throws OptimisticLockingFailureException when every attempt lost against a concurrent write
+     */
+    @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#id", unless = "#result == null")
+    public Optional<Product> update(Long id, ProductDTO dto, Long expectedVersion) {
+        for (int attempt = 1; ; attempt++) {
+            Optional<Product> updated;
+            try {
+                updated = transactionTemplate.execute(status -> applyUpdate(id, dto, expectedVersion));
+            } catch (OptimisticLockingFailureException ex) {
+                if (expectedVersion != null) {
+                    throw new StaleVersionException("Product has been modified");
+                }
+                if (attempt >= updateMaxAttempts) {
+                    throw ex;
+                }
+                backOff(attempt);
+                continue;
+            }
+
+            updated.ifPresent(product -> {
+                searchIndex.index(product);
+                stockBroadcaster.publish(product);
+            });
+            return updated;
+        }
     }
 
+    @Cacheable(cacheNames = CacheConfig.PRODUCTS, key = "#id", unless = "#result == null")
     public Optional<Product> findById(Long id) {
         return repository.findById(id);
     }
 
-    public Page<Product> listAll(String name, Pageable pageable) {
-        return repository.findByName(name, pageable);
+    /**
+     * Looks up many products at once. Ids found in the product cache are served from it, the misses
+     * are loaded with one IN query per chunk of ids and cached like {@link #findById(Long)} does.
+     *
+     * @return the found products keyed by id, in the order the ids were passed; missing ids are absent
+     */
+    public Map<Long, Product> findAllById(Collection<Long> ids) {
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCTS);
+
+        Map<Long, Product> found = new HashMap<>();
+        Set<Long> misses = new LinkedHashSet<>();
+        for (Long id : ids) {
+            Product cached = cache.get(id, Product.class);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        List<Long> missList = new ArrayList<>(misses);
+        for (int from = 0; from < missList.size(); from += batchGetChunkSize) {
+            List<Long> chunk = missList.subList(from, Math.min(from + batchGetChunkSize, missList.size()));
+            repository.findAllById(chunk).forEach(product -> {
+                found.put(product.getId(), product);
+                cache.put(product.getId(), product);
+            });
+        }
+
+        Map<Long, Product> ordered = new LinkedHashMap<>();
+        for (Long id : ids) {
+            Product product = found.get(id);
+            if (product != null) {
+                ordered.putIfAbsent(id, product);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Lists products as DTO projections inside a read-only transaction, which also turns Hibernate's
+     * flushing off, since the listing never needs managed entities. Name searches are served from
+     * the search index in relevance order, unless the caller asked for a sort, which only the
+     * database query applies.
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductDTO> listAll(String name, Pageable pageable) {
+        if (pageable.getSort().isSorted()) {
+            return repository.findDTOsByName(name, pageable);
+        }
+        return searchIndex.search(name, pageable)
+                .map(hits -> toPage(hits, pageable))
+                .orElseGet(() -> repository.findDTOsByName(name, pageable));
+    }
+
+    /**
+     * Lists products ordered by name and id, starting right after the passed cursor, or from the
+     * first product when it's null. One extra row is read to know whether there is a next slice.
+     */
+    public Slice<Product> listAfter(String name, ProductCursor cursor, int size) {
+        Pageable limit = Pageable.ofSize(size + 1);
+
+        List<Product> products = cursor == null
+                ? repository.findFirstSliceByName(name, limit)
+                : repository.findByNameAfter(name, cursor.name(), cursor.id(), limit);
+
+        boolean hasNext = products.size() > size;
+        List<Product> content = hasNext ? products.subList(0, size) : products;
+
+        return new SliceImpl<>(content, Pageable.ofSize(size), hasNext);
+    }
+
+    public long countByName(String name) {
+        return repository.countByName(name);
     }
 
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#product.id")
     public void delete(Product product) {
         if (product == null || product.getId() == null) {
                 throw new IllegalArgumentException("Can't delete an unsaved product");
         }
-        repository.delete(product);
+        // the passed product may be a cached copy behind the row's version, so the current row is removed
+        repository.findById(product.getId()).ifPresent(current -> {
+            repository.delete(current);
+            outbox.append(ProductEvent.Type.DELETED, current);
+        });
+        searchIndex.remove(product.getId());
     }
 
-    public Product addStorage(Product product, Integer quantity) {
+    @Transactional
+    @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#id", unless = "#result == null")
+    public Optional<Product> addStorage(Long id, Integer quantity) {
 
-        if (quantity <= 0) {
-            throw new BusinessException("Passed quantity should be equal or higher than 1");
+        validateQuantity(quantity);
+
+        if (repository.increaseQuantity(id, quantity) == 0) {
+            if (repository.findQuantityById(id).isEmpty()) {
+                return Optional.empty();
+            }
+            throw new BusinessException("Product's quantity can't go beyond " + Integer.MAX_VALUE);
+        }
+
+        return stockChanged(repository.findById(id));
+    }
+
+    @Transactional
+    @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#id", unless = "#result == null")
+    public Optional<Product> removeStorage(Long id, Integer quantity) {
+
+        validateQuantity(quantity);
+
+        if (repository.decreaseQuantity(id, quantity) == 0) {
+            if (repository.findQuantityById(id).isEmpty()) {
+                return Optional.empty();
+            }
+            throw new BusinessException("Product's current quantity is less than passed quantity");
         }
 
-        product.setQuantity(product.getQuantity() + quantity);
+        return stockChanged(repository.findById(id));
+    }
 
-        return repository.save(product);
+    /**
+     * Locks the product row until the caller's transaction ends. Holds are only stored under this
+     * lock, and every stock removal takes it first, so no removal can slip in between reading the
+     * available quantity and storing a hold.
+     *
+     * @return the product's quantity minus the units held by its unexpired reservations, or empty
+     * when the product doesn't exist
+     */
+    @Transactional
+    public Optional<Integer> lockAvailableStorage(Long id) {
+        return repository.lockStock(id).map(ProductStock::available);
     }
 
-    public Product removeStorage(Product product, Integer quantity) {
+    /**
+     * Takes the units of a hold the caller has just ended out of the product's quantity, in the
+     * caller's transaction.
+     *
+     * @return the product with its new quantity, or empty when it doesn't exist
+     * @throws BusinessException when the quantity left besides the other holds is lower than the passed one
+     */
+    @Transactional
+    public Optional<Product> removeReservedStorage(Long id, Integer quantity) {
 
-        if (quantity <= 0) {
-            throw new BusinessException("Passed quantity should be equal or higher than 1");
+        if (repository.decreaseQuantity(id, quantity) == 0) {
+            if (repository.findQuantityById(id).isEmpty()) {
+                return Optional.empty();
+            }
+            throw new BusinessException("Product's current quantity is less than reserved quantity");
         }
 
-        if (quantity > product.getQuantity()) {
-            throw new BusinessException("Product's current quantity is less than passed quantity");
+        evictAfterCommit(id);
+        return stockChanged(repository.findById(id));
+    }
+
+    /**
+     * Reads the product's quantity and its held units straight from the database, bypassing the
+     * product cache so both figures are from the same moment.
+     */
+    public Optional<ProductStock> findStock(Long id) {
+        return repository.findStockById(id);
+    }
+
+    /**
+     * Applies a list of stock movements in a single transaction, reporting the outcome of each one
+     * in request order. Rejected movements don't roll back the applied ones, and the reported
+     * quantity is the product's quantity once the whole batch has been applied.
+     */
+    @Transactional
+    public List<StockMovementResultDTO> applyStockMovements(List<StockMovementDTO> movements) {
+
+        StockMovementResultDTO[] results = new StockMovementResultDTO[movements.size()];
+        List<Integer> accepted = new ArrayList<>();
+
+        for (int i = 0; i < movements.size(); i++) {
+            try {
+                validateMovement(movements.get(i));
+                accepted.add(i);
+            } catch (BusinessException ex) {
+                results[i] = StockMovementResultDTO.rejected(movements.get(i), ex.getMessage());
+            }
+        }
+
+        // updates are sent ordered by id so concurrent batches lock rows in the same order
+        accepted.sort(Comparator.comparing(i -> movements.get(i).id()));
+
+        List<StockMovementDTO> orderedMovements = accepted.stream().map(movements::get).toList();
+        int[] updatedRows = repository.adjustQuantities(orderedMovements);
+
+        Map<Long, Integer> quantities = new HashMap<>();
+        Set<Long> changed = new HashSet<>();
+        List<Product> reloaded = repository.findAllById(orderedMovements.stream().map(StockMovementDTO::id).distinct().toList());
+        reloaded.forEach(product -> quantities.put(product.getId(), product.getQuantity()));
+
+        for (int i = 0; i < accepted.size(); i++) {
+            int index = accepted.get(i);
+            StockMovementDTO movement = movements.get(index);
+
+            if (updatedRows[i] != 0) {
+                results[index] = StockMovementResultDTO.applied(movement, quantities.get(movement.id()));
+                changed.add(movement.id());
+            } else if (quantities.containsKey(movement.id())) {
+                results[index] = StockMovementResultDTO.rejected(movement, "Product's current quantity is less than passed quantity");
+            } else {
+                results[index] = StockMovementResultDTO.rejected(movement, "Product not found");
+            }
         }
 
-        product.setQuantity(product.getQuantity() - quantity);
+        List<Product> changedProducts = reloaded.stream().filter(product -> changed.contains(product.getId())).toList();
+        outbox.appendAll(ProductEvent.Type.STOCK_CHANGED, changedProducts);
+        stockBroadcaster.publishAll(changedProducts);
 
-        return repository.save(product);
+        // evictions are deferred until the batch commits
+        Cache cache = new TransactionAwareCacheDecorator(cacheManager.getCache(CacheConfig.PRODUCTS));
+        quantities.keySet().forEach(cache::evict);
+
+        return Arrays.asList(results);
+    }
+
+    private Optional<Product> applyUpdate(Long id, ProductDTO dto, Long expectedVersion) {
+        Optional<Product> found = repository.findById(id);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Product product = found.get();
+        if (expectedVersion != null && !expectedVersion.equals(product.getVersion())) {
+            throw new StaleVersionException("Product has been modified");
+        }
+
+        product.setProductValue(Optional.ofNullable(dto.getProductValue()).orElse(product.getProductValue()));
+        product.setName(Optional.ofNullable(dto.getName()).orElse(product.getName()));
+        product.setDescription(Optional.ofNullable(dto.getDescription()).orElse(product.getDescription()));
+        product.setQuantity(Optional.ofNullable(dto.getQuantity()).orElse(product.getQuantity()));
+        // the row lock keeps new holds out until the quantity is written
+        if (dto.getQuantity() != null && dto.getQuantity() < repository.lockStock(id).map(ProductStock::held).orElse(0)) {
+            throw new BusinessException("Product's quantity can't be lower than its reserved quantity");
+        }
+
+        Product savedProduct = repository.save(product);
+        outbox.append(ProductEvent.Type.UPDATED, savedProduct);
+        return Optional.of(savedProduct);
+    }
+
+    private Optional<Product> stockChanged(Optional<Product> product) {
+        product.ifPresent(changed -> {
+            outbox.append(ProductEvent.Type.STOCK_CHANGED, changed);
+            stockBroadcaster.publish(changed);
+        });
+        return product;
+    }
+
+    private void evictAfterCommit(Long id) {
+        // a cached copy written before the caller's transaction commits could outlive a rollback
+        new TransactionAwareCacheDecorator(cacheManager.getCache(CacheConfig.PRODUCTS)).evict(id);
+    }
+
+    private Page<ProductDTO> toPage(ProductSearchIndex.SearchHits hits, Pageable pageable) {
+        if (hits.ids().isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, hits.totalHits());
+        }
+
+        Map<Long, ProductDTO> products = new HashMap<>();
+        repository.findDTOsByIdIn(hits.ids()).forEach(product -> products.put(product.getId(), product));
+
+        List<ProductDTO> content = hits.ids().stream()
+                .map(products::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+        return new PageImpl<>(content, pageable, hits.totalHits());
+    }
+
+    private void backOff(int attempt) {
+        long base = updateBackoff.toMillis() << (attempt - 1);
+        try {
+            Thread.sleep(base + ThreadLocalRandom.current().nextLong(base + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying a product update", ex);
+        }
+    }
+
+    private void validateMovement(StockMovementDTO movement) {
+        if (movement.id() == null || movement.delta() == null) {
+            throw new BusinessException("Movement id and delta must not be null");
+        }
+        validateQuantity(Math.abs(movement.delta()));
+    }
+
+    private void validateQuantity(Integer quantity) {
+        if (quantity <= 0) {
+            throw new BusinessException("Passed quantity should be equal or higher than 1");
+        }
     }
 
 }
@@ -1,5 +1,6 @@
 package github.com.itstoony.product.service;
 
+import github.com.itstoony.product.exception.BusinessException;
 import github.com.itstoony.product.model.Product.User;
 import github.com.itstoony.product.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
@@ -14,6 +15,11 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
 
     public User register(User user) {
+        // checked before hashing, the unique index on login still rejects concurrent duplicates
+        if (repository.existsByLogin(user.getLogin())) {
+            throw new BusinessException("Login already registered");
+        }
+
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         return repository.save(user);
     }
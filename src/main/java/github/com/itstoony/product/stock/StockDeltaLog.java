@@ -0,0 +1,193 @@
+package github.com.itstoony.product.stock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local append log of accepted stock deltas, one segment file per epoch and one
+ * {@code productId delta} line per delta. A segment is deleted once its epoch is written to the
+ * database, so whatever is left on startup still has to be applied.
+ */
+class StockDeltaLog {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("stock-deltas-(\\d+)\\.log");
+
+    private static final String NODE_FILE = "node-id";
+
+    private final Path directory;
+
+    private final boolean fsync;
+
+    StockDeltaLog(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+    }
+
+    /**
+     * The node id kept next to the segments, generated on first use, so the log and the
+     * checkpoint it is replayed against always go together.
+     */
+    String nodeId() throws IOException {
+        Path path = directory.resolve(NODE_FILE);
+        if (Files.exists(path)) {
+            return Files.readString(path, StandardCharsets.US_ASCII).trim();
+        }
+
+        Files.createDirectories(directory);
+        String node = UUID.randomUUID().toString();
+        Files.writeString(path, node, StandardCharsets.US_ASCII, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.SYNC);
+        return node;
+    }
+
+    Segment open(long epoch) throws IOException {
+        Files.createDirectories(directory);
+        Path path = directory.resolve("stock-deltas-" + epoch + ".log");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Segment(path, channel, fsync);
+    }
+
+    /**
+     * Reads the segments left over by a previous run, a last line torn by a crash is skipped.
+     *
+     * @return the units added and removed per product of every segment after the passed epoch, by epoch
+     */
+    TreeMap<Long, Map<Long, StockTotals>> recover(long afterEpoch) throws IOException {
+        TreeMap<Long, Map<Long, StockTotals>> segments = new TreeMap<>();
+        for (Path path : segmentFiles()) {
+            long epoch = epochOf(path);
+            if (epoch <= afterEpoch) {
+                continue;
+            }
+
+            Map<Long, StockTotals> deltas = new TreeMap<>();
+            String content = Files.readString(path, StandardCharsets.US_ASCII);
+            int end = content.lastIndexOf('\n');
+            if (end >= 0) {
+                for (String line : content.substring(0, end).split("\n")) {
+                    int separator = line.indexOf(' ');
+                    deltas.merge(Long.parseLong(line.substring(0, separator)),
+                            StockTotals.of(Long.parseLong(line.substring(separator + 1))), StockTotals::plus);
+                }
+            }
+            segments.put(epoch, deltas);
+        }
+        return segments;
+    }
+
+    long lastEpoch() throws IOException {
+        long last = 0;
+        for (Path path : segmentFiles()) {
+            last = Math.max(last, epochOf(path));
+        }
+        return last;
+    }
+
+    void deleteUpTo(long epoch) throws IOException {
+        for (Path path : segmentFiles()) {
+            if (epochOf(path) <= epoch) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return new ArrayList<>(files.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches()).toList());
+        }
+    }
+
+    private static long epochOf(Path path) {
+        Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a stock delta segment: " + path);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * Appends are safe from many threads. Durability is group committed: a writer waiting for its
+     * delta forces every delta written so far, and the writers behind it find theirs already forced.
+     */
+    static class Segment {
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private final boolean fsync;
+
+        private final AtomicLong written = new AtomicLong();
+
+        private final Object syncLock = new Object();
+
+        private volatile long synced;
+
+        private Segment(Path path, FileChannel channel, boolean fsync) {
+            this.path = path;
+            this.channel = channel;
+            this.fsync = fsync;
+        }
+
+        /**
+         * @return the ticket to pass to {@link #awaitDurable(long)}
+         */
+        long append(long productId, int delta) throws IOException {
+            ByteBuffer line = ByteBuffer.wrap((productId + " " + delta + "\n").getBytes(StandardCharsets.US_ASCII));
+            // a channel in append mode writes each buffer as a whole at the end of the file
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            return written.incrementAndGet();
+        }
+
+        void awaitDurable(long ticket) throws IOException {
+            if (!fsync || synced >= ticket) {
+                return;
+            }
+            synchronized (syncLock) {
+                if (synced < ticket) {
+                    long covered = written.get();
+                    channel.force(false);
+                    synced = covered;
+                }
+            }
+        }
+
+        /**
+         * Forces and closes the segment once no more deltas are appended to it.
+         */
+        void seal() throws IOException {
+            synchronized (syncLock) {
+                if (fsync) {
+                    channel.force(false);
+                }
+                synced = Long.MAX_VALUE;
+                channel.close();
+            }
+        }
+
+        void delete() throws IOException {
+            Files.deleteIfExists(path);
+        }
+
+    }
+
+}
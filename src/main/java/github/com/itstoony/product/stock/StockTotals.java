@@ -0,0 +1,21 @@
+package github.com.itstoony.product.stock;
+
+/**
+ * Units added to and removed from one product, summed apart so that a removal the database refuses
+ * never takes the additions along.
+ */
+record StockTotals(long added, long removed) {
+
+    static StockTotals of(long delta) {
+        return delta >= 0 ? new StockTotals(delta, 0) : new StockTotals(0, -delta);
+    }
+
+    StockTotals plus(StockTotals other) {
+        return new StockTotals(added + other.added, removed + other.removed);
+    }
+
+    long net() {
+        return added - removed;
+    }
+
+}
@@ -0,0 +1,891 @@
+package github.com.itstoony.product.stock;
+
+import github.com.itstoony.product.config.CacheConfig;
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.exception.ServiceOverloadedException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductEvent;
+import github.com.itstoony.product.outbox.ProductOutbox;
+import github.com.itstoony.product.repository.ProductBatchRepository.ProductStock;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.service.ProductService;
+import github.com.itstoony.product.stream.ProductStockBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional write-behind mode of the storage endpoints. Accepted additions and removals are summed
+ * per product in striped {@link LongAdder}s and written as one guarded UPDATE of their net per
+ * product on every flush, instead of one row update per call.
+ * <p>
+ * Removals are only accepted within a budget the node has already taken from the database: a hold
+ * of its own in product_reservation, taken {@code budget} units at a time under the product row lock
+ * and shrunk by the removals each flush writes. Nobody else can remove or reserve held units, so an
+ * acknowledged removal is never refused at flush time; a removal the database can't cover is
+ * refused up front instead. Budgets left unused by products that went idle are given back on the
+ * next flush. The hold lease, renewed on every flush, only bounds how long a crashed node has to
+ * come back and replay its removals; past it, they may be refused and are dropped and counted.
+ * Additions are validated against the quantity column range.
+ * <p>
+ * Deltas are grouped in epochs, one {@link StockDeltaLog} segment each. A delta is acknowledged
+ * once its line is forced to the segment; an epoch is written to the database together with a
+ * checkpoint of its number and only then deleted, so a restart replays exactly the epochs that
+ * never reached the database. Sync callers wait for the flush of their epoch.
+ * <p>
+ * The checkpoint and the holds belong to the node id, which is either configured or generated and
+ * kept in the log directory. A running instance holds a lease on its node id and startup fails
+ * while another instance holds it, so two instances never share a log, a checkpoint or a budget.
+ */
+@Slf4j
+@Component
+public class StockWriteBehind implements SmartInitializingSingleton, DisposableBean {
+
+    private static final String CLAIM_NODE_SQL = "UPDATE stock_write_behind_checkpoint SET owner = ?, lease_until = ? " +
+            "WHERE node = ? AND (owner = ? OR owner IS NULL OR lease_until < ?)";
+
+    private static final String INSERT_CHECKPOINT_SQL =
+            "INSERT INTO stock_write_behind_checkpoint (node, epoch, owner, lease_until) VALUES (?, 0, ?, ?)";
+
+    private static final String RELEASE_NODE_SQL =
+            "UPDATE stock_write_behind_checkpoint SET owner = NULL, lease_until = NULL WHERE node = ? AND owner = ?";
+
+    private static final String UPDATE_CHECKPOINT_SQL =
+            "UPDATE stock_write_behind_checkpoint SET epoch = ?, lease_until = ? WHERE node = ? AND owner = ?";
+
+    private static final String SELECT_CHECKPOINT_SQL = "SELECT epoch FROM stock_write_behind_checkpoint WHERE node = ?";
+
+    private static final String ADJUST_HOLD_SQL = "UPDATE product_reservation SET quantity = quantity + ?, expires_at = ? " +
+            "WHERE holder = ? AND product_id = ? AND expires_at > ? AND quantity + ? >= 0";
+
+    private static final String INSERT_HOLD_SQL =
+            "INSERT INTO product_reservation (product_id, quantity, expires_at, holder) VALUES (?, ?, ?, ?)";
+
+    private static final String DELETE_LAPSED_HOLD_SQL =
+            "DELETE FROM product_reservation WHERE holder = ? AND product_id = ? AND expires_at <= ?";
+
+    private static final String DELETE_EMPTY_HOLD_SQL =
+            "DELETE FROM product_reservation WHERE holder = ? AND product_id = ? AND quantity = 0";
+
+    private static final String DELETE_HOLDS_SQL = "DELETE FROM product_reservation WHERE holder = ?";
+
+    private final boolean enabled;
+
+    private final ProductService productService;
+
+    private final ProductRepository repository;
+
+    private final ProductOutbox outbox;
+
+    private final ProductStockBroadcaster stockBroadcaster;
+
+    private final CacheManager cacheManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final StockDeltaLog deltaLog;
+
+    private final String configuredNode;
+
+    private final String owner = UUID.randomUUID().toString();
+
+    private final Duration nodeLease;
+
+    private final int budget;
+
+    private final Duration budgetLease;
+
+    private final Duration flushInterval;
+
+    private final Duration syncTimeout;
+
+    private final ConcurrentMap<Long, StockCounter> counters = new ConcurrentHashMap<>();
+
+    /** Budget units to give back, of evicted counters or of claims that lost their counter. */
+    private final ConcurrentMap<Long, Long> releases = new ConcurrentHashMap<>();
+
+    /** Appenders share the read lock, sealing an epoch takes the write lock. */
+    private final ReadWriteLock epochLock = new ReentrantReadWriteLock();
+
+    private final List<Epoch> unflushed = new ArrayList<>();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService flusher;
+
+    private final Counter rejected;
+
+    private final Timer flushTimer;
+
+    private volatile String node;
+
+    private volatile Instant nodeRenewedAt = Instant.MIN;
+
+    private volatile Epoch current;
+
+    public StockWriteBehind(ProductService productService,
+                            ProductRepository repository,
+                            ProductOutbox outbox,
+                            ProductStockBroadcaster stockBroadcaster,
+                            CacheManager cacheManager,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry registry,
+                            @Value("${product.stock.write-behind.enabled:false}") boolean enabled,
+                            @Value("${product.stock.write-behind.log-directory:stock-deltas}") Path logDirectory,
+                            @Value("${product.stock.write-behind.fsync:true}") boolean fsync,
+                            @Value("${product.stock.write-behind.node:}") String node,
+                            @Value("${product.stock.write-behind.node-lease:30s}") Duration nodeLease,
+                            @Value("${product.stock.write-behind.budget:100}") int budget,
+                            @Value("${product.stock.write-behind.budget-lease:10m}") Duration budgetLease,
+                            @Value("${product.stock.write-behind.flush-interval:50ms}") Duration flushInterval,
+                            @Value("${product.stock.write-behind.sync-timeout:2s}") Duration syncTimeout) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("product.stock.write-behind.budget must be at least 1");
+        }
+        this.enabled = enabled;
+        this.productService = productService;
+        this.repository = repository;
+        this.outbox = outbox;
+        this.stockBroadcaster = stockBroadcaster;
+        this.cacheManager = cacheManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.deltaLog = new StockDeltaLog(logDirectory, fsync);
+        this.configuredNode = node;
+        this.nodeLease = nodeLease;
+        this.budget = budget;
+        this.budgetLease = budgetLease;
+        this.flushInterval = flushInterval;
+        this.syncTimeout = syncTimeout;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("stock-write-behind-"));
+
+        this.rejected = Counter.builder("product.stock.write-behind.rejected")
+                .description("Stock removals or additions the database refused at flush time")
+                .register(registry);
+        this.flushTimer = Timer.builder("product.stock.write-behind.flush")
+                .description("Time spent writing the accumulated stock deltas to the database")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("product.stock.write-behind.products", counters, Map::size)
+                .description("Products with a stock count held by write-behind")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the id this node's checkpoint and holds are stored under, null until started
+     */
+    public String getNode() {
+        return node;
+    }
+
+    public Optional<Product> addStorage(Long id, Integer quantity, boolean sync) {
+        validateQuantity(quantity);
+        return adjust(id, quantity, sync);
+    }
+
+    public Optional<Product> removeStorage(Long id, Integer quantity, boolean sync) {
+        validateQuantity(quantity);
+        return adjust(id, -quantity, sync);
+    }
+
+    /**
+     * Seals the current epoch, writes every unflushed epoch to the database and gives back the
+     * budgets of idle products. Runs on the flusher thread, and is public so tests can flush on
+     * demand.
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+
+        Epoch sealed;
+        epochLock.writeLock().lock();
+        try {
+            sealed = current;
+            try {
+                current = new Epoch(sealed.number + 1, deltaLog.open(sealed.number + 1));
+            } catch (IOException ex) {
+                log.warn("Couldn't open stock delta segment {}, appending to the current one", sealed.number + 1, ex);
+                return;
+            }
+            evictIdleCounters(sealed);
+        } finally {
+            epochLock.writeLock().unlock();
+        }
+
+        try {
+            sealed.segment.seal();
+        } catch (IOException ex) {
+            log.warn("Couldn't seal stock delta segment {}", sealed.number, ex);
+        }
+        unflushed.add(sealed);
+
+        Map<Long, StockTotals> totals = new TreeMap<>();
+        for (Epoch epoch : unflushed) {
+            epoch.added.forEach((id, units) -> totals.merge(id, new StockTotals(units.sum(), 0), StockTotals::plus));
+            epoch.removed.forEach((id, units) -> totals.merge(id, new StockTotals(0, units.sum()), StockTotals::plus));
+        }
+        totals.values().removeIf(total -> total.net() == 0 && total.removed() == 0);
+
+        if (!totals.isEmpty()) {
+            Refused refused;
+            try {
+                refused = flushTimer.record(() -> write(totals, sealed.number));
+            } catch (RuntimeException ex) {
+                log.warn("Couldn't write {} stock deltas, retrying on the next flush", totals.size(), ex);
+                return;
+            }
+            for (Epoch epoch : unflushed) {
+                refused.additions().stream().filter(epoch.added::containsKey).forEach(epoch.refusedAdditions::add);
+                refused.removals().stream().filter(epoch.removed::containsKey).forEach(epoch.refusedRemovals::add);
+            }
+        }
+
+        for (Epoch epoch : unflushed) {
+            try {
+                epoch.segment.delete();
+            } catch (IOException ex) {
+                // replayed deltas are skipped through the checkpoint
+                log.warn("Couldn't delete stock delta segment {}", epoch.number, ex);
+            }
+            epoch.flushed.complete(null);
+        }
+        unflushed.clear();
+
+        releaseBudgets();
+        if (Instant.now().isAfter(nodeRenewedAt.plus(nodeLease.dividedBy(3)))) {
+            renewNode();
+        }
+    }
+
+    /**
+     * Takes the node id, applies the deltas left over by the previous run, gives back the budgets
+     * it left and starts flushing.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            node = configuredNode.isBlank() ? deltaLog.nodeId() : configuredNode;
+            claimNode();
+
+            long checkpoint = loadCheckpoint();
+            TreeMap<Long, Map<Long, StockTotals>> segments = deltaLog.recover(checkpoint);
+            if (!segments.isEmpty()) {
+                Map<Long, StockTotals> totals = new TreeMap<>();
+                segments.values().forEach(deltas -> deltas.forEach((id, total) -> totals.merge(id, total, StockTotals::plus)));
+                totals.values().removeIf(total -> total.net() == 0 && total.removed() == 0);
+
+                write(totals, segments.lastKey());
+                log.info("Replayed the stock deltas of {} products from {} unflushed epochs", totals.size(), segments.size());
+            }
+            jdbcTemplate.update(DELETE_HOLDS_SQL, node);
+
+            long lastEpoch = Math.max(checkpoint, deltaLog.lastEpoch());
+            deltaLog.deleteUpTo(lastEpoch);
+            current = new Epoch(lastEpoch + 1, deltaLog.open(lastEpoch + 1));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Couldn't recover the stock delta log", ex);
+        }
+
+        flusher.scheduleWithFixedDelay(this::scheduledFlush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        flusher.shutdown();
+        flusher.awaitTermination(syncTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        if (enabled && current != null) {
+            flush();
+            synchronized (this) {
+                // holds of removals that didn't reach the database are kept for the replay
+                if (unflushed.isEmpty()) {
+                    jdbcTemplate.update(DELETE_HOLDS_SQL, node);
+                }
+            }
+            jdbcTemplate.update(RELEASE_NODE_SQL, node, owner);
+        }
+    }
+
+    private Optional<Product> adjust(Long id, int delta, boolean sync) {
+        if (!enabled) {
+            throw new IllegalStateException("Stock write-behind is disabled");
+        }
+
+        Optional<Product> product = productService.findById(id);
+        if (product.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Epoch epoch;
+        long ticket;
+        long available;
+        while (true) {
+            // loaded outside the map's locks, a racing load simply loses
+            StockCounter counter = counters.get(id);
+            if (counter == null) {
+                StockCounter loaded = load(id);
+                if (loaded == null) {
+                    return Optional.empty();
+                }
+                StockCounter raced = counters.putIfAbsent(id, loaded);
+                counter = raced == null ? loaded : raced;
+            }
+
+            epochLock.readLock().lock();
+            try {
+                if (counters.get(id) != counter) {
+                    // evicted before the lock was taken, its budget is already given back
+                    continue;
+                }
+                if (counter.tryAdd(delta)) {
+                    epoch = current;
+                    LongAdder accumulated = accumulator(delta > 0 ? epoch.added : epoch.removed, id);
+                    accumulated.add(Math.abs(delta));
+                    try {
+                        ticket = epoch.segment.append(id, delta);
+                    } catch (IOException ex) {
+                        accumulated.add(-Math.abs(delta));
+                        counter.undo(delta);
+                        throw new UncheckedIOException("Couldn't log the stock delta", ex);
+                    }
+                    available = counter.available();
+                    break;
+                }
+            } finally {
+                epochLock.readLock().unlock();
+            }
+
+            if (delta > 0 || !claimBudget(id, counter, -delta)) {
+                throw refusal(delta);
+            }
+        }
+
+        try {
+            epoch.segment.awaitDurable(ticket);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Couldn't force the stock delta log", ex);
+        }
+
+        if (sync) {
+            awaitFlush(epoch);
+            if ((delta > 0 ? epoch.refusedAdditions : epoch.refusedRemovals).contains(id)) {
+                throw refusal(delta);
+            }
+            return productService.findById(id);
+        }
+
+        // the stock figure comes from the count alone, the other fields don't move with the stock
+        Product current = product.get();
+        return Optional.of(Product.builder()
+                .id(current.getId())
+                .name(current.getName())
+                .description(current.getDescription())
+                .productValue(current.getProductValue())
+                .quantity((int) Math.max(0, Math.min(Integer.MAX_VALUE, available)))
+                .version(current.getVersion())
+                .updatedAt(current.getUpdatedAt())
+                .build());
+    }
+
+    private static LongAdder accumulator(ConcurrentMap<Long, LongAdder> accumulators, Long id) {
+        LongAdder accumulator = accumulators.get(id);
+        return accumulator != null ? accumulator : accumulators.computeIfAbsent(id, key -> new LongAdder());
+    }
+
+    /**
+     * Takes at least the units the counter lacks for the removal, and up to {@code budget} units,
+     * from what the product has available in the database, one claim per counter at a time.
+     *
+     * @return false when the database doesn't have the units the removal needs
+     */
+    private boolean claimBudget(Long id, StockCounter counter, int units) {
+        synchronized (counter) {
+            long needed = counter.shortfall(units);
+            if (needed <= 0) {
+                // taken by a concurrent claim
+                return true;
+            }
+
+            Integer granted = transactionTemplate.execute(status -> takeHold(id, needed));
+            if (granted == null || granted == 0) {
+                return false;
+            }
+
+            epochLock.readLock().lock();
+            try {
+                if (counters.get(id) == counter) {
+                    counter.grant(granted);
+                } else {
+                    releases.merge(id, (long) granted, Long::sum);
+                }
+            } finally {
+                epochLock.readLock().unlock();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Adds units to this node's hold on the product, under the product row lock.
+     *
+     * @return the units added, 0 when the product doesn't have the needed units available
+     */
+    private int takeHold(Long id, long needed) {
+        Optional<ProductStock> stock = repository.lockStock(id);
+        if (stock.isEmpty() || stock.get().available() < needed) {
+            return 0;
+        }
+
+        int granted = (int) Math.min(stock.get().available(), Math.max(needed, budget));
+        Timestamp now = Timestamp.from(Instant.now());
+        Timestamp until = Timestamp.from(Instant.now().plus(budgetLease));
+        if (jdbcTemplate.update(ADJUST_HOLD_SQL, granted, until, node, id, now, granted) == 0) {
+            // a lapsed hold no longer counts, its units may have been taken since
+            jdbcTemplate.update(DELETE_LAPSED_HOLD_SQL, node, id, now);
+            jdbcTemplate.update(INSERT_HOLD_SQL, id, granted, until, node);
+        }
+        return granted;
+    }
+
+    /**
+     * Moves this node's holds by the passed units and renews their lease, after locking the
+     * products, in the lock order of every other stock change. Must run in a transaction.
+     *
+     * @return the products whose hold had lapsed or was too small
+     */
+    private Set<Long> adjustHolds(Map<Long, Long> units) {
+        repository.lockStocks(units.keySet());
+
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(units.entrySet());
+        Timestamp now = Timestamp.from(Instant.now());
+        Timestamp until = Timestamp.from(Instant.now().plus(budgetLease));
+        int[][] batches = jdbcTemplate.batchUpdate(ADJUST_HOLD_SQL, entries, entries.size(), (ps, entry) -> {
+            // holds stay within the int range, a bigger delta fails the guard
+            int delta = (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, entry.getValue()));
+            ps.setInt(1, delta);
+            ps.setTimestamp(2, until);
+            ps.setString(3, node);
+            ps.setLong(4, entry.getKey());
+            ps.setTimestamp(5, now);
+            ps.setInt(6, delta);
+        });
+        jdbcTemplate.batchUpdate(DELETE_EMPTY_HOLD_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setString(1, node);
+            ps.setLong(2, entry.getKey());
+        });
+
+        Set<Long> missed = new HashSet<>();
+        int index = 0;
+        for (int[] batch : batches) {
+            for (int count : batch) {
+                if (count == 0 && entries.get(index).getValue() != 0) {
+                    missed.add(entries.get(index).getKey());
+                }
+                index++;
+            }
+        }
+        return missed;
+    }
+
+    /**
+     * Gives back the budget units no counter uses any more. Units that couldn't be given back stay
+     * queued, and lapse with their hold at worst.
+     */
+    private void releaseBudgets() {
+        if (releases.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Long> units = new TreeMap<>();
+        for (Long id : releases.keySet()) {
+            Long released = releases.remove(id);
+            if (released != null) {
+                units.put(id, -released);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> adjustHolds(units));
+        } catch (RuntimeException ex) {
+            log.warn("Couldn't give back the stock budgets of {} products, retrying on the next flush", units.size(), ex);
+            units.forEach((id, released) -> releases.merge(id, -released, Long::sum));
+        }
+    }
+
+    private void awaitFlush(Epoch epoch) {
+        if (flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::scheduledFlush);
+        }
+        try {
+            epoch.flushed.get(syncTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new ServiceOverloadedException("Stock change accepted but not written yet, try again later");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the stock change to be written", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Stock change couldn't be written", ex.getCause());
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.warn("Stock write-behind flush failed", ex);
+        }
+    }
+
+    /**
+     * Writes the net deltas and the checkpoint in one transaction, shrinking this node's holds by
+     * the removals written, then rebases the counts on the resulting quantities and tells the
+     * product cache, the outbox and the stock stream. A net removal is only refused when its hold
+     * lapsed; the additions of the product are then written on their own, so acknowledged additions
+     * are never dropped along with it.
+     *
+     * @return the products whose additions or removals were dropped
+     */
+    private Refused write(Map<Long, StockTotals> totals, long epoch) {
+        Set<Long> refusedAdditions = new HashSet<>();
+        Set<Long> refusedRemovals = new HashSet<>();
+        Map<Long, Integer> held = new HashMap<>();
+        List<Product> products = transactionTemplate.execute(status -> {
+            refusedAdditions.clear();
+            refusedRemovals.clear();
+
+            Map<Long, Long> removals = new TreeMap<>();
+            totals.forEach((id, total) -> removals.put(id, -total.removed()));
+            Set<Long> lapsed = adjustHolds(removals);
+            if (!lapsed.isEmpty()) {
+                log.warn("The stock holds of products {} lapsed, their removals are checked against the stock again", lapsed);
+            }
+
+            Set<Long> refused = new HashSet<>();
+            Map<Long, Long> nets = new TreeMap<>();
+            totals.forEach((id, total) -> {
+                // the counts keep nets within the int range, a removal beyond it can't be split safely
+                if (Math.abs(total.net()) > Integer.MAX_VALUE) {
+                    refused.add(id);
+                } else if (total.net() != 0) {
+                    nets.put(id, total.net());
+                }
+            });
+            refused.addAll(apply(nets));
+
+            Map<Long, Long> additions = new TreeMap<>();
+            for (Long id : refused) {
+                StockTotals total = totals.get(id);
+                if (total.net() > 0) {
+                    refusedAdditions.add(id);
+                } else {
+                    refusedRemovals.add(id);
+                    if (total.added() > 0) {
+                        additions.put(id, total.added());
+                    }
+                }
+            }
+            refusedAdditions.addAll(apply(additions));
+
+            saveCheckpoint(epoch);
+            List<Product> found = repository.findAllById(totals.keySet());
+            held.putAll(repository.findHeldQuantities(totals.keySet()));
+            outbox.appendAll(ProductEvent.Type.STOCK_CHANGED, found.stream()
+                    .filter(product -> changed(product.getId(), totals, refusedAdditions, refusedRemovals))
+                    .toList());
+            return found;
+        });
+
+        refusedRemovals.forEach(id -> drop("removal", totals.get(id).removed(), id));
+        refusedAdditions.forEach(id -> drop("addition", totals.get(id).added(), id));
+
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCTS);
+        totals.keySet().forEach(cache::evict);
+
+        Set<Long> found = new HashSet<>();
+        for (Product product : products) {
+            found.add(product.getId());
+            StockCounter counter = counters.get(product.getId());
+            if (counter != null) {
+                counter.rebase(product.getQuantity(), held.getOrDefault(product.getId(), 0), totals.get(product.getId()).added());
+            }
+        }
+        counters.keySet().removeIf(id -> totals.containsKey(id) && !found.contains(id));
+
+        stockBroadcaster.publishAll(products.stream()
+                .filter(product -> changed(product.getId(), totals, refusedAdditions, refusedRemovals))
+                .toList());
+        return new Refused(refusedAdditions, refusedRemovals);
+    }
+
+    /**
+     * Sends the units of each product as guarded movements, split in as many as the int range of
+     * the quantity column requires.
+     *
+     * @return the products with a refused movement
+     */
+    private Set<Long> apply(Map<Long, Long> units) {
+        List<StockMovementDTO> movements = new ArrayList<>(units.size());
+        units.forEach((id, delta) -> {
+            for (long left = delta; left != 0; ) {
+                int movement = (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, left));
+                movements.add(new StockMovementDTO(id, movement));
+                left -= movement;
+            }
+        });
+
+        Set<Long> refused = new HashSet<>();
+        int[] updated = repository.adjustQuantities(movements);
+        for (int i = 0; i < movements.size(); i++) {
+            if (updated[i] == 0) {
+                refused.add(movements.get(i).id());
+            }
+        }
+        return refused;
+    }
+
+    private static boolean changed(Long id, Map<Long, StockTotals> totals, Set<Long> refusedAdditions, Set<Long> refusedRemovals) {
+        return totals.get(id).net() != 0
+                && !refusedAdditions.contains(id)
+                && !(refusedRemovals.contains(id) && totals.get(id).added() == 0);
+    }
+
+    private void drop(String change, long units, Long id) {
+        rejected.increment();
+        log.warn("Dropped a stock {} of {} units for product {}, refused by the database", change, units, id);
+    }
+
+    private static BusinessException refusal(int delta) {
+        return delta > 0
+                ? new BusinessException("Product's quantity can't go beyond " + Integer.MAX_VALUE)
+                : new BusinessException("Product's current quantity is less than passed quantity");
+    }
+
+    /**
+     * Drops the counts of products without deltas in the sealed or the unflushed epochs, queueing
+     * their unused budget to be given back; they are reloaded from the database on their next
+     * change. Runs under the write lock, so no removal is taking budget meanwhile.
+     */
+    private void evictIdleCounters(Epoch sealed) {
+        counters.entrySet().removeIf(entry -> {
+            Long id = entry.getKey();
+            if (sealed.touches(id) || unflushed.stream().anyMatch(epoch -> epoch.touches(id))) {
+                return false;
+            }
+            long unused = entry.getValue().unusedBudget();
+            if (unused > 0) {
+                releases.merge(id, unused, Long::sum);
+            }
+            return true;
+        });
+    }
+
+    private StockCounter load(Long id) {
+        return repository.findStockById(id).map(stock -> new StockCounter(stock.quantity(), stock.held())).orElse(null);
+    }
+
+    /**
+     * Takes the node id for this instance, failing while another instance holds its lease.
+     */
+    private void claimNode() {
+        Timestamp now = Timestamp.from(Instant.now());
+        Timestamp until = Timestamp.from(Instant.now().plus(nodeLease));
+        if (jdbcTemplate.update(CLAIM_NODE_SQL, owner, until, node, owner, now) == 0) {
+            try {
+                jdbcTemplate.update(INSERT_CHECKPOINT_SQL, node, owner, until);
+            } catch (DuplicateKeyException ex) {
+                throw new IllegalStateException("Stock write-behind node '" + node + "' is in use by another instance, " +
+                        "every instance needs a node id of its own", ex);
+            }
+        }
+        nodeRenewedAt = now.toInstant();
+    }
+
+    private void renewNode() {
+        Instant now = Instant.now();
+        if (jdbcTemplate.update(CLAIM_NODE_SQL, owner, Timestamp.from(now.plus(nodeLease)), node, owner, Timestamp.from(now)) == 0) {
+            log.error("Stock write-behind node '{}' was taken over by another instance, deltas are no longer written", node);
+            return;
+        }
+        nodeRenewedAt = now;
+    }
+
+    private long loadCheckpoint() {
+        List<Long> epochs = jdbcTemplate.queryForList(SELECT_CHECKPOINT_SQL, Long.class, node);
+        return epochs.isEmpty() ? 0 : epochs.get(0);
+    }
+
+    private void saveCheckpoint(long epoch) {
+        Instant now = Instant.now();
+        if (jdbcTemplate.update(UPDATE_CHECKPOINT_SQL, epoch, Timestamp.from(now.plus(nodeLease)), node, owner) == 0) {
+            throw new IllegalStateException("Stock write-behind node '" + node + "' was taken over by another instance");
+        }
+        nodeRenewedAt = now;
+    }
+
+    private void validateQuantity(Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new BusinessException("Passed quantity should be equal or higher than 1");
+        }
+    }
+
+    private record Refused(Set<Long> additions, Set<Long> removals) {
+    }
+
+    private static class Epoch {
+
+        private final long number;
+
+        private final StockDeltaLog.Segment segment;
+
+        private final ConcurrentMap<Long, LongAdder> added = new ConcurrentHashMap<>();
+
+        private final ConcurrentMap<Long, LongAdder> removed = new ConcurrentHashMap<>();
+
+        /** Products whose additions or removals were dropped, filled before the flush completes. */
+        private final Set<Long> refusedAdditions = ConcurrentHashMap.newKeySet();
+
+        private final Set<Long> refusedRemovals = ConcurrentHashMap.newKeySet();
+
+        private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+        private Epoch(long number, StockDeltaLog.Segment segment) {
+            this.number = number;
+            this.segment = segment;
+        }
+
+        private boolean touches(Long id) {
+            return added.containsKey(id) || removed.containsKey(id);
+        }
+
+    }
+
+    /**
+     * Units added to and removed from one product since its count was loaded, in striped adders.
+     * A change is added first and checked after, against the budget for removals and against the
+     * room left in the quantity column for additions, and taken back when it doesn't fit. A change
+     * about to be taken back can get a concurrent one refused needlessly, but the accepted changes
+     * never go beyond the bound.
+     */
+    private static class StockCounter {
+
+        private final LongAdder added = new LongAdder();
+
+        private final LongAdder removed = new LongAdder();
+
+        /** Units taken into this node's hold since the count was loaded, only raised by claims. */
+        private volatile long budget;
+
+        /** Additions allowed before the quantity column overflows, moved by the flusher. */
+        private volatile long headroom;
+
+        /** Available units besides the deltas, moved by the flusher. */
+        private volatile long base;
+
+        private long addedWritten;
+
+        private StockCounter(int quantity, int held) {
+            this.headroom = Integer.MAX_VALUE - (long) quantity;
+            this.base = (long) quantity - held;
+        }
+
+        boolean tryAdd(int delta) {
+            LongAdder adder = delta > 0 ? added : removed;
+            long bound = delta > 0 ? headroom : budget;
+            adder.add(Math.abs(delta));
+            if (adder.sum() > bound) {
+                adder.add(-Math.abs(delta));
+                return false;
+            }
+            return true;
+        }
+
+        void undo(int delta) {
+            (delta > 0 ? added : removed).add(-Math.abs(delta));
+        }
+
+        /**
+         * @return the budget units missing for a removal of the passed units
+         */
+        long shortfall(int units) {
+            return removed.sum() + units - budget;
+        }
+
+        void grant(int units) {
+            budget += units;
+        }
+
+        long unusedBudget() {
+            return budget - removed.sum();
+        }
+
+        /**
+         * The units anyone could still remove: the database available units, this node's unused
+         * budget included, plus the deltas not written yet.
+         */
+        long available() {
+            return base + added.sum() - removed.sum();
+        }
+
+        /**
+         * Moves the bounds to the database figures read after writing a flush: the quantity, the
+         * held units, this node's hold among them, and the units the flush added.
+         */
+        void rebase(int quantity, int held, long flushedAdded) {
+            addedWritten += flushedAdded;
+            headroom = Integer.MAX_VALUE - (long) quantity + addedWritten;
+            base = (long) quantity - held + budget - addedWritten;
+        }
+
+    }
+
+}
@@ -0,0 +1,285 @@
+package github.com.itstoony.product.stream;
+
+import github.com.itstoony.product.dto.ProductStockDTO;
+import github.com.itstoony.product.exception.ServiceOverloadedException;
+import github.com.itstoony.product.model.Product.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes committed stock changes to the clients of {@code /api/product/stream}. Idle subscribers
+ * only cost their open connection, no thread: a change is queued on each subscription watching
+ * the product and a small sender pool writes it out, one drain per subscription at a time. Slow
+ * clients get their pending changes conflated to the latest one per product, see
+ * {@link StockSubscription}.
+ * <p>
+ * A client that stops reading eventually blocks the socket write of its sender thread. A send
+ * still blocked after {@code product.stream.send-timeout} gets its subscriber dropped, and the
+ * pool gains a replacement thread until the blocked one returns, so one stalled connection can't
+ * hold back everyone else's changes and heartbeats.
+ * <p>
+ * Each subscriber keeps one of Tomcat's {@code server.tomcat.max-connections} open, so the node
+ * admits at most that many minus {@code product.stream.request-connections}, kept free for plain
+ * requests, whatever {@code product.stream.max-subscribers} says.
+ */
+@Slf4j
+@Component
+public class ProductStockBroadcaster implements DisposableBean {
+
+    private final ConcurrentMap<Long, Set<StockSubscription>> subscriptionsByProduct = new ConcurrentHashMap<>();
+
+    private final Set<StockSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    private final ThreadPoolExecutor senders;
+
+    private final int maxSubscribers;
+
+    /** Admitted subscribers, taken before a subscription registers and given back when it leaves. */
+    private final AtomicInteger subscriberSlots = new AtomicInteger();
+
+    private final Duration timeout;
+
+    private final long sendTimeoutNanos;
+
+    private final int maxReplacementSenders;
+
+    /** Dropped subscribers whose blocked sender has a stand-in thread, guarded by this. */
+    private final Set<StockSubscription> replacedSenders = new HashSet<>();
+
+    private final Counter conflated;
+
+    private final Counter stalled;
+
+    public ProductStockBroadcaster(MeterRegistry registry,
+                                   @Value("${product.stream.sender-threads:2}") int senderThreads,
+                                   @Value("${product.stream.max-subscribers:50000}") int maxSubscribers,
+                                   @Value("${product.stream.timeout:30m}") Duration timeout,
+                                   @Value("${product.stream.send-timeout:5s}") Duration sendTimeout,
+                                   @Value("${product.stream.max-replacement-senders:32}") int maxReplacementSenders,
+                                   @Value("${server.tomcat.max-connections:8192}") int maxConnections,
+                                   @Value("${product.stream.request-connections:1000}") int requestConnections) {
+        this.maxSubscribers = Math.max(0, Math.min(maxSubscribers, maxConnections - requestConnections));
+        if (this.maxSubscribers < maxSubscribers) {
+            log.info("Admitting at most {} stock stream subscribers, the connections left by Tomcat", this.maxSubscribers);
+        }
+        this.timeout = timeout;
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.maxReplacementSenders = maxReplacementSenders;
+        // each subscription has at most one drain queued, so the queue never outgrows the subscribers
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("product-stream-"));
+
+        this.conflated = Counter.builder("product.stream.conflated")
+                .description("Stock changes replaced by a newer one before a slow subscriber received them")
+                .register(registry);
+        this.stalled = Counter.builder("product.stream.stalled")
+                .description("Subscribers dropped because a send to them stayed blocked past the send timeout")
+                .register(registry);
+        Gauge.builder("product.stream.subscribers", subscriptions, Set::size)
+                .description("Open stock stream subscriptions")
+                .register(registry);
+        Gauge.builder("product.stream.backlog", senders, pool -> pool.getQueue().size())
+                .description("Subscriptions waiting for a sender thread")
+                .register(registry);
+    }
+
+    public SseEmitter subscribe(Set<Long> productIds, Collection<ProductStockDTO> snapshot) {
+        return subscribe(new SseEmitter(timeout.toMillis()), productIds, snapshot);
+    }
+
+    /**
+     * Registers the emitter for changes of the passed products and queues their current state, so
+     * the client starts from a known quantity.
+     *
+     * @throws ServiceOverloadedException when the node already serves the maximum number of subscribers
+     */
+    public SseEmitter subscribe(SseEmitter emitter, Set<Long> productIds, Collection<ProductStockDTO> snapshot) {
+        if (subscriberSlots.incrementAndGet() > maxSubscribers) {
+            subscriberSlots.decrementAndGet();
+            throw new ServiceOverloadedException("Too many stock stream subscribers, try again later");
+        }
+
+        StockSubscription subscription = new StockSubscription(emitter, Set.copyOf(productIds));
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(ex -> unsubscribe(subscription));
+
+        subscriptions.add(subscription);
+        for (Long id : subscription.productIds()) {
+            subscriptionsByProduct.compute(id, (key, watching) -> {
+                Set<StockSubscription> updated = watching == null ? ConcurrentHashMap.newKeySet() : watching;
+                updated.add(subscription);
+                return updated;
+            });
+        }
+
+        snapshot.forEach(stock -> offer(subscription, stock));
+        return emitter;
+    }
+
+    /**
+     * Publishes the product's stock once the surrounding transaction commits, or right away
+     * outside of one. Products nobody watches are skipped without any allocation.
+     */
+    public void publish(Product product) {
+        if (!subscriptionsByProduct.containsKey(product.getId())) {
+            return;
+        }
+
+        ProductStockDTO stock = ProductStockDTO.of(product);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    fanOut(stock);
+                }
+            });
+        } else {
+            fanOut(stock);
+        }
+    }
+
+    public void publishAll(List<Product> products) {
+        products.forEach(this::publish);
+    }
+
+    /**
+     * Keeps idle connections from being dropped by proxies and notices clients that went away.
+     */
+    @Scheduled(fixedDelayString = "${product.stream.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (StockSubscription subscription : subscriptions) {
+            if (subscription.offerHeartbeat() == StockSubscription.Offer.SCHEDULE) {
+                schedule(subscription);
+            }
+        }
+    }
+
+    /**
+     * Drops the subscribers whose send has been blocked for longer than the send timeout. Their
+     * emitter can't be completed from here, it stays locked by the blocked send, so the connection
+     * is released once the container fails that write.
+     */
+    @Scheduled(fixedDelayString = "${product.stream.stall-check-ms:1000}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (StockSubscription subscription : subscriptions) {
+            if (abandonStalledSend(subscription, now)) {
+                log.debug("Dropping a stock stream subscriber whose send is blocked");
+                stalled.increment();
+                unsubscribe(subscription);
+            }
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void destroy() {
+        senders.shutdownNow();
+        subscriptions.forEach(subscription -> subscription.emitter().complete());
+    }
+
+    private void fanOut(ProductStockDTO stock) {
+        Set<StockSubscription> watching = subscriptionsByProduct.get(stock.id());
+        if (watching != null) {
+            watching.forEach(subscription -> offer(subscription, stock));
+        }
+    }
+
+    private void offer(StockSubscription subscription, ProductStockDTO stock) {
+        switch (subscription.offer(stock)) {
+            case SCHEDULE -> schedule(subscription);
+            case CONFLATED -> conflated.increment();
+            default -> {
+            }
+        }
+    }
+
+    private void schedule(StockSubscription subscription) {
+        senders.execute(() -> {
+            try {
+                subscription.drain();
+                if (subscription.wasSendAbandoned()) {
+                    // dropped while its send was blocked, the client may still be connected
+                    subscription.emitter().complete();
+                }
+            } catch (Exception ex) {
+                log.debug("Closing stock stream subscription after a failed send", ex);
+                unsubscribe(subscription);
+                subscription.emitter().completeWithError(ex);
+            } finally {
+                if (subscription.wasSendAbandoned()) {
+                    removeReplacementSender(subscription);
+                }
+            }
+        });
+    }
+
+    /**
+     * Abandons the subscriber's send when it's stalled and grows the pool by one thread standing in
+     * for the blocked sender, up to the configured maximum of stand-ins. Abandoning and adding the
+     * stand-in happen under the same lock the returning sender takes to remove it.
+     */
+    private synchronized boolean abandonStalledSend(StockSubscription subscription, long now) {
+        if (!subscription.abandonIfStalled(now, sendTimeoutNanos)) {
+            return false;
+        }
+        if (replacedSenders.size() >= maxReplacementSenders) {
+            log.warn("Stock stream senders blocked by {} stalled subscribers, not adding more threads", replacedSenders.size());
+            return true;
+        }
+        replacedSenders.add(subscription);
+        senders.setMaximumPoolSize(senders.getMaximumPoolSize() + 1);
+        senders.setCorePoolSize(senders.getCorePoolSize() + 1);
+        return true;
+    }
+
+    /**
+     * Shrinks the pool back once a blocked sender returned, the extra thread ends when next idle.
+     */
+    private synchronized void removeReplacementSender(StockSubscription subscription) {
+        if (replacedSenders.remove(subscription)) {
+            senders.setCorePoolSize(senders.getCorePoolSize() - 1);
+            senders.setMaximumPoolSize(senders.getMaximumPoolSize() - 1);
+        }
+    }
+
+    private void unsubscribe(StockSubscription subscription) {
+        subscription.close();
+        if (subscriptions.remove(subscription)) {
+            subscriberSlots.decrementAndGet();
+            for (Long id : subscription.productIds()) {
+                subscriptionsByProduct.computeIfPresent(id, (key, watching) -> {
+                    watching.remove(subscription);
+                    return watching.isEmpty() ? null : watching;
+                });
+            }
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+package github.com.itstoony.product.stream;
+
+import github.com.itstoony.product.dto.ProductStockDTO;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One client of the stock stream. Changes waiting to be sent are kept per product, a newer change
+ * replaces the unsent one, so a slow client holds at most one pending change per watched product
+ * and catches up on the latest quantities instead of replaying every intermediate one.
+ * <p>
+ * The start of the send in progress is tracked, so a send blocked by a client that stopped reading
+ * can be abandoned, see {@link #abandonIfStalled(long, long)}.
+ */
+class StockSubscription {
+
+    static final String EVENT_NAME = "stock";
+
+    private static final long NOT_SENDING = Long.MIN_VALUE;
+
+    private static final long ABANDONED = Long.MIN_VALUE + 1;
+
+    private final SseEmitter emitter;
+
+    private final Set<Long> productIds;
+
+    private final Map<Long, ProductStockDTO> pending = new LinkedHashMap<>();
+
+    private final Map<Long, ProductStockDTO> sent = new HashMap<>();
+
+    private boolean heartbeatPending;
+
+    private boolean draining;
+
+    private volatile boolean closed;
+
+    /** When the send in progress started, in nanoTime, or one of NOT_SENDING and ABANDONED. */
+    private final AtomicLong sendStartedAt = new AtomicLong(NOT_SENDING);
+
+    /** Only touched by the sender thread running the drain. */
+    private boolean sendAbandoned;
+
+    StockSubscription(SseEmitter emitter, Set<Long> productIds) {
+        this.emitter = emitter;
+        this.productIds = productIds;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    Set<Long> productIds() {
+        return productIds;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Queues a change, replacing any unsent change of the same product.
+     *
+     * @return whether the caller has to schedule a {@link #drain()}, which is only the case when
+     * no drain is queued or running yet
+     */
+    synchronized Offer offer(ProductStockDTO stock) {
+        if (closed) {
+            return Offer.IGNORED;
+        }
+
+        ProductStockDTO previous = pending.get(stock.id());
+        if (previous != null) {
+            if (!stock.isNewerThan(previous)) {
+                return Offer.IGNORED;
+            }
+            pending.put(stock.id(), stock);
+            return Offer.CONFLATED;
+        }
+
+        pending.put(stock.id(), stock);
+        return scheduleDrain();
+    }
+
+    synchronized Offer offerHeartbeat() {
+        if (closed || heartbeatPending || !pending.isEmpty()) {
+            return Offer.IGNORED;
+        }
+        heartbeatPending = true;
+        return scheduleDrain();
+    }
+
+    /**
+     * Abandons the send in progress when it started more than the passed timeout ago. The sender
+     * stays blocked until the container fails the write, the caller has to close the subscription
+     * and stop counting on that thread.
+     *
+     * @return whether the send was abandoned by this call
+     */
+    boolean abandonIfStalled(long now, long timeoutNanos) {
+        long started = sendStartedAt.get();
+        if (started == NOT_SENDING || started == ABANDONED || now - started < timeoutNanos) {
+            return false;
+        }
+        return sendStartedAt.compareAndSet(started, ABANDONED);
+    }
+
+    /**
+     * Whether the last drain returned from a send that had been abandoned meanwhile, for the
+     * sender thread once the drain is over.
+     */
+    boolean wasSendAbandoned() {
+        return sendAbandoned;
+    }
+
+    /**
+     * Sends the pending changes until there are none left. Sending happens outside the lock, so
+     * changes published meanwhile are conflated into the next round.
+     */
+    void drain() throws Exception {
+        while (true) {
+            List<ProductStockDTO> changes;
+            boolean heartbeat;
+            synchronized (this) {
+                if (closed || (pending.isEmpty() && !heartbeatPending)) {
+                    draining = false;
+                    return;
+                }
+                changes = new ArrayList<>(pending.values());
+                heartbeat = heartbeatPending;
+                pending.clear();
+                heartbeatPending = false;
+            }
+
+            for (ProductStockDTO change : changes) {
+                // changes committed concurrently may be published out of order
+                if (change.isNewerThan(sent.get(change.id())) && !change.equals(sent.get(change.id()))) {
+                    send(SseEmitter.event()
+                            .name(EVENT_NAME)
+                            .id(change.id() + ":" + change.version())
+                            .data(change, MediaType.APPLICATION_JSON));
+                    sent.put(change.id(), change);
+                }
+            }
+            if (heartbeat && changes.isEmpty()) {
+                send(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    private void send(SseEmitter.SseEventBuilder event) throws Exception {
+        if (closed) {
+            return;
+        }
+        sendStartedAt.set(System.nanoTime());
+        try {
+            emitter.send(event);
+        } finally {
+            if (sendStartedAt.getAndSet(NOT_SENDING) == ABANDONED) {
+                sendAbandoned = true;
+            }
+        }
+    }
+
+    private Offer scheduleDrain() {
+        if (draining) {
+            return Offer.QUEUED;
+        }
+        draining = true;
+        return Offer.SCHEDULE;
+    }
+
+    enum Offer {
+        /** The subscription is closed or already has a newer change. */
+        IGNORED,
+        /** Replaced an unsent change of the same product. */
+        CONFLATED,
+        /** Queued behind a drain that is already scheduled. */
+        QUEUED,
+        /** Queued, and the caller has to schedule a drain. */
+        SCHEDULE
+    }
+
+}
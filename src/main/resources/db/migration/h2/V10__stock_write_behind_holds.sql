@@ -0,0 +1,4 @@
+ALTER TABLE stock_write_behind_checkpoint ADD COLUMN owner VARCHAR(64);
+ALTER TABLE stock_write_behind_checkpoint ADD COLUMN lease_until TIMESTAMP(6) WITH TIME ZONE;
+ALTER TABLE product_reservation ADD COLUMN holder VARCHAR(64);
+CREATE UNIQUE INDEX ux_product_reservation_holder ON product_reservation (holder, product_id);
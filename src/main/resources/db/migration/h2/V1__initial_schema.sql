@@ -0,0 +1,13 @@
+CREATE TABLE product (
+    id            BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name          VARCHAR(255),
+    description   VARCHAR(255),
+    product_value NUMERIC(38, 2),
+    quantity      INTEGER
+);
+
+CREATE TABLE users (
+    id       BIGINT AUTO_INCREMENT PRIMARY KEY,
+    login    VARCHAR(255),
+    password VARCHAR(255)
+);
@@ -0,0 +1,2 @@
+ALTER TABLE product ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE product ADD COLUMN updated_at TIMESTAMP(6) WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP(6);
@@ -0,0 +1,6 @@
+-- one user per login, looked up on every authenticated request
+CREATE UNIQUE INDEX ux_users_login ON users (login);
+
+-- leads with (name, id) for name prefix seeks and the keyset/sorted listings, and carries every
+-- column of the list projection so a listing page is read from the index alone
+CREATE INDEX ix_product_name_list ON product (name, id, description, product_value, quantity, version);
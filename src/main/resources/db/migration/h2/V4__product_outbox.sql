@@ -0,0 +1,7 @@
+CREATE TABLE product_outbox (
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    product_id  BIGINT                      NOT NULL,
+    type        VARCHAR(32)                 NOT NULL,
+    payload     VARCHAR(4000)               NOT NULL,
+    created_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
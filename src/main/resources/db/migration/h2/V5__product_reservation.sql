@@ -0,0 +1,7 @@
+CREATE TABLE product_reservation (
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    product_id  BIGINT                      NOT NULL,
+    quantity    INT                         NOT NULL,
+    expires_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    CONSTRAINT fk_product_reservation_product FOREIGN KEY (product_id) REFERENCES product (id) ON DELETE CASCADE
+);
@@ -0,0 +1,4 @@
+CREATE TABLE stock_write_behind_checkpoint (
+    node   VARCHAR(64) PRIMARY KEY,
+    epoch  BIGINT      NOT NULL
+);
@@ -0,0 +1,2 @@
+ALTER TABLE product ADD COLUMN reserved INT DEFAULT 0 NOT NULL;
+UPDATE product SET reserved = (SELECT COALESCE(SUM(r.quantity), 0) FROM product_reservation r WHERE r.product_id = product.id);
@@ -0,0 +1,6 @@
+CREATE TABLE product_outbox_relay (
+    id           INT PRIMARY KEY,
+    owner        VARCHAR(64),
+    lease_until  TIMESTAMP(6) WITH TIME ZONE
+);
+INSERT INTO product_outbox_relay (id, owner, lease_until) VALUES (1, NULL, NULL);
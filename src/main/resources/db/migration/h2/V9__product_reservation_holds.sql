@@ -0,0 +1,3 @@
+ALTER TABLE product DROP COLUMN reserved;
+CREATE INDEX ix_product_reservation_product ON product_reservation (product_id, expires_at);
+CREATE INDEX ix_product_reservation_expiry ON product_reservation (expires_at);
@@ -0,0 +1,9 @@
+-- a node id is used by one running instance at a time, the one holding its unexpired lease
+ALTER TABLE stock_write_behind_checkpoint
+    ADD COLUMN owner VARCHAR(64) NULL,
+    ADD COLUMN lease_until TIMESTAMP(6) NULL;
+-- the units a write-behind node may remove before flushing, one hold per node and product;
+-- customer holds have no holder
+ALTER TABLE product_reservation
+    ADD COLUMN holder VARCHAR(64) NULL;
+CREATE UNIQUE INDEX ux_product_reservation_holder ON product_reservation (holder, product_id);
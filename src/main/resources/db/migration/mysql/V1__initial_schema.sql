@@ -0,0 +1,14 @@
+-- schema the entities had while it was still managed by ddl-auto, existing databases are baselined at this version
+CREATE TABLE product (
+    id            BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name          VARCHAR(255),
+    description   VARCHAR(255),
+    product_value DECIMAL(38, 2),
+    quantity      INT
+) ENGINE = InnoDB;
+
+CREATE TABLE users (
+    id       BIGINT AUTO_INCREMENT PRIMARY KEY,
+    login    VARCHAR(255),
+    password VARCHAR(255)
+) ENGINE = InnoDB;
@@ -0,0 +1,4 @@
+-- optimistic locking version and update timestamp, existing rows start at version 0
+ALTER TABLE product
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN updated_at TIMESTAMP(6) NULL DEFAULT CURRENT_TIMESTAMP(6);
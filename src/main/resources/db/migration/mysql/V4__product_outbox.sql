@@ -0,0 +1,8 @@
+-- product change events written in the same transaction as the change, drained in id order by the relay
+CREATE TABLE product_outbox (
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    product_id  BIGINT        NOT NULL,
+    type        VARCHAR(32)   NOT NULL,
+    payload     VARCHAR(4000) NOT NULL,
+    created_at  TIMESTAMP(6)  NOT NULL
+) ENGINE = InnoDB;
@@ -0,0 +1,8 @@
+-- stock holds, kept in memory and only written here so they survive a restart
+CREATE TABLE product_reservation (
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    product_id  BIGINT       NOT NULL,
+    quantity    INT          NOT NULL,
+    expires_at  TIMESTAMP(6) NOT NULL,
+    CONSTRAINT fk_product_reservation_product FOREIGN KEY (product_id) REFERENCES product (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
@@ -0,0 +1,5 @@
+-- last stock delta log epoch each node has written to product, committed together with the deltas
+CREATE TABLE stock_write_behind_checkpoint (
+    node   VARCHAR(64) PRIMARY KEY,
+    epoch  BIGINT      NOT NULL
+) ENGINE = InnoDB;
@@ -0,0 +1,4 @@
+-- units held by stock reservations, every stock removal guard leaves them alone
+ALTER TABLE product
+    ADD COLUMN reserved INT NOT NULL DEFAULT 0;
+UPDATE product SET reserved = (SELECT COALESCE(SUM(r.quantity), 0) FROM product_reservation r WHERE r.product_id = product.id);
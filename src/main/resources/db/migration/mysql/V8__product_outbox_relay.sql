@@ -0,0 +1,7 @@
+-- the relay lease, one row: whoever holds it publishes the outbox, so batches go out in id order
+CREATE TABLE product_outbox_relay (
+    id           INT PRIMARY KEY,
+    owner        VARCHAR(64),
+    lease_until  TIMESTAMP(6) NULL
+) ENGINE = InnoDB;
+INSERT INTO product_outbox_relay (id, owner, lease_until) VALUES (1, NULL, NULL);
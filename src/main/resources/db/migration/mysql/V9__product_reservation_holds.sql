@@ -0,0 +1,6 @@
+-- holds are no longer mirrored on the product row: the active rows of product_reservation are summed
+-- by every stock removal guard, and the expired ones swept by any node
+ALTER TABLE product
+    DROP COLUMN reserved;
+CREATE INDEX ix_product_reservation_product ON product_reservation (product_id, expires_at);
+CREATE INDEX ix_product_reservation_expiry ON product_reservation (expires_at);
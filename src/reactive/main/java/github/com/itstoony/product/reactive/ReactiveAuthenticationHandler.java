@@ -0,0 +1,87 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.dto.AuthenticationData;
+import github.com.itstoony.product.dto.UserDTO;
+import github.com.itstoony.product.exception.ApiErrors;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.mapper.UserMapper;
+import github.com.itstoony.product.model.Product.User;
+import github.com.itstoony.product.security.jwt.DataTokenJWT;
+import github.com.itstoony.product.security.jwt.TokenService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Validator;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * WebFlux handlers of {@code /auth}, answering like the servlet AuthenticationController. Password
+ * hashing blocks, it runs on the bounded elastic scheduler and never on an event loop.
+ */
+@Slf4j
+@Component
+public class ReactiveAuthenticationHandler {
+
+    private final ReactiveAuthenticationManager authenticationManager;
+
+    private final TokenService tokenService;
+
+    private final ReactiveUserRepository userRepository;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final UserMapper userMapper;
+
+    private final Validator validator;
+
+    public ReactiveAuthenticationHandler(ReactiveAuthenticationManager authenticationManager, TokenService tokenService,
+                                         ReactiveUserRepository userRepository, PasswordEncoder passwordEncoder,
+                                         UserMapper userMapper, Validator validator) {
+        this.authenticationManager = authenticationManager;
+        this.tokenService = tokenService;
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.userMapper = userMapper;
+        this.validator = validator;
+    }
+
+    public Mono<ServerResponse> login(ServerRequest request) {
+        return request.bodyToMono(AuthenticationData.class)
+                .doOnNext(data -> log.debug("Login with user: {}", data.login()))
+                .flatMap(data -> authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(data.login(), data.password())))
+                .map(authentication -> tokenService.generateToken((User) authentication.getPrincipal()))
+                .flatMap(token -> ServerResponse.ok().bodyValue(new DataTokenJWT(token)));
+    }
+
+    public Mono<ServerResponse> register(ServerRequest request) {
+        return request.bodyToMono(UserDTO.class).flatMap(dto -> {
+            log.debug("Registering user: {}", dto.getLogin());
+
+            BeanPropertyBindingResult errors = new BeanPropertyBindingResult(dto, "userDTO");
+            validator.validate(dto, errors);
+            if (errors.hasErrors()) {
+                return ServerResponse.badRequest().bodyValue(new ApiErrors(errors));
+            }
+
+            User user = userMapper.toEntity(dto);
+
+            // checked before hashing, the unique index on login still rejects concurrent duplicates
+            return userRepository.existsByLogin(user.getLogin())
+                    .flatMap(exists -> exists
+                            ? Mono.error(new BusinessException("Login already registered"))
+                            : Mono.fromCallable(() -> passwordEncoder.encode(user.getPassword())).subscribeOn(Schedulers.boundedElastic()))
+                    .flatMap(encoded -> {
+                        user.setPassword(encoded);
+                        return userRepository.insert(user);
+                    })
+                    .flatMap(id -> ServerResponse.created(request.uriBuilder().path("/{id}").build(id)).build());
+        });
+    }
+
+}
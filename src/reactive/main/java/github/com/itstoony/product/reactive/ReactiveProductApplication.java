@@ -0,0 +1,55 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.mapper.UserMapper;
+import github.com.itstoony.product.security.TokenPrincipalCache;
+import github.com.itstoony.product.security.jwt.TokenService;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+/**
+ * WebFlux + R2DBC variant of the product service, serving the same {@code /api/product} contract
+ * from a few event loop threads and a non-blocking connection pool, so requests waiting on the
+ * database hold neither a thread nor, between statements, a connection.
+ * <p>
+ * Only this package is scanned, the servlet controllers, services and JPA repositories stay out.
+ * Models, DTOs, mappers and the JWT classes are shared with the servlet service, and both can run
+ * against the same schema, which is still migrated by Flyway over JDBC.
+ */
+@SpringBootApplication
+@Import({TokenService.class, TokenPrincipalCache.class})
+public class ReactiveProductApplication {
+
+    public static final String PROFILE = "reactive";
+
+    @Bean
+    public ProductMapper productMapper() {
+        return new ProductMapper();
+    }
+
+    @Bean
+    public UserMapper userMapper() {
+        return new UserMapper();
+    }
+
+    /**
+     * Tomcat comes with the servlet dependencies and would otherwise be picked as the reactive
+     * server too, Netty keeps the whole request on its event loops.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    public static SpringApplicationBuilder builder() {
+        return new SpringApplicationBuilder(ReactiveProductApplication.class).profiles(PROFILE);
+    }
+
+    public static void main(String[] args) {
+        builder().run(args);
+    }
+
+}
@@ -0,0 +1,188 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.ProductETag;
+import github.com.itstoony.product.exception.ApiErrors;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Validator;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * WebFlux handlers of the {@code /api/product} calls, answering like the servlet ProductController:
+ * same status codes, entity tags, conditional requests and error bodies.
+ */
+@Slf4j
+@Component
+public class ReactiveProductHandler {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final int MAX_PAGE_SIZE = 2000;
+
+    private final ReactiveProductService productService;
+
+    private final ProductMapper productMapper;
+
+    private final Validator validator;
+
+    public ReactiveProductHandler(ReactiveProductService productService, ProductMapper productMapper, Validator validator) {
+        this.productService = productService;
+        this.productMapper = productMapper;
+        this.validator = validator;
+    }
+
+    public Mono<ServerResponse> register(ServerRequest request) {
+        return request.bodyToMono(ProductDTO.class).flatMap(dto -> {
+            log.debug("Registering a product: {}", dto.getName());
+
+            BeanPropertyBindingResult errors = new BeanPropertyBindingResult(dto, "productDTO");
+            validator.validate(dto, errors);
+            if (errors.hasErrors()) {
+                return ServerResponse.badRequest().bodyValue(new ApiErrors(errors));
+            }
+
+            return productService.register(productMapper.toEntity(dto))
+                    .flatMap(saved -> ServerResponse
+                            .created(request.uriBuilder().path("/{id}").build(saved.getId()))
+                            .eTag(ProductETag.of(saved.getVersion()))
+                            .bodyValue(productMapper.toDTO(saved)));
+        });
+    }
+
+    public Mono<ServerResponse> update(ServerRequest request) {
+        Long id = longVariable(request, "id");
+        Long expectedVersion = ProductETag.expectedVersion(request.headers().firstHeader(HttpHeaders.IF_MATCH));
+
+        return request.bodyToMono(ProductDTO.class).flatMap(dto -> {
+            log.debug("Updating product: {}", dto.getName());
+
+            return productService.update(id, dto, expectedVersion)
+                    .switchIfEmpty(notFound())
+                    .flatMap(updated -> ServerResponse.ok()
+                            .eTag(ProductETag.of(updated.getVersion()))
+                            .bodyValue(productMapper.toDTO(updated)));
+        });
+    }
+
+    public Mono<ServerResponse> findById(ServerRequest request) {
+        Long id = longVariable(request, "id");
+        log.debug("Finding product by id: {}", id);
+
+        return productService.findById(id)
+                .switchIfEmpty(notFound())
+                .flatMap(product -> {
+                    String eTag = ProductETag.of(product.getVersion());
+                    Instant lastModified = product.getUpdatedAt();
+
+                    Mono<ServerResponse> notModified = lastModified == null
+                            ? request.checkNotModified(eTag)
+                            : request.checkNotModified(lastModified, eTag);
+
+                    return notModified.switchIfEmpty(Mono.defer(() -> {
+                        ServerResponse.BodyBuilder response = ServerResponse.ok().eTag(eTag);
+                        if (lastModified != null) {
+                            response.lastModified(lastModified);
+                        }
+                        return response.bodyValue(productMapper.toDTO(product));
+                    }));
+                });
+    }
+
+    public Mono<ServerResponse> listAll(ServerRequest request) {
+        String name = request.queryParam("name")
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Required parameter 'name' is not present."));
+        Pageable pageable = pageable(request);
+        log.debug("Listing product by name: {}", name);
+
+        return productService.listAll(name, pageable).flatMap(page -> {
+            String eTag = ProductETag.ofPage(page);
+
+            return request.checkNotModified(eTag).switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                    .eTag(eTag)
+                    .bodyValue(new PageImpl<>(page.getContent(), pageable, page.getTotalElements()))));
+        });
+    }
+
+    public Mono<ServerResponse> delete(ServerRequest request) {
+        Long id = longVariable(request, "id");
+        log.debug("Deleting product by id: {}", id);
+
+        return productService.delete(id)
+                .switchIfEmpty(notFound())
+                .flatMap(deleted -> ServerResponse.noContent().build());
+    }
+
+    public Mono<ServerResponse> addStorage(ServerRequest request) {
+        Long id = longVariable(request, "id");
+        Integer quantity = intVariable(request, "quantity");
+        log.debug("Adding {} units to product with ID: {}", quantity, id);
+
+        return productService.addStorage(id, quantity)
+                .switchIfEmpty(notFound())
+                .flatMap(product -> ServerResponse.ok().bodyValue(productMapper.toDTO(product)));
+    }
+
+    public Mono<ServerResponse> removeStorage(ServerRequest request) {
+        Long id = longVariable(request, "id");
+        Integer quantity = intVariable(request, "quantity");
+        log.debug("Removing {} units to product with ID: {}", quantity, id);
+
+        return productService.removeStorage(id, quantity)
+                .switchIfEmpty(notFound())
+                .flatMap(product -> ServerResponse.ok().bodyValue(productMapper.toDTO(product)));
+    }
+
+    /**
+     * Reads the page and size parameters like Spring Data's web support does for the servlet
+     * controller, out of range values fall back to the defaults or the maximum size.
+     */
+    private static Pageable pageable(ServerRequest request) {
+        int page = request.queryParam("page").map(ReactiveProductHandler::parseOrNegative).orElse(0);
+        int size = request.queryParam("size").map(ReactiveProductHandler::parseOrNegative).orElse(DEFAULT_PAGE_SIZE);
+
+        return PageRequest.of(Math.max(page, 0), size < 1 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    private static int parseOrNegative(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static Long longVariable(ServerRequest request, String name) {
+        try {
+            return Long.valueOf(request.pathVariable(name));
+        } catch (NumberFormatException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name);
+        }
+    }
+
+    private static Integer intVariable(ServerRequest request, String name) {
+        try {
+            return Integer.valueOf(request.pathVariable(name));
+        } catch (NumberFormatException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name);
+        }
+    }
+
+    private static <T> Mono<T> notFound() {
+        return Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+}
@@ -0,0 +1,52 @@
+package github.com.itstoony.product.reactive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductEvent;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Appends product events to the product_outbox table in the transaction of the change, with the
+ * payload the servlet service writes. Relaying them to the sink is left to the servlet service's
+ * relay, which drains the same table.
+ */
+@Repository
+public class ReactiveProductOutbox {
+
+    private static final String INSERT_SQL = "INSERT INTO product_outbox (product_id, type, payload, created_at) " +
+            "VALUES (:productId, :type, :payload, CURRENT_TIMESTAMP(6))";
+
+    private final DatabaseClient client;
+
+    private final ObjectMapper objectMapper;
+
+    private final ProductMapper productMapper;
+
+    public ReactiveProductOutbox(DatabaseClient client, ObjectMapper objectMapper, ProductMapper productMapper) {
+        this.client = client;
+        this.objectMapper = objectMapper;
+        this.productMapper = productMapper;
+    }
+
+    public Mono<Void> append(ProductEvent.Type type, Product product) {
+        return Mono.fromCallable(() -> toJson(product))
+                .flatMap(payload -> client.sql(INSERT_SQL)
+                        .bind("productId", product.getId())
+                        .bind("type", type.name())
+                        .bind("payload", payload)
+                        .then());
+    }
+
+    private String toJson(Product product) {
+        try {
+            return objectMapper.writeValueAsString(productMapper.toDTO(product));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Couldn't serialize product " + product.getId(), ex);
+        }
+    }
+
+}
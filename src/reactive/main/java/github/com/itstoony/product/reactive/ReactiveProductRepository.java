@@ -0,0 +1,196 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.model.Product.Product;
+import io.r2dbc.spi.Readable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * The product table over R2DBC, with the same statements the JPA repository runs: versioned
+ * updates and stock changes guarded in the WHERE clause, so concurrent writers of both services
+ * see each other's version bumps, and removals that leave the units of unexpired holds alone.
+ */
+@Repository
+public class ReactiveProductRepository {
+
+    private static final String COLUMNS = "id, name, description, product_value, quantity, version, updated_at";
+
+    private static final String SELECT_SQL = "SELECT " + COLUMNS + " FROM product WHERE id = :id";
+
+    private static final String SELECT_BY_NAME_SQL = "SELECT id, name, description, product_value, quantity, version " +
+            "FROM product WHERE LOWER(name) LIKE :pattern ORDER BY name, id LIMIT :limit OFFSET :offset";
+
+    private static final String COUNT_BY_NAME_SQL = "SELECT COUNT(*) FROM product WHERE LOWER(name) LIKE :pattern";
+
+    private static final String INSERT_SQL = "INSERT INTO product (name, description, product_value, quantity, version, updated_at) " +
+            "VALUES (:name, :description, :productValue, :quantity, 0, CURRENT_TIMESTAMP(6))";
+
+    private static final String UPDATE_SQL = "UPDATE product SET name = :name, description = :description, " +
+            "product_value = :productValue, quantity = :quantity, version = version + 1, updated_at = CURRENT_TIMESTAMP(6) " +
+            "WHERE id = :id AND version = :version";
+
+    private static final String INCREASE_SQL = "UPDATE product SET quantity = quantity + :quantity, version = version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP(6) WHERE id = :id AND quantity <= 2147483647 - :quantity";
+
+    private static final String DECREASE_SQL = "UPDATE product SET quantity = quantity - :quantity, version = version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP(6) WHERE id = :id AND quantity - :held >= :quantity";
+
+    private static final String LOCK_SQL = "SELECT quantity FROM product WHERE id = :id FOR UPDATE";
+
+    private static final String LOCK_HOLDS_SQL =
+            "SELECT quantity FROM product_reservation WHERE product_id = :id AND expires_at > :now FOR UPDATE";
+
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM product WHERE id = :id";
+
+    private static final String DELETE_SQL = "DELETE FROM product WHERE id = :id";
+
+    private final DatabaseClient client;
+
+    public ReactiveProductRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    public Mono<Product> findById(Long id) {
+        return client.sql(SELECT_SQL)
+                .bind("id", id)
+                .map(ReactiveProductRepository::toProduct)
+                .one();
+    }
+
+    /**
+     * A page of products whose name contains the passed text, ignoring case, ordered by name and id
+     * so the pages are stable. The sort of the pageable isn't applied.
+     */
+    public Flux<ProductDTO> findDTOsByName(String name, Pageable pageable) {
+        return client.sql(SELECT_BY_NAME_SQL)
+                .bind("pattern", pattern(name))
+                .bind("limit", pageable.getPageSize())
+                .bind("offset", pageable.getOffset())
+                .map(row -> new ProductDTO(
+                        row.get("id", Long.class),
+                        row.get("name", String.class),
+                        row.get("description", String.class),
+                        row.get("product_value", BigDecimal.class),
+                        row.get("quantity", Integer.class),
+                        row.get("version", Long.class)))
+                .all();
+    }
+
+    public Mono<Long> countByName(String name) {
+        return client.sql(COUNT_BY_NAME_SQL)
+                .bind("pattern", pattern(name))
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    /**
+     * @return the id the product was stored with
+     */
+    public Mono<Long> insert(Product product) {
+        return client.sql(INSERT_SQL)
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .bind("name", Parameter.fromOrEmpty(product.getName(), String.class))
+                .bind("description", Parameter.fromOrEmpty(product.getDescription(), String.class))
+                .bind("productValue", Parameter.fromOrEmpty(product.getProductValue(), BigDecimal.class))
+                .bind("quantity", Parameter.fromOrEmpty(product.getQuantity(), Integer.class))
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    /**
+     * Writes every field of the product if it is still at the version it was read with.
+     *
+     * @return the number of updated rows, 0 when the product was modified or deleted meanwhile
+     */
+    public Mono<Long> update(Product product) {
+        return client.sql(UPDATE_SQL)
+                .bind("name", Parameter.fromOrEmpty(product.getName(), String.class))
+                .bind("description", Parameter.fromOrEmpty(product.getDescription(), String.class))
+                .bind("productValue", Parameter.fromOrEmpty(product.getProductValue(), BigDecimal.class))
+                .bind("quantity", Parameter.fromOrEmpty(product.getQuantity(), Integer.class))
+                .bind("id", product.getId())
+                .bind("version", product.getVersion())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> increaseQuantity(Long id, Integer quantity) {
+        return client.sql(INCREASE_SQL)
+                .bind("id", id)
+                .bind("quantity", quantity)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * Locks the product row until the surrounding transaction ends, the lock holds are taken under,
+     * and sums the units held by its unexpired reservations with a locking read.
+     *
+     * @return the held units, or empty when the product doesn't exist
+     */
+    public Mono<Integer> lockHeldQuantity(Long id) {
+        return client.sql(LOCK_SQL)
+                .bind("id", id)
+                .map(row -> row.get("quantity", Integer.class))
+                .one()
+                .flatMap(quantity -> client.sql(LOCK_HOLDS_SQL)
+                        .bind("id", id)
+                        .bind("now", Instant.now())
+                        .map(row -> row.get("quantity", Integer.class))
+                        .all()
+                        .reduce(0, Integer::sum));
+    }
+
+    /**
+     * @param held the units held by the product's unexpired reservations, read under the row lock
+     * @return the number of updated rows, 0 when the product doesn't exist or has insufficient stock
+     */
+    public Mono<Long> decreaseQuantity(Long id, Integer quantity, Integer held) {
+        return client.sql(DECREASE_SQL)
+                .bind("id", id)
+                .bind("quantity", quantity)
+                .bind("held", held)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Boolean> existsById(Long id) {
+        return client.sql(EXISTS_SQL)
+                .bind("id", id)
+                .map(row -> row.get(0, Long.class) > 0)
+                .one();
+    }
+
+    public Mono<Long> deleteById(Long id) {
+        return client.sql(DELETE_SQL)
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static String pattern(String name) {
+        return "%" + name.toLowerCase(Locale.ROOT) + "%";
+    }
+
+    private static Product toProduct(Readable row) {
+        return Product.builder()
+                .id(row.get("id", Long.class))
+                .name(row.get("name", String.class))
+                .description(row.get("description", String.class))
+                .productValue(row.get("product_value", BigDecimal.class))
+                .quantity(row.get("quantity", Integer.class))
+                .version(row.get("version", Long.class))
+                .updatedAt(row.get("updated_at", Instant.class))
+                .build();
+    }
+
+}
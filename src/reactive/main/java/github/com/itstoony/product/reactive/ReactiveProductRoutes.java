@@ -0,0 +1,97 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.exception.ApiErrors;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.exception.ServiceOverloadedException;
+import github.com.itstoony.product.exception.StaleVersionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Routes of the product and authentication calls, with the error answers of the servlet
+ * ApplicationControllerAdvice. Other errors, such as 404s, are rendered by Spring Boot's error
+ * handler.
+ */
+@Configuration
+public class ReactiveProductRoutes {
+
+    @Bean
+    public RouterFunction<ServerResponse> productRoutes(ReactiveProductHandler products,
+                                                        ReactiveAuthenticationHandler authentication,
+                                                        MeterRegistry registry) {
+        return route()
+                .path("/api/product", builder -> builder
+                        .POST("", products::register)
+                        .GET("/list", products::listAll)
+                        .GET("/{id}", products::findById)
+                        .PUT("/{id}", products::update)
+                        .DELETE("/{id}", products::delete)
+                        .PATCH("/{id}/storage/add/{quantity}", products::addStorage)
+                        .PATCH("/{id}/storage/remove/{quantity}", products::removeStorage))
+                .path("/auth", builder -> builder
+                        .POST("/login", authentication::login)
+                        .POST("/register", authentication::register))
+                .filter(errors(registry))
+                .build();
+    }
+
+    /**
+     * Handlers may also throw before returning their publisher, they are deferred so those errors
+     * are answered the same way.
+     */
+    private static HandlerFilterFunction<ServerResponse, ServerResponse> errors(MeterRegistry registry) {
+        return (request, next) -> Mono.defer(() -> next.handle(request))
+                .onErrorResume(ex -> {
+                    if (ex instanceof BusinessException businessException) {
+                        count(registry, ex);
+                        return ServerResponse.badRequest().bodyValue(new ApiErrors(businessException));
+                    }
+                    if (ex instanceof StaleVersionException staleVersionException) {
+                        count(registry, ex);
+                        return ServerResponse.status(HttpStatus.PRECONDITION_FAILED).bodyValue(new ApiErrors(staleVersionException));
+                    }
+                    if (ex instanceof OptimisticLockingFailureException) {
+                        count(registry, ex);
+                        return ServerResponse.status(HttpStatus.CONFLICT)
+                                .bodyValue(new ApiErrors(new StaleVersionException("Product is being modified concurrently, try again")));
+                    }
+                    if (ex instanceof ServiceOverloadedException overloadedException) {
+                        count(registry, ex);
+                        return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header(HttpHeaders.RETRY_AFTER, "1")
+                                .bodyValue(new ApiErrors(overloadedException));
+                    }
+                    if (ex instanceof AuthenticationException) {
+                        return ServerResponse.status(HttpStatus.FORBIDDEN).build();
+                    }
+                    return Mono.error(ex);
+                });
+    }
+
+    /**
+     * Same api.errors counter as the servlet service, by exception type and the class and method
+     * that threw it.
+     */
+    private static void count(MeterRegistry registry, Throwable ex) {
+        StackTraceElement[] trace = ex.getStackTrace();
+        String source = "unknown";
+        if (trace.length > 0) {
+            String className = trace[0].getClassName();
+            source = className.substring(className.lastIndexOf('.') + 1) + "." + trace[0].getMethodName();
+        }
+
+        registry.counter("api.errors", "exception", ex.getClass().getSimpleName(), "source", source).increment();
+    }
+
+}
@@ -0,0 +1,171 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.exception.StaleVersionException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Non-blocking counterpart of the servlet ProductService for the calls of the product API: each
+ * change and its outbox event run in one R2DBC transaction, and lost optimistic locks are retried
+ * without parking a thread during the backoff. Products aren't cached nor indexed, every read goes
+ * to the database.
+ */
+@Service
+public class ReactiveProductService {
+
+    private final ReactiveProductRepository repository;
+
+    private final ReactiveProductOutbox outbox;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final int updateMaxAttempts;
+
+    private final Duration updateBackoff;
+
+    public ReactiveProductService(ReactiveProductRepository repository,
+                                  ReactiveProductOutbox outbox,
+                                  TransactionalOperator transactionalOperator,
+                                  @Value("${product.update.max-attempts:3}") int updateMaxAttempts,
+                                  @Value("${product.update.backoff:20ms}") Duration updateBackoff) {
+        this.repository = repository;
+        this.outbox = outbox;
+        this.transactionalOperator = transactionalOperator;
+        this.updateMaxAttempts = updateMaxAttempts;
+        this.updateBackoff = updateBackoff;
+    }
+
+    public Mono<Product> register(Product product) {
+        return repository.insert(product)
+                .flatMap(repository::findById)
+                .flatMap(saved -> outbox.append(ProductEvent.Type.CREATED, saved).thenReturn(saved))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Copies the non null fields of the DTO onto the current state of the product, with the same
+     * optimistic locking rules as the servlet service.
+     *
+     * @param expectedVersion the version the caller based its changes on, or null to apply them to
+     *                        whatever the current version is
+     * @return the updated product, or empty when it doesn't exist; fails with a
+     * {@link StaleVersionException} when the product is no longer at the expected version and with
+     * an {@link OptimisticLockingFailureException} when every attempt lost against a concurrent write
+     */
+    public Mono<Product> update(Long id, ProductDTO dto, Long expectedVersion) {
+        Mono<Product> attempt = Mono.defer(() -> applyUpdate(id, dto, expectedVersion))
+                .as(transactionalOperator::transactional);
+
+        if (expectedVersion != null) {
+            return attempt.onErrorMap(OptimisticLockingFailureException.class,
+                    ex -> new StaleVersionException("Product has been modified"));
+        }
+
+        return attempt.retryWhen(Retry.backoff(updateMaxAttempts - 1, updateBackoff)
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    public Mono<Product> findById(Long id) {
+        return repository.findById(id);
+    }
+
+    /**
+     * Lists products by name, the page content and the total are queried concurrently.
+     */
+    public Mono<Page<ProductDTO>> listAll(String name, Pageable pageable) {
+        return Mono.zip(repository.findDTOsByName(name, pageable).collectList(), repository.countByName(name))
+                .map(pageAndTotal -> new PageImpl<>(pageAndTotal.getT1(), pageable, pageAndTotal.getT2()));
+    }
+
+    /**
+     * @return the deleted product, or empty when it doesn't exist
+     */
+    public Mono<Product> delete(Long id) {
+        return repository.findById(id)
+                .flatMap(product -> repository.deleteById(id)
+                        .filter(deleted -> deleted > 0)
+                        .flatMap(deleted -> outbox.append(ProductEvent.Type.DELETED, product))
+                        .thenReturn(product))
+                .as(transactionalOperator::transactional);
+    }
+
+    public Mono<Product> addStorage(Long id, Integer quantity) {
+        return validateQuantity(quantity)
+                .then(repository.increaseQuantity(id, quantity))
+                .flatMap(updated -> {
+                    if (updated > 0) {
+                        return stockChanged(id);
+                    }
+                    return repository.existsById(id)
+                            .filter(exists -> exists)
+                            .flatMap(exists -> Mono.error(new BusinessException("Product's quantity can't go beyond " + Integer.MAX_VALUE)));
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    public Mono<Product> removeStorage(Long id, Integer quantity) {
+        return validateQuantity(quantity)
+                .then(repository.lockHeldQuantity(id))
+                .flatMap(held -> repository.decreaseQuantity(id, quantity, held))
+                .flatMap(updated -> {
+                    if (updated > 0) {
+                        return stockChanged(id);
+                    }
+                    return repository.existsById(id)
+                            .filter(exists -> exists)
+                            .flatMap(exists -> Mono.error(new BusinessException("Product's current quantity is less than passed quantity")));
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Product> applyUpdate(Long id, ProductDTO dto, Long expectedVersion) {
+        return repository.findById(id).flatMap(product -> {
+            if (expectedVersion != null && !expectedVersion.equals(product.getVersion())) {
+                return Mono.error(new StaleVersionException("Product has been modified"));
+            }
+
+            product.setProductValue(Optional.ofNullable(dto.getProductValue()).orElse(product.getProductValue()));
+            product.setName(Optional.ofNullable(dto.getName()).orElse(product.getName()));
+            product.setDescription(Optional.ofNullable(dto.getDescription()).orElse(product.getDescription()));
+            product.setQuantity(Optional.ofNullable(dto.getQuantity()).orElse(product.getQuantity()));
+            // the row lock keeps new holds out until the quantity is written
+            Mono<Integer> held = dto.getQuantity() == null ? Mono.just(0) : repository.lockHeldQuantity(id).defaultIfEmpty(0);
+
+            return held.filter(units -> dto.getQuantity() == null || dto.getQuantity() >= units)
+                    .switchIfEmpty(Mono.error(new BusinessException("Product's quantity can't be lower than its reserved quantity")))
+                    .flatMap(units -> repository.update(product))
+                    .flatMap(updated -> updated > 0
+                            ? repository.findById(id)
+                            : Mono.error(new OptimisticLockingFailureException("Product " + id + " was modified concurrently")))
+                    .flatMap(saved -> outbox.append(ProductEvent.Type.UPDATED, saved).thenReturn(saved));
+        });
+    }
+
+    private Mono<Product> stockChanged(Long id) {
+        return repository.findById(id)
+                .flatMap(product -> outbox.append(ProductEvent.Type.STOCK_CHANGED, product).thenReturn(product));
+    }
+
+    private Mono<Void> validateQuantity(Integer quantity) {
+        if (quantity <= 0) {
+            return Mono.error(new BusinessException("Passed quantity should be equal or higher than 1"));
+        }
+        return Mono.empty();
+    }
+
+}
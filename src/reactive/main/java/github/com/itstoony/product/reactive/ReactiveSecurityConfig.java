@@ -0,0 +1,81 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.security.BoundedPasswordEncoder;
+import github.com.itstoony.product.security.TokenPrincipalCache;
+import github.com.itstoony.product.security.jwt.TokenService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+import java.time.Duration;
+
+/**
+ * Same rules as the servlet SecurityConfig: stateless, {@code /auth/*} open to everyone and every
+ * other call needs a bearer token, unauthenticated calls are answered with 403.
+ */
+@Configuration
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, TokenService tokenService,
+                                                         ReactiveUserRepository userRepository,
+                                                         TokenPrincipalCache principalCache, MeterRegistry registry) {
+        return http
+                .csrf().disable()
+                .httpBasic().disable()
+                .formLogin().disable()
+                .logout().disable()
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling().authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.FORBIDDEN))
+                .and().authorizeExchange()
+                .pathMatchers(HttpMethod.POST, "/auth/*").permitAll()
+                .anyExchange().authenticated()
+                .and().addFilterAt(new ReactiveSecurityFilter(tokenService, userRepository, principalCache, registry),
+                        SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+    @Bean
+    public ReactiveUserDetailsService reactiveUserDetailsService(ReactiveUserRepository userRepository) {
+        return login -> userRepository.findByLogin(login).cast(UserDetails.class);
+    }
+
+    /**
+     * Checks the login passwords, the hash comparison is published on the bounded elastic scheduler.
+     */
+    @Bean
+    public ReactiveAuthenticationManager reactiveAuthenticationManager(ReactiveUserDetailsService userDetailsService,
+                                                                       PasswordEncoder passwordEncoder) {
+        UserDetailsRepositoryReactiveAuthenticationManager manager = new UserDetailsRepositoryReactiveAuthenticationManager(userDetailsService);
+        manager.setPasswordEncoder(passwordEncoder);
+        return manager;
+    }
+
+    @Bean
+    public PasswordEncoder passwordEncoder(@Value("${api.security.password.strength:10}") int strength,
+                                           @Value("${api.security.password.threads:0}") int threads,
+                                           @Value("${api.security.password.queue-capacity:32}") int queueCapacity,
+                                           @Value("${api.security.password.timeout:5s}") Duration timeout,
+                                           MeterRegistry registry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), poolSize, queueCapacity, timeout, registry);
+    }
+
+}
@@ -0,0 +1,108 @@
+package github.com.itstoony.product.reactive;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import github.com.itstoony.product.security.TokenPrincipalCache;
+import github.com.itstoony.product.security.jwt.TokenService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Reactive counterpart of the servlet SecurityFilter: resolves the bearer token to its user through
+ * the shared principal cache, and on a miss verifies it and loads the user without blocking the
+ * event loop. Requests with a missing, invalid or expired token go on unauthenticated.
+ * <p>
+ * Added to the security chain only, not declared as a bean, or WebFlux would run it a second time
+ * as a plain web filter.
+ */
+public class ReactiveSecurityFilter implements WebFilter {
+
+    private final TokenService tokenService;
+
+    private final ReactiveUserRepository userRepository;
+
+    private final TokenPrincipalCache principalCache;
+
+    private final MeterRegistry registry;
+
+    private final Timer authenticationTimer;
+
+    private final Timer userLookupTimer;
+
+    public ReactiveSecurityFilter(TokenService tokenService, ReactiveUserRepository userRepository,
+                                  TokenPrincipalCache principalCache, MeterRegistry registry) {
+        this.tokenService = tokenService;
+        this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.registry = registry;
+        this.authenticationTimer = Timer.builder("security.authentication")
+                .description("Time spent resolving the principal of a bearer token, cache hits included")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.userLookupTimer = Timer.builder("security.user.lookup")
+                .description("Time spent loading the user of a freshly verified token")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String tokenJWT = getToken(exchange);
+
+        if (tokenJWT == null) {
+            return chain.filter(exchange);
+        }
+
+        Timer.Sample sample = Timer.start(registry);
+        return resolve(tokenJWT)
+                .map(user -> Optional.<Authentication>of(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())))
+                .defaultIfEmpty(Optional.empty())
+                .doOnNext(authentication -> sample.stop(authenticationTimer))
+                .flatMap(authentication -> authentication
+                        .map(value -> chain.filter(exchange).contextWrite(ReactiveSecurityContextHolder.withAuthentication(value)))
+                        .orElseGet(() -> chain.filter(exchange)));
+    }
+
+    private Mono<UserDetails> resolve(String tokenJWT) {
+        UserDetails cached = principalCache.getIfPresent(tokenJWT);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        DecodedJWT decodedJWT;
+        try {
+            decodedJWT = tokenService.verify(tokenJWT);
+        } catch (JWTVerificationException ex) {
+            return Mono.empty();
+        }
+
+        Timer.Sample lookup = Timer.start(registry);
+        return userRepository.findByLogin(decodedJWT.getSubject())
+                .doOnTerminate(() -> lookup.stop(userLookupTimer))
+                .doOnNext(user -> principalCache.put(tokenJWT,
+                        new TokenPrincipalCache.VerifiedPrincipal(user, decodedJWT.getExpiresAtAsInstant())))
+                .cast(UserDetails.class);
+    }
+
+    private String getToken(ServerWebExchange exchange) {
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+
+        if (authorization != null) {
+            return authorization.replace("Bearer ", "");
+        }
+
+        return null;
+    }
+
+}
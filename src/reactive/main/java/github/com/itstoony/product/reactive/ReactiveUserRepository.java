@@ -0,0 +1,56 @@
+package github.com.itstoony.product.reactive;
+
+import github.com.itstoony.product.model.Product.User;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * The users table over R2DBC, for logins and the principal of verified tokens.
+ */
+@Repository
+public class ReactiveUserRepository {
+
+    private static final String SELECT_BY_LOGIN_SQL = "SELECT id, login, password FROM users WHERE login = :login";
+
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM users WHERE login = :login";
+
+    private static final String INSERT_SQL = "INSERT INTO users (login, password) VALUES (:login, :password)";
+
+    private final DatabaseClient client;
+
+    public ReactiveUserRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    public Mono<User> findByLogin(String login) {
+        return client.sql(SELECT_BY_LOGIN_SQL)
+                .bind("login", login)
+                .map(row -> User.builder()
+                        .id(row.get("id", Long.class))
+                        .login(row.get("login", String.class))
+                        .password(row.get("password", String.class))
+                        .build())
+                .one();
+    }
+
+    public Mono<Boolean> existsByLogin(String login) {
+        return client.sql(EXISTS_SQL)
+                .bind("login", login)
+                .map(row -> row.get(0, Long.class) > 0)
+                .one();
+    }
+
+    /**
+     * @return the id the user was stored with
+     */
+    public Mono<Long> insert(User user) {
+        return client.sql(INSERT_SQL)
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .bind("login", user.getLogin())
+                .bind("password", user.getPassword())
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+}
@@ -0,0 +1,246 @@
+package github.com.itstoony.product.product.reactive;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.UserDTO;
+import github.com.itstoony.product.reactive.ReactiveProductApplication;
+import github.com.itstoony.product.security.jwt.DataTokenJWT;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = ReactiveProductApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"test", ReactiveProductApplication.PROFILE})
+class ReactiveProductApiTest {
+
+   static final String PRODUCT_API = "/api/product";
+
+   static String token;
+
+   @Autowired
+   WebTestClient client;
+
+   @Autowired
+   DatabaseClient databaseClient;
+
+   @BeforeEach
+   void setUp() {
+      if (token == null) {
+         UserDTO user = new UserDTO(null, "reactive-test", "reactive-test");
+
+         client.post().uri("/auth/register").bodyValue(user).exchange().expectStatus().isCreated();
+
+         token = client.post().uri("/auth/login")
+                 .bodyValue(user)
+                 .exchange()
+                 .expectStatus().isOk()
+                 .expectBody(DataTokenJWT.class)
+                 .returnResult()
+                 .getResponseBody()
+                 .token();
+      }
+   }
+
+   @AfterEach
+   void tearDown() {
+      databaseClient.sql("DELETE FROM product_outbox").then().block();
+      databaseClient.sql("DELETE FROM product").then().block();
+   }
+
+   @Test
+   @DisplayName("Should register a product and record its creation in the outbox")
+   void registerTest() {
+      // execution
+      ProductDTO created = register("Refrigerante", 10);
+
+      // validation
+      assertThat(created.getId()).isNotNull();
+      assertThat(created.getVersion()).isZero();
+      assertThat(databaseClient.sql("SELECT type FROM product_outbox WHERE product_id = :id")
+              .bind("id", created.getId())
+              .map(row -> row.get("type", String.class))
+              .all()
+              .collectList()
+              .block())
+              .containsExactly("CREATED");
+   }
+
+   @Test
+   @DisplayName("Should return 400 with the validation errors of an invalid product")
+   void registerInvalidProductTest() {
+      client.post().uri(PRODUCT_API)
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .bodyValue(new ProductDTO())
+              .exchange()
+              .expectStatus().isBadRequest()
+              .expectBody()
+              .jsonPath("errors.length()").isEqualTo(4);
+   }
+
+   @Test
+   @DisplayName("Should return 403 when the token is missing or invalid")
+   void unauthenticatedTest() {
+      client.get().uri(PRODUCT_API + "/1").exchange().expectStatus().isForbidden();
+
+      client.get().uri(PRODUCT_API + "/1")
+              .header(HttpHeaders.AUTHORIZATION, "Bearer invalid")
+              .exchange()
+              .expectStatus().isForbidden();
+   }
+
+   @Test
+   @DisplayName("Should find a product and answer 304 when its ETag still matches")
+   void findByIdTest() {
+      // scenery
+      ProductDTO created = register("Refrigerante", 10);
+
+      // execution
+      String eTag = client.get().uri(PRODUCT_API + "/" + created.getId())
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .exchange()
+              .expectStatus().isOk()
+              .expectBody()
+              .jsonPath("name").isEqualTo("Refrigerante")
+              .returnResult()
+              .getResponseHeaders()
+              .getETag();
+
+      // validation
+      assertThat(eTag).isEqualTo("\"0\"");
+      client.get().uri(PRODUCT_API + "/" + created.getId())
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .header(HttpHeaders.IF_NONE_MATCH, eTag)
+              .exchange()
+              .expectStatus().isNotModified();
+   }
+
+   @Test
+   @DisplayName("Should update a product and refuse an update based on a stale version")
+   void updateTest() {
+      // scenery
+      ProductDTO created = register("Refrigerante", 10);
+      ProductDTO changes = ProductDTO.builder().name("Refrigerante Zero").build();
+
+      // execution
+      client.put().uri(PRODUCT_API + "/" + created.getId())
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .header(HttpHeaders.IF_MATCH, "\"0\"")
+              .bodyValue(changes)
+              .exchange()
+              .expectStatus().isOk()
+              .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+              .expectBody()
+              .jsonPath("name").isEqualTo("Refrigerante Zero")
+              .jsonPath("quantity").isEqualTo(10);
+
+      // validation
+      client.put().uri(PRODUCT_API + "/" + created.getId())
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .header(HttpHeaders.IF_MATCH, "\"0\"")
+              .bodyValue(changes)
+              .exchange()
+              .expectStatus().isEqualTo(412);
+   }
+
+   @Test
+   @DisplayName("Should list products by name as a page")
+   void listAllTest() {
+      // scenery
+      register("Refrigerante", 1);
+      register("Refrigerante Zero", 2);
+      register("Suco", 3);
+
+      // execution
+      client.get().uri(PRODUCT_API + "/list?name=refri&page=0&size=1")
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .exchange()
+
+              // validation
+              .expectStatus().isOk()
+              .expectHeader().exists(HttpHeaders.ETAG)
+              .expectBody()
+              .jsonPath("content.length()").isEqualTo(1)
+              .jsonPath("content[0].name").isEqualTo("Refrigerante")
+              .jsonPath("totalElements").isEqualTo(2)
+              .jsonPath("pageable.pageSize").isEqualTo(1);
+   }
+
+   @Test
+   @DisplayName("Should add and remove storage, refusing to remove more than the current quantity")
+   void storageTest() {
+      // scenery
+      ProductDTO created = register("Refrigerante", 10);
+
+      // execution
+      client.patch().uri(PRODUCT_API + "/" + created.getId() + "/storage/add/5")
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .exchange()
+              .expectStatus().isOk()
+              .expectBody()
+              .jsonPath("quantity").isEqualTo(15);
+
+      // validation
+      client.patch().uri(PRODUCT_API + "/" + created.getId() + "/storage/remove/16")
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .exchange()
+              .expectStatus().isBadRequest()
+              .expectBody()
+              .jsonPath("errors[0]").isEqualTo("Product's current quantity is less than passed quantity");
+
+      client.patch().uri(PRODUCT_API + "/999999/storage/remove/1")
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .exchange()
+              .expectStatus().isNotFound();
+   }
+
+   @Test
+   @DisplayName("Should delete a product")
+   void deleteTest() {
+      // scenery
+      ProductDTO created = register("Refrigerante", 10);
+
+      // execution
+      client.delete().uri(PRODUCT_API + "/" + created.getId())
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .exchange()
+              .expectStatus().isNoContent();
+
+      // validation
+      client.get().uri(PRODUCT_API + "/" + created.getId())
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .exchange()
+              .expectStatus().isNotFound();
+   }
+
+   private ProductDTO register(String name, int quantity) {
+      ProductDTO dto = ProductDTO.builder()
+              .name(name)
+              .description("Bebida")
+              .productValue(BigDecimal.TEN)
+              .quantity(quantity)
+              .build();
+
+      return client.post().uri(PRODUCT_API)
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+              .contentType(MediaType.APPLICATION_JSON)
+              .bodyValue(dto)
+              .exchange()
+              .expectStatus().isCreated()
+              .expectHeader().exists(HttpHeaders.LOCATION)
+              .expectBody(ProductDTO.class)
+              .returnResult()
+              .getResponseBody();
+   }
+
+}
@@ -0,0 +1,40 @@
+package github.com.itstoony.product.product.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import github.com.itstoony.product.config.ConnectionPoolEndpoint;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConnectionPoolEndpointTest {
+
+   @Test
+   @DisplayName("Should report the share of the pool in use")
+   void poolSaturationTest() throws Exception {
+      // scenery
+      try (HikariDataSource dataSource = new HikariDataSource()) {
+         dataSource.setJdbcUrl("jdbc:h2:mem:pool-endpoint");
+         dataSource.setPoolName("test-pool");
+         dataSource.setMaximumPoolSize(4);
+
+         ConnectionPoolEndpoint endpoint = new ConnectionPoolEndpoint(dataSource);
+
+         // execution
+         ConnectionPoolEndpoint.PoolState state;
+         try (Connection ignored = dataSource.getConnection()) {
+            state = endpoint.pool();
+         }
+
+         // validation
+         assertThat(state.pool()).isEqualTo("test-pool");
+         assertThat(state.active()).isEqualTo(1);
+         assertThat(state.maximum()).isEqualTo(4);
+         assertThat(state.threadsAwaiting()).isZero();
+         assertThat(state.saturation()).isEqualTo(0.25);
+      }
+   }
+
+}
@@ -0,0 +1,63 @@
+package github.com.itstoony.product.product.config;
+
+import github.com.itstoony.product.security.jwt.TokenService;
+import github.com.itstoony.product.service.ProductService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@SpringBootTest
+@AutoConfigureObservability
+@ActiveProfiles("test")
+class MetricsConfigTest {
+
+   @Autowired
+   ProductService productService;
+
+   @Autowired
+   TokenService tokenService;
+
+   @Autowired
+   MeterRegistry meterRegistry;
+
+   @Autowired
+   PrometheusMeterRegistry prometheusRegistry;
+
+   @Test
+   @DisplayName("Should time service methods and publish their histogram for Prometheus")
+   void serviceTimerTest() {
+      // execution
+      productService.countByName("metrics");
+
+      // validation
+      assertThat(meterRegistry.get("product.service")
+              .tag("class", ProductService.class.getName())
+              .tag("method", "countByName")
+              .timer()
+              .count()).isEqualTo(1);
+      assertThat(prometheusRegistry.scrape()).contains("product_service_seconds_bucket");
+   }
+
+   @Test
+   @DisplayName("Should time token verification, failures included")
+   void tokenTimerTest() {
+      // execution
+      Throwable exception = catchThrowable(() -> tokenService.verify("invalid"));
+
+      // validation
+      assertThat(exception).isNotNull();
+      assertThat(meterRegistry.get("jwt.verify")
+              .tag("exception", "JWTVerificationException")
+              .timer()
+              .count()).isEqualTo(1);
+   }
+
+}
@@ -0,0 +1,42 @@
+package github.com.itstoony.product.product.config;
+
+import github.com.itstoony.product.config.VirtualThreadConfig;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadConfigTest {
+
+   ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+           .withUserConfiguration(VirtualThreadConfig.class);
+
+   @Test
+   @DisplayName("Should keep platform threads unless virtual threads are enabled")
+   void disabledByDefaultTest() {
+      contextRunner.run(context -> {
+         assertThat(context).doesNotHaveBean(ExecutorService.class);
+         assertThat(context).doesNotHaveBean(TomcatProtocolHandlerCustomizer.class);
+      });
+   }
+
+   @Test
+   @DisplayName("Should run requests and async work on virtual threads when enabled")
+   void enabledTest() {
+      contextRunner.withPropertyValues("product.threads.virtual=true").run(context -> {
+         ExecutorService executor = context.getBean(ExecutorService.class);
+         AsyncTaskExecutor taskExecutor = context.getBean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, AsyncTaskExecutor.class);
+
+         assertThat(executor.submit(() -> Thread.currentThread().isVirtual()).get()).isTrue();
+         assertThat(taskExecutor.submit(() -> Thread.currentThread().isVirtual()).get()).isTrue();
+         assertThat(context).hasSingleBean(TomcatProtocolHandlerCustomizer.class);
+      });
+   }
+
+}
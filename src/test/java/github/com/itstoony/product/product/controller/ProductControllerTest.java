@@ -2,12 +2,25 @@ package github.com.itstoony.product.product.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import github.com.itstoony.product.controller.ProductController;
+import github.com.itstoony.product.dto.ProductCursor;
 import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.ProductImportReportDTO;
+import github.com.itstoony.product.dto.ProductStockDTO;
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.dto.StockMovementResultDTO;
 import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.exception.StaleVersionException;
 import github.com.itstoony.product.model.Product.Product;
 import github.com.itstoony.product.repository.UserRepository;
+import github.com.itstoony.product.security.TokenPrincipalCache;
 import github.com.itstoony.product.security.jwt.TokenService;
+import github.com.itstoony.product.service.ProductExportService;
+import github.com.itstoony.product.service.ProductImportService;
 import github.com.itstoony.product.service.ProductService;
+import github.com.itstoony.product.stock.StockWriteBehind;
+import github.com.itstoony.product.stream.ProductStockBroadcaster;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -15,32 +28,63 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPInputStream;
 
 import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
 import static github.com.itstoony.product.product.utils.Utils.createValidProductDTO;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(controllers = ProductController.class)
+@Import(SimpleMeterRegistry.class)
 @ActiveProfiles("test")
 class ProductControllerTest {
 
@@ -49,9 +93,24 @@ class ProductControllerTest {
    @MockBean
    ProductService productService;
 
+   @MockBean
+   ProductImportService productImportService;
+
+   @MockBean
+   ProductExportService productExportService;
+
+   @MockBean
+   ProductStockBroadcaster productStockBroadcaster;
+
+   @MockBean
+   StockWriteBehind stockWriteBehind;
+
    @Autowired
    WebApplicationContext webApplicationContext;
 
+   @Autowired
+   MeterRegistry meterRegistry;
+
    MockMvc mvc;
 
    @MockBean
@@ -60,6 +119,9 @@ class ProductControllerTest {
    @MockBean
    UserRepository repository;
 
+   @MockBean
+   TokenPrincipalCache principalCache;
+
 
    @BeforeEach
    void setUp() {
@@ -139,12 +201,12 @@ class ProductControllerTest {
               .description(dto.getDescription())
               .quantity(dto.getQuantity())
               .productValue(dto.getProductValue())
+              .version(4L)
               .build();
 
       String json = new ObjectMapper().writeValueAsString(dto);
 
-      given( productService.findById(id) ).willReturn(Optional.of(product));
-      given( productService.update(any(Product.class), any(ProductDTO.class)) ).willReturn(updatedProduct);
+      given( productService.update(eq(id), any(ProductDTO.class), eq(null)) ).willReturn(Optional.of(updatedProduct));
 
       // execution
       MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -157,6 +219,7 @@ class ProductControllerTest {
       mvc
               .perform(request)
               .andExpect(status().isOk())
+              .andExpect(header().string("ETag", "\"4\""))
               .andExpect(jsonPath("name").value(dto.getName()))
               .andExpect(jsonPath("quantity").value(dto.getQuantity()))
               .andExpect(jsonPath("description").value(dto.getDescription()))
@@ -169,7 +232,7 @@ class ProductControllerTest {
       // scenery
       Long id = 1L;
 
-      given( productService.findById(id) ).willReturn(Optional.empty());
+      given( productService.update(eq(id), any(ProductDTO.class), any()) ).willReturn(Optional.empty());
       ProductDTO dto = createValidProductDTO();
 
       String json = new ObjectMapper().writeValueAsString(dto);
@@ -203,6 +266,7 @@ class ProductControllerTest {
       // validation
       mvc
               .perform(request)
+              .andExpect(header().string("ETag", "\"0\""))
               .andExpect(jsonPath("id").value(id))
               .andExpect(jsonPath("name").value(product.getName()))
               .andExpect(jsonPath("quantity").value(product.getQuantity()))
@@ -211,6 +275,140 @@ class ProductControllerTest {
 
    }
 
+   @Test
+   @DisplayName("Should send the update timestamp as Last-Modified")
+   void findByIdLastModifiedTest() throws Exception {
+      // scenery
+      Long id = 1L;
+      Product product = createValidProduct();
+      product.setUpdatedAt(Instant.parse("2023-03-01T10:15:30Z"));
+
+      given( productService.findById(id) ).willReturn(Optional.of(product) );
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/" + id));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(header().string("Last-Modified", "Wed, 01 Mar 2023 10:15:30 GMT"));
+   }
+
+   @Test
+   @DisplayName("Should return 304 without a body when the product still matches If-None-Match")
+   void findByIdNotModifiedTest() throws Exception {
+      // scenery
+      Long id = 1L;
+      Product product = createValidProduct();
+      product.setVersion(3L);
+
+      given( productService.findById(id) ).willReturn(Optional.of(product) );
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/" + id))
+              .header("If-None-Match", "\"3\"");
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isNotModified())
+              .andExpect(header().string("ETag", "\"3\""))
+              .andExpect(content().string(""));
+   }
+
+   @Test
+   @DisplayName("Should return the product when it changed since If-None-Match")
+   void findByIdModifiedTest() throws Exception {
+      // scenery
+      Long id = 1L;
+      Product product = createValidProduct();
+      product.setVersion(4L);
+
+      given( productService.findById(id) ).willReturn(Optional.of(product) );
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/" + id))
+              .header("If-None-Match", "\"3\"");
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(header().string("ETag", "\"4\""))
+              .andExpect(jsonPath("id").value(id));
+   }
+
+   @Test
+   @DisplayName("Should pass the If-Match version to the update")
+   void conditionalUpdateTest() throws Exception {
+      // scenery
+      Long id = 1L;
+      ProductDTO dto = createValidProductDTO();
+      Product updatedProduct = createValidProduct();
+      updatedProduct.setVersion(8L);
+
+      given( productService.update(eq(id), any(ProductDTO.class), eq(7L)) ).willReturn(Optional.of(updatedProduct));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .put(PRODUCT_API.concat("/" + id))
+              .contentType(MediaType.APPLICATION_JSON)
+              .header("If-Match", "\"7\"")
+              .content(new ObjectMapper().writeValueAsString(dto));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(header().string("ETag", "\"8\""));
+   }
+
+   @Test
+   @DisplayName("Should return 412 when the product doesn't match the If-Match version")
+   void staleConditionalUpdateTest() throws Exception {
+      // scenery
+      Long id = 1L;
+      given( productService.update(eq(id), any(ProductDTO.class), eq(7L)) )
+              .willThrow(new StaleVersionException("Product has been modified"));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .put(PRODUCT_API.concat("/" + id))
+              .contentType(MediaType.APPLICATION_JSON)
+              .header("If-Match", "\"7\"")
+              .content(new ObjectMapper().writeValueAsString(createValidProductDTO()));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isPreconditionFailed())
+              .andExpect(jsonPath("errors[0]").value("Product has been modified"));
+   }
+
+   @Test
+   @DisplayName("Should return 409 when an update keeps losing against concurrent writes")
+   void conflictingUpdateTest() throws Exception {
+      // scenery
+      Long id = 1L;
+      given( productService.update(eq(id), any(ProductDTO.class), any()) )
+              .willThrow(new ObjectOptimisticLockingFailureException(Product.class, id));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .put(PRODUCT_API.concat("/" + id))
+              .contentType(MediaType.APPLICATION_JSON)
+              .content(new ObjectMapper().writeValueAsString(createValidProductDTO()));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isConflict());
+   }
+
    @Test
    @DisplayName("Should return 404 not found when passed ID is invalid")
    void findByInvalidIdTest() throws Exception {
@@ -233,7 +431,7 @@ class ProductControllerTest {
    @DisplayName("Should list all products")
    void listProductsTest() throws Exception {
       // scenery
-      Product product = createValidProduct();
+      ProductDTO product = createValidProductDTO();
       String name = "Refrig";
       given( productService.listAll(any(String.class), any(Pageable.class) ) )
               .willReturn(new PageImpl<>(Collections.singletonList(product), Pageable.ofSize(20), 1) );
@@ -252,6 +450,79 @@ class ProductControllerTest {
               .andExpect( jsonPath("pageable.pageNumber").value(0));
    }
 
+   @Test
+   @DisplayName("Should return 304 when no product of the listed page changed")
+   void listProductsNotModifiedTest() throws Exception {
+      // scenery
+      ProductDTO product = createValidProductDTO();
+      product.setVersion(2L);
+      given( productService.listAll(any(String.class), any(Pageable.class) ) )
+              .willAnswer(invocation -> new PageImpl<>(List.of(product), Pageable.ofSize(20), 1));
+
+      String eTag = mvc
+              .perform(MockMvcRequestBuilders.get(PRODUCT_API.concat("/list?name=Refrig")))
+              .andExpect(status().isOk())
+              .andReturn()
+              .getResponse()
+              .getHeader("ETag");
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/list?name=Refrig"))
+              .header("If-None-Match", eTag);
+
+      // validation
+      assertThat(eTag).startsWith("\"p-");
+      mvc
+              .perform(request)
+              .andExpect(status().isNotModified())
+              .andExpect(content().string(""));
+
+      product.setVersion(3L);
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(header().string("ETag", not(eTag)));
+   }
+
+   @Test
+   @DisplayName("Should list products by cursor returning the next cursor")
+   void listProductsByCursorTest() throws Exception {
+      // scenery
+      Product product = createValidProduct();
+      ProductCursor cursor = new ProductCursor("Refri", 10L);
+
+      given( productService.listAfter(eq("Refrig"), eq(cursor), eq(1)) )
+              .willReturn(new SliceImpl<>(List.of(product), Pageable.ofSize(1), true));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/list/cursor?name=Refrig&size=1&cursor=" + cursor.encode()));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("content", hasSize(1)))
+              .andExpect(jsonPath("hasNext").value(true))
+              .andExpect(jsonPath("nextCursor").value(new ProductCursor(product.getName(), product.getId()).encode()))
+              .andExpect(jsonPath("totalElements").doesNotExist());
+   }
+
+   @Test
+   @DisplayName("Should return 400 Bad Request when the cursor is invalid")
+   void listProductsByInvalidCursorTest() throws Exception {
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/list/cursor?cursor=invalid"));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isBadRequest())
+              .andExpect(jsonPath("errors[0]").value("Invalid cursor"));
+   }
+
    @Test
    @DisplayName("Should delete a product by its id")
    void deleteProductTest() throws Exception {
@@ -305,9 +576,8 @@ class ProductControllerTest {
       updatingProduct.setId(id);
       updatedProduct.setQuantity(updatingProduct.getQuantity() + quantity);
 
-      given(productService.findById(id)).willReturn(Optional.of(updatingProduct));
-      given(productService.addStorage(any(Product.class), anyInt()))
-              .willReturn(updatedProduct);
+      given(productService.addStorage(anyLong(), anyInt()))
+              .willReturn(Optional.of(updatedProduct));
 
       // execution
       MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -322,6 +592,51 @@ class ProductControllerTest {
               .andExpect(jsonPath("quantity").value(updatedProduct.getQuantity()));
    }
 
+   @Test
+   @DisplayName("Should route storage changes through write-behind when it is enabled")
+   void addStorageWriteBehindTest() throws Exception {
+      // scenery
+      Product updatedProduct = createValidProduct();
+      updatedProduct.setQuantity(25);
+
+      given(stockWriteBehind.isEnabled()).willReturn(true);
+      given(stockWriteBehind.addStorage(1L, 5, true)).willReturn(Optional.of(updatedProduct));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .patch(PRODUCT_API.concat("/1/storage/add/5"))
+              .param("sync", "true")
+              .accept(MediaType.APPLICATION_JSON);
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("quantity").value(25));
+
+      verify(productService, never()).addStorage(anyLong(), anyInt());
+   }
+
+   @Test
+   @DisplayName("Should return 404 not found when adding quantity to an invalid id")
+   void addStorageWithInvalidIdTest() throws Exception {
+      // scenery
+      int quantity = 5;
+      long id = 1L;
+
+      given(productService.addStorage(anyLong(), anyInt())).willReturn(Optional.empty());
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .patch(PRODUCT_API.concat("/" + id + "/storage/add/" + quantity))
+              .accept(MediaType.APPLICATION_JSON);
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isNotFound());
+   }
+
    @Test
    @DisplayName("Should return Bad Request when passed quantity is equal or lower than 0")
    void addInvalidQuantityTest() throws Exception {
@@ -334,8 +649,7 @@ class ProductControllerTest {
 
       String errorMessage = "Passed quantity should be equal or higher than 1";
 
-      given(productService.findById(id)).willReturn(Optional.of(updatingProduct));
-      given(productService.addStorage(any(Product.class), anyInt()))
+      given(productService.addStorage(anyLong(), anyInt()))
               .willThrow(new BusinessException(errorMessage));
 
       // execution
@@ -350,6 +664,11 @@ class ProductControllerTest {
               .andExpect(jsonPath("errors", hasSize(1)))
               .andExpect(jsonPath("errors[0]").value(errorMessage));
 
+      assertThat(meterRegistry.get("api.errors")
+              .tag("exception", "BusinessException")
+              .tag("source", "ProductController.addStorage")
+              .counter()
+              .count()).isEqualTo(1);
    }
 
    @Test
@@ -366,9 +685,8 @@ class ProductControllerTest {
       updatingProduct.setId(id);
       updatedProduct.setQuantity(updatingProduct.getQuantity() - quantity);
 
-      given(productService.findById(id)).willReturn(Optional.of(updatingProduct));
-      given(productService.removeStorage(any(Product.class), anyInt()))
-              .willReturn(updatedProduct);
+      given(productService.removeStorage(anyLong(), anyInt()))
+              .willReturn(Optional.of(updatedProduct));
 
       // execution
       MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -395,8 +713,7 @@ class ProductControllerTest {
 
       String errorMessage = "Product's current quantity is less than passed quantity";
 
-      given(productService.findById(id)).willReturn(Optional.of(updatingProduct));
-      given(productService.removeStorage(any(Product.class), anyInt()))
+      given(productService.removeStorage(anyLong(), anyInt()))
               .willThrow(new BusinessException(errorMessage));
 
       // execution
@@ -425,8 +742,7 @@ class ProductControllerTest {
 
       String errorMessage = "Passed quantity should be equal or higher than 1";
 
-      given(productService.findById(id)).willReturn(Optional.of(updatingProduct));
-      given(productService.removeStorage(any(Product.class), anyInt()))
+      given(productService.removeStorage(anyLong(), anyInt()))
               .willThrow(new BusinessException(errorMessage));
 
       // execution
@@ -443,4 +759,202 @@ class ProductControllerTest {
 
    }
 
+   @Test
+   @DisplayName("Should apply a batch of stock movements")
+   void applyStockMovementsTest() throws Exception {
+      // scenery
+      List<StockMovementDTO> movements = List.of(new StockMovementDTO(1L, 5), new StockMovementDTO(2L, -50));
+      String json = new ObjectMapper().writeValueAsString(movements);
+
+      given(productService.applyStockMovements(anyList())).willReturn(List.of(
+              StockMovementResultDTO.applied(movements.get(0), 25),
+              StockMovementResultDTO.rejected(movements.get(1), "Product's current quantity is less than passed quantity")
+      ));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(PRODUCT_API.concat("/storage/batch"))
+              .contentType(MediaType.APPLICATION_JSON)
+              .accept(MediaType.APPLICATION_JSON)
+              .content(json);
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$", hasSize(2)))
+              .andExpect(jsonPath("[0].status").value("APPLIED"))
+              .andExpect(jsonPath("[0].quantity").value(25))
+              .andExpect(jsonPath("[1].status").value("REJECTED"))
+              .andExpect(jsonPath("[1].message").value("Product's current quantity is less than passed quantity"));
+   }
+
+   @Test
+   @DisplayName("Should get a batch of products in request order reporting missing ids")
+   void batchGetTest() throws Exception {
+      // scenery
+      Product first = createValidProduct();
+      Product second = createValidProduct();
+      second.setId(2L);
+
+      Map<Long, Product> found = new LinkedHashMap<>();
+      found.put(2L, second);
+      found.put(1L, first);
+      given(productService.findAllById(anyList())).willReturn(found);
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(PRODUCT_API.concat("/batch-get"))
+              .contentType(MediaType.APPLICATION_JSON)
+              .content("[2, 7, 1, 2]");
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("products", hasSize(2)))
+              .andExpect(jsonPath("products[0].id").value(2))
+              .andExpect(jsonPath("products[1].id").value(1))
+              .andExpect(jsonPath("missing", hasSize(1)))
+              .andExpect(jsonPath("missing[0]").value(7));
+   }
+
+   @Test
+   @DisplayName("Should reject a batch get with null ids")
+   void batchGetNullIdTest() throws Exception {
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(PRODUCT_API.concat("/batch-get"))
+              .contentType(MediaType.APPLICATION_JSON)
+              .content("[1, null]");
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isBadRequest())
+              .andExpect(jsonPath("errors[0]").value("Product ids must not be null"));
+   }
+
+   @Test
+   @DisplayName("Should subscribe to the stock stream starting from the current stock of the found products")
+   void streamStockTest() throws Exception {
+      // scenery
+      Product product = createValidProduct();
+      Map<Long, Product> found = new LinkedHashMap<>();
+      found.put(1L, product);
+      given(productService.findAllById(anyList())).willReturn(found);
+      given(productStockBroadcaster.subscribe(anySet(), anyCollection())).willReturn(new SseEmitter());
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/stream"))
+              .param("ids", "1", "9", "1")
+              .accept(MediaType.TEXT_EVENT_STREAM);
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(request().asyncStarted());
+
+      verify(productStockBroadcaster).subscribe(
+              eq(new LinkedHashSet<>(List.of(1L, 9L))),
+              eq(List.of(new ProductStockDTO(1L, product.getQuantity(), product.getVersion()))));
+   }
+
+   @Test
+   @DisplayName("Should reject a stock stream of too many products")
+   void streamStockTooManyIdsTest() throws Exception {
+      // scenery
+      String[] ids = LongStream.rangeClosed(1, 101).mapToObj(String::valueOf).toArray(String[]::new);
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/stream"))
+              .param("ids", ids);
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isBadRequest())
+              .andExpect(jsonPath("errors[0]").value("Between 1 and 100 products can be streamed at once"));
+   }
+
+   @Test
+   @DisplayName("Should import products from a CSV body")
+   void importProductsTest() throws Exception {
+      // scenery
+      String csv = "name,description,productValue,quantity\nRefrigerante,Guaraná 2L,10.0,20\n";
+
+      given(productImportService.importProducts(any(InputStream.class), any(MediaType.class)))
+              .willReturn(new ProductImportReportDTO(1, 0, List.of(), 5, 200.0));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(PRODUCT_API.concat("/import"))
+              .contentType("text/csv")
+              .accept(MediaType.APPLICATION_JSON)
+              .content(csv);
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("imported").value(1))
+              .andExpect(jsonPath("rejectedRows", hasSize(0)));
+   }
+
+   @Test
+   @DisplayName("Should stream every product as newline delimited JSON")
+   void exportProductsTest() throws Exception {
+      // scenery
+      String ndjson = "{\"id\":1}\n{\"id\":2}\n";
+      willAnswer(invocation -> {
+         invocation.getArgument(0, OutputStream.class).write(ndjson.getBytes(StandardCharsets.UTF_8));
+         return 2L;
+      }).given(productExportService).exportProducts(any(OutputStream.class));
+
+      // execution
+      MvcResult result = mvc
+              .perform(MockMvcRequestBuilders.get(PRODUCT_API.concat("/export")))
+              .andExpect(request().asyncStarted())
+              .andReturn();
+
+      // validation
+      mvc
+              .perform(asyncDispatch(result))
+              .andExpect(status().isOk())
+              .andExpect(header().string("Content-Type", "application/x-ndjson"))
+              .andExpect(content().string(ndjson));
+   }
+
+   @Test
+   @DisplayName("Should gzip the exported products when asked to")
+   void exportGzipProductsTest() throws Exception {
+      // scenery
+      String ndjson = "{\"id\":1}\n";
+      willAnswer(invocation -> {
+         invocation.getArgument(0, OutputStream.class).write(ndjson.getBytes(StandardCharsets.UTF_8));
+         return 1L;
+      }).given(productExportService).exportProducts(any(OutputStream.class));
+
+      // execution
+      MvcResult result = mvc
+              .perform(MockMvcRequestBuilders.get(PRODUCT_API.concat("/export?gzip=true")))
+              .andExpect(request().asyncStarted())
+              .andReturn();
+
+      // validation
+      byte[] body = mvc
+              .perform(asyncDispatch(result))
+              .andExpect(status().isOk())
+              .andExpect(header().string("Content-Encoding", "gzip"))
+              .andReturn()
+              .getResponse()
+              .getContentAsByteArray();
+
+      try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+         assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(ndjson);
+      }
+   }
+
 }
@@ -0,0 +1,152 @@
+package github.com.itstoony.product.product.controller;
+
+import github.com.itstoony.product.controller.ProductReservationController;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.repository.ProductBatchRepository.ProductStock;
+import github.com.itstoony.product.repository.UserRepository;
+import github.com.itstoony.product.reservation.ProductReservationService;
+import github.com.itstoony.product.reservation.Reservation;
+import github.com.itstoony.product.security.TokenPrincipalCache;
+import github.com.itstoony.product.security.jwt.TokenService;
+import github.com.itstoony.product.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(controllers = ProductReservationController.class)
+@Import(SimpleMeterRegistry.class)
+@ActiveProfiles("test")
+class ProductReservationControllerTest {
+
+   static String PRODUCT_API = "/api/product";
+
+   @MockBean
+   ProductService productService;
+
+   @MockBean
+   ProductReservationService reservationService;
+
+   @MockBean
+   TokenService tokenService;
+
+   @MockBean
+   UserRepository repository;
+
+   @MockBean
+   TokenPrincipalCache principalCache;
+
+   @Autowired
+   WebApplicationContext webApplicationContext;
+
+   MockMvc mvc;
+
+   @BeforeEach
+   void setUp() {
+      mvc = MockMvcBuilders
+              .webAppContextSetup(webApplicationContext)
+              .build();
+   }
+
+   @Test
+   @DisplayName("Should hold units of a product")
+   void reserveTest() throws Exception {
+      // scenery
+      Reservation reservation = new Reservation(5L, 1L, 3, Instant.parse("2023-03-01T10:05:00Z"));
+      given(reservationService.reserve(1L, 3, Duration.ofSeconds(300))).willReturn(Optional.of(reservation));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(PRODUCT_API.concat("/1/reservations"))
+              .contentType(MediaType.APPLICATION_JSON)
+              .content("{\"quantity\": 3, \"ttlSeconds\": 300}");
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isCreated())
+              .andExpect(header().string("Location", "http://localhost/api/product/reservations/5"))
+              .andExpect(jsonPath("id").value(5))
+              .andExpect(jsonPath("productId").value(1))
+              .andExpect(jsonPath("quantity").value(3));
+   }
+
+   @Test
+   @DisplayName("Should refuse holding more units than available")
+   void reserveMoreThanAvailableTest() throws Exception {
+      // scenery
+      given(reservationService.reserve(1L, 30, null))
+              .willThrow(new BusinessException("Product's available quantity is less than passed quantity"));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(PRODUCT_API.concat("/1/reservations"))
+              .contentType(MediaType.APPLICATION_JSON)
+              .content("{\"quantity\": 30}");
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isBadRequest())
+              .andExpect(jsonPath("errors[0]").value("Product's available quantity is less than passed quantity"));
+   }
+
+   @Test
+   @DisplayName("Should return not found when confirming an expired reservation")
+   void confirmExpiredReservationTest() throws Exception {
+      // scenery
+      given(reservationService.confirm(5L)).willReturn(Optional.empty());
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(PRODUCT_API.concat("/reservations/5/confirm"));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isNotFound());
+   }
+
+   @Test
+   @DisplayName("Should report a product's quantity minus its reservations")
+   void availabilityTest() throws Exception {
+      // scenery
+      given(productService.findStock(1L)).willReturn(Optional.of(new ProductStock(10, 4)));
+
+      // execution
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .get(PRODUCT_API.concat("/1/availability"));
+
+      // validation
+      mvc
+              .perform(request)
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("quantity").value(10))
+              .andExpect(jsonPath("reserved").value(4))
+              .andExpect(jsonPath("available").value(6));
+   }
+
+}
@@ -0,0 +1,54 @@
+package github.com.itstoony.product.product.logging;
+
+import github.com.itstoony.product.logging.RequestIdFilter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestIdFilterTest {
+
+   RequestIdFilter filter = new RequestIdFilter();
+
+   @Test
+   @DisplayName("Should keep the caller's request id in the MDC while the request runs")
+   void callerRequestIdTest() throws Exception {
+      // scenery
+      MockHttpServletRequest request = new MockHttpServletRequest();
+      request.addHeader(RequestIdFilter.HEADER, "order-42.retry_1");
+      MockHttpServletResponse response = new MockHttpServletResponse();
+      AtomicReference<String> logged = new AtomicReference<>();
+
+      // execution
+      filter.doFilter(request, response, (req, res) -> logged.set(MDC.get(RequestIdFilter.MDC_KEY)));
+
+      // validation
+      assertThat(logged.get()).isEqualTo("order-42.retry_1");
+      assertThat(response.getHeader(RequestIdFilter.HEADER)).isEqualTo("order-42.retry_1");
+      assertThat(MDC.get(RequestIdFilter.MDC_KEY)).isNull();
+   }
+
+   @Test
+   @DisplayName("Should generate a request id when the header is missing or unsafe")
+   void generatedRequestIdTest() throws Exception {
+      // scenery
+      MockHttpServletRequest request = new MockHttpServletRequest();
+      request.addHeader(RequestIdFilter.HEADER, "bad\nid");
+      MockHttpServletResponse response = new MockHttpServletResponse();
+      AtomicReference<String> logged = new AtomicReference<>();
+
+      // execution
+      filter.doFilter(request, response, (req, res) -> logged.set(MDC.get(RequestIdFilter.MDC_KEY)));
+
+      // validation
+      assertThat(logged.get()).matches("[0-9a-f]{16}");
+      assertThat(response.getHeader(RequestIdFilter.HEADER)).isEqualTo(logged.get());
+      assertThat(MDC.get(RequestIdFilter.MDC_KEY)).isNull();
+   }
+
+}
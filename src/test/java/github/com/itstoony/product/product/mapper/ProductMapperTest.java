@@ -0,0 +1,85 @@
+package github.com.itstoony.product.product.mapper;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.UserDTO;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.mapper.UserMapper;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.model.Product.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static github.com.itstoony.product.product.utils.Utils.createValidProductDTO;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class ProductMapperTest {
+
+   ProductMapper productMapper = new ProductMapper();
+
+   UserMapper userMapper = new UserMapper();
+
+   @Test
+   @DisplayName("Should copy every field of a product into a DTO")
+   void toDTOTest() {
+      // scenery
+      Product product = createValidProduct();
+
+      // execution
+      ProductDTO dto = productMapper.toDTO(product);
+
+      // validation
+      assertThat(dto.getId()).isEqualTo(product.getId());
+      assertThat(dto.getName()).isEqualTo(product.getName());
+      assertThat(dto.getDescription()).isEqualTo(product.getDescription());
+      assertThat(dto.getProductValue()).isEqualTo(product.getProductValue());
+      assertThat(dto.getQuantity()).isEqualTo(product.getQuantity());
+   }
+
+   @Test
+   @DisplayName("Should copy every field of a DTO into a product")
+   void toEntityTest() {
+      // scenery
+      ProductDTO dto = createValidProductDTO();
+      dto.setId(1L);
+
+      // execution
+      Product product = productMapper.toEntity(dto);
+
+      // validation
+      assertThat(product.getId()).isEqualTo(dto.getId());
+      assertThat(product.getName()).isEqualTo(dto.getName());
+      assertThat(product.getDescription()).isEqualTo(dto.getDescription());
+      assertThat(product.getProductValue()).isEqualTo(dto.getProductValue());
+      assertThat(product.getQuantity()).isEqualTo(dto.getQuantity());
+   }
+
+   @Test
+   @DisplayName("Should copy login and password of a user DTO")
+   void userToEntityTest() {
+      // scenery
+      UserDTO dto = new UserDTO(null, "tony", "secret");
+
+      // execution
+      User user = userMapper.toEntity(dto);
+
+      // validation
+      assertThat(user.getId()).isNull();
+      assertThat(user.getLogin()).isEqualTo("tony");
+      assertThat(user.getPassword()).isEqualTo("secret");
+   }
+
+   @Test
+   @DisplayName("Should map null to null")
+   void nullTest() {
+      assertThat(productMapper.toDTO(null)).isNull();
+      assertThat(productMapper.toEntity(null)).isNull();
+      assertThat(userMapper.toEntity(null)).isNull();
+   }
+
+}
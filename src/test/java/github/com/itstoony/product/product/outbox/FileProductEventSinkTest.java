@@ -0,0 +1,44 @@
+package github.com.itstoony.product.product.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.com.itstoony.product.outbox.FileProductEventSink;
+import github.com.itstoony.product.outbox.ProductEvent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileProductEventSinkTest {
+
+   @TempDir
+   Path directory;
+
+   @Test
+   @DisplayName("Should append every batch as one JSON line per event")
+   void publishAppendsJsonLinesTest() throws Exception {
+      // scenery
+      Path file = directory.resolve("events/product-events.ndjson");
+      ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+      FileProductEventSink sink = new FileProductEventSink(file, objectMapper);
+
+      ProductEvent created = new ProductEvent(1, 10L, ProductEvent.Type.CREATED, Instant.EPOCH, "{}");
+      ProductEvent deleted = new ProductEvent(2, 10L, ProductEvent.Type.DELETED, Instant.EPOCH, "{}");
+
+      // execution
+      sink.publish(List.of(created));
+      sink.publish(List.of(deleted));
+
+      // validation
+      List<String> lines = Files.readAllLines(file);
+      assertThat(lines).hasSize(2);
+      assertThat(objectMapper.readValue(lines.get(0), ProductEvent.class)).isEqualTo(created);
+      assertThat(objectMapper.readValue(lines.get(1), ProductEvent.class)).isEqualTo(deleted);
+   }
+
+}
@@ -0,0 +1,162 @@
+package github.com.itstoony.product.product.outbox;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.exception.StaleVersionException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.InMemoryProductEventSink;
+import github.com.itstoony.product.outbox.ProductEvent;
+import github.com.itstoony.product.outbox.ProductOutbox;
+import github.com.itstoony.product.outbox.ProductOutboxRelay;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@SpringBootTest(properties = "product.outbox.relay.enabled=false")
+@ActiveProfiles("test")
+class ProductOutboxRelayTest {
+
+   static final Duration LEASE = Duration.ofSeconds(30);
+
+   @Autowired
+   ProductService service;
+
+   @Autowired
+   ProductRepository repository;
+
+   @Autowired
+   ProductOutbox outbox;
+
+   @Autowired
+   InMemoryProductEventSink sink;
+
+   @Autowired
+   PlatformTransactionManager transactionManager;
+
+   @Autowired
+   JdbcTemplate jdbcTemplate;
+
+   @AfterEach
+   void tearDown() {
+      jdbcTemplate.update("DELETE FROM product_outbox");
+      jdbcTemplate.update("UPDATE product_outbox_relay SET owner = NULL, lease_until = NULL");
+      repository.deleteAll();
+      sink.clear();
+   }
+
+   @Test
+   @DisplayName("Should publish the events of every product change in the order they were committed")
+   void relayPublishesEventsInOrderTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      Long id = service.register(product).getId();
+      service.update(id, ProductDTO.builder().name("Refrigerante light").build(), null);
+      service.addStorage(id, 5);
+      service.delete(repository.findById(id).orElseThrow());
+
+      ProductOutboxRelay relay = new ProductOutboxRelay(outbox, sink, transactionManager, new SimpleMeterRegistry(), 3, LEASE);
+
+      // execution
+      relay.drain();
+
+      // validation
+      assertThat(sink.events()).extracting(ProductEvent::type).containsExactly(
+              ProductEvent.Type.CREATED,
+              ProductEvent.Type.UPDATED,
+              ProductEvent.Type.STOCK_CHANGED,
+              ProductEvent.Type.DELETED
+      );
+      assertThat(sink.events()).extracting(ProductEvent::productId).containsOnly(id);
+      assertThat(sink.events()).extracting(ProductEvent::sequence).isSorted();
+      assertThat(sink.events().get(1).payload()).contains("\"name\":\"Refrigerante light\"", "\"version\":1");
+      assertThat(outbox.oldestPending()).isEmpty();
+   }
+
+   @Test
+   @DisplayName("Should keep the events in the outbox while the sink fails")
+   void relayKeepsEventsWhenSinkFailsTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      service.register(product);
+
+      ProductOutboxRelay failing = new ProductOutboxRelay(outbox, events -> {
+         throw new IllegalStateException("broker down");
+      }, transactionManager, new SimpleMeterRegistry(), 10, LEASE);
+      ProductOutboxRelay working = new ProductOutboxRelay(outbox, sink, transactionManager, new SimpleMeterRegistry(), 10, LEASE);
+
+      // execution
+      failing.drain();
+      int pendingAfterFailure = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM product_outbox", Integer.class);
+      int published = working.relayBatch();
+
+      // validation
+      assertThat(pendingAfterFailure).isEqualTo(1);
+      assertThat(published).isEqualTo(1);
+      assertThat(sink.events()).extracting(ProductEvent::type).containsExactly(ProductEvent.Type.CREATED);
+   }
+
+   @Test
+   @DisplayName("Should publish outside of any transaction and leave the outbox to the lease holder")
+   void relayLeaseTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      service.register(product);
+
+      List<Boolean> publishedInTransaction = new ArrayList<>();
+      ProductOutboxRelay relay = new ProductOutboxRelay(outbox, events -> {
+         publishedInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+         sink.publish(events);
+      }, transactionManager, new SimpleMeterRegistry(), 10, LEASE);
+      outbox.claimRelay("other-node", Instant.now().plus(LEASE));
+
+      // execution
+      int whileLeased = relay.relayBatch();
+      outbox.releaseRelay("other-node");
+      int afterRelease = relay.relayBatch();
+
+      // validation
+      assertThat(whileLeased).isZero();
+      assertThat(afterRelease).isEqualTo(1);
+      assertThat(publishedInTransaction).containsExactly(false);
+      assertThat(outbox.oldestPending()).isEmpty();
+      assertThat(outbox.claimRelay("other-node", Instant.now().plus(LEASE))).isTrue();
+   }
+
+   @Test
+   @DisplayName("Should not record an event for a change that was rolled back")
+   void rolledBackChangeHasNoEventTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      Long id = service.register(product).getId();
+      jdbcTemplate.update("DELETE FROM product_outbox");
+
+      // execution
+      Throwable exception = catchThrowable(() -> service.update(id, ProductDTO.builder().name("Suco").build(), 7L));
+
+      // validation
+      assertThat(exception).isInstanceOf(StaleVersionException.class);
+      assertThat(outbox.oldestPending()).isEmpty();
+   }
+
+}
@@ -0,0 +1,34 @@
+package github.com.itstoony.product.product.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the SQL Hibernate sends, so the tests can EXPLAIN the statements the repositories really
+ * issue. Registered through hibernate.session_factory.statement_inspector.
+ */
+public class CapturedStatements implements StatementInspector {
+
+   public static final String PROPERTY = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+           + "github.com.itstoony.product.product.repository.CapturedStatements";
+
+   private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+   @Override
+   public String inspect(String sql) {
+      STATEMENTS.add(sql);
+      return sql;
+   }
+
+   /**
+    * Runs the call and returns the first statement it sent.
+    */
+   static String firstOf(Runnable call) {
+      STATEMENTS.clear();
+      call.run();
+      return STATEMENTS.get(0);
+   }
+
+}
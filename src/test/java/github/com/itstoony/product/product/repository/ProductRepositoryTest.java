@@ -1,7 +1,10 @@
 package github.com.itstoony.product.product.repository;
 
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.StockMovementDTO;
 import github.com.itstoony.product.model.Product.Product;
 import github.com.itstoony.product.repository.ProductRepository;
+import org.hibernate.Session;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,13 +13,20 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
 import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
 import static org.assertj.core.api.Assertions.assertThat;
 
-@DataJpaTest
+@DataJpaTest(properties = CapturedStatements.PROPERTY)
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 class ProductRepositoryTest {
@@ -27,6 +37,9 @@ class ProductRepositoryTest {
    @Autowired
    ProductRepository repository;
 
+   @Autowired
+   JdbcTemplate jdbcTemplate;
+
    @Test
    @DisplayName("Should return a page of products filtering by name")
    void findByNameTest() {
@@ -51,4 +64,192 @@ class ProductRepositoryTest {
 
    }
 
+   @Test
+   @DisplayName("Should return a page of product projections without managing entities")
+   void findDTOsByNameTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      entityManager.persistAndFlush(product);
+      entityManager.clear();
+
+      // execution
+      Page<ProductDTO> result = repository.findDTOsByName("Refrigeran", PageRequest.of(0, 10));
+
+      // validation
+      assertThat(result.getTotalElements()).isEqualTo(1);
+      assertThat(result.getContent()).hasSize(1);
+
+      ProductDTO dto = result.getContent().get(0);
+      assertThat(dto.getId()).isEqualTo(product.getId());
+      assertThat(dto.getName()).isEqualTo(product.getName());
+      assertThat(dto.getQuantity()).isEqualTo(product.getQuantity());
+      assertThat(dto.getVersion()).isEqualTo(product.getVersion());
+      assertThat(entityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+   }
+
+   @Test
+   @DisplayName("Should stream every product ordered by id")
+   void streamAllTest() {
+      // scenery
+      Product first = createValidProduct();
+      first.setId(null);
+      Product second = createValidProduct();
+      second.setId(null);
+      entityManager.persist(first);
+      entityManager.persistAndFlush(second);
+      entityManager.clear();
+
+      // execution
+      List<Long> ids;
+      try (Stream<Product> products = repository.streamAll()) {
+         ids = products.map(Product::getId).toList();
+      }
+
+      // validation
+      assertThat(ids).containsExactly(first.getId(), second.getId());
+   }
+
+   @Test
+   @DisplayName("Should bump the version and update timestamp when changing the quantity in bulk")
+   void increaseQuantityTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      entityManager.persistAndFlush(product);
+      entityManager.clear();
+
+      Instant created = product.getUpdatedAt();
+
+      // execution
+      int updated = repository.increaseQuantity(product.getId(), 5);
+
+      // validation
+      Product result = repository.findById(product.getId()).orElseThrow();
+      assertThat(updated).isEqualTo(1);
+      assertThat(created).isNotNull();
+      assertThat(result.getVersion()).isEqualTo(product.getVersion() + 1);
+      assertThat(result.getUpdatedAt()).isAfterOrEqualTo(created);
+   }
+
+   @Test
+   @DisplayName("Should leave the quantity alone when adding would overflow it")
+   void increaseQuantityOverflowTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      product.setQuantity(Integer.MAX_VALUE - 3);
+      entityManager.persistAndFlush(product);
+      entityManager.clear();
+
+      // execution
+      int overflowing = repository.increaseQuantity(product.getId(), 4);
+      int fitting = repository.increaseQuantity(product.getId(), 3);
+
+      // validation
+      assertThat(overflowing).isZero();
+      assertThat(fitting).isEqualTo(1);
+      assertThat(repository.findQuantityById(product.getId())).contains(Integer.MAX_VALUE);
+   }
+
+   @Test
+   @DisplayName("Should apply batched quantity adjustments only when stock is sufficient")
+   void adjustQuantitiesTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      entityManager.persistAndFlush(product);
+      entityManager.clear();
+
+      Long id = product.getId();
+      List<StockMovementDTO> movements = List.of(
+              new StockMovementDTO(id, 5),
+              new StockMovementDTO(id, -30),
+              new StockMovementDTO(id, -25),
+              new StockMovementDTO(999L, 1)
+      );
+
+      // execution
+      int[] result = repository.adjustQuantities(movements);
+
+      // validation
+      assertThat(result).containsExactly(1, 0, 1, 0);
+      assertThat(repository.findQuantityById(id)).contains(0);
+   }
+
+   @Test
+   @DisplayName("Should insert products in a batch returning their generated ids")
+   void insertAllTest() {
+      // scenery
+      Product first = createValidProduct();
+      first.setId(null);
+      Product second = createValidProduct();
+      second.setId(null);
+      second.setName("Suco");
+
+      // execution
+      List<Long> ids = repository.insertAll(List.of(first, second));
+
+      // validation
+      assertThat(ids).hasSize(2).doesNotContainNull();
+      assertThat(repository.findById(ids.get(1))).get().extracting(Product::getName).isEqualTo("Suco");
+   }
+
+   @Test
+   @DisplayName("Should seek past the last seen name and id ordering by both")
+   void findByNameAfterTest() {
+      // scenery
+      List<String> names = List.of("Refrigerante B", "Refrigerante A", "Refrigerante B", "Suco", "Refrigerante C");
+      names.forEach(name -> {
+         Product product = createValidProduct();
+         product.setId(null);
+         product.setName(name);
+         entityManager.persist(product);
+      });
+
+      // execution
+      List<Product> firstSlice = repository.findFirstSliceByName("refri", Pageable.ofSize(2));
+      Product last = firstSlice.get(1);
+      List<Product> secondSlice = repository.findByNameAfter("refri", last.getName(), last.getId(), Pageable.ofSize(2));
+
+      // validation
+      assertThat(firstSlice).extracting(Product::getName).containsExactly("Refrigerante A", "Refrigerante B");
+      assertThat(secondSlice).extracting(Product::getName).containsExactly("Refrigerante B", "Refrigerante C");
+      assertThat(secondSlice.get(0).getId()).isGreaterThan(last.getId());
+      assertThat(repository.countByName("refri")).isEqualTo(4);
+   }
+
+   @Test
+   @DisplayName("Should read list pages and counts from the covering name index alone")
+   void listQueriesUseCoveringIndexTest() {
+      // execution
+      String page = explain(() -> repository.findDTOsByName("refri", PageRequest.of(0, 20)), "refri", 0, 20);
+      String sortedPage = explain(() -> repository.findDTOsByName("refri", PageRequest.of(0, 20, Sort.by("name", "id"))), "refri", 0, 20);
+      String count = explain(() -> repository.countByName("refri"), "refri");
+
+      // validation
+      assertThat(page).contains("IX_PRODUCT_NAME_LIST").doesNotContain("tableScan");
+      assertThat(sortedPage).contains("IX_PRODUCT_NAME_LIST").contains("index sorted");
+      assertThat(count).contains("IX_PRODUCT_NAME_LIST").doesNotContain("tableScan");
+   }
+
+   @Test
+   @DisplayName("Should read cursor slices in name index order without sorting")
+   void cursorQueriesUseIndexOrderTest() {
+      // execution
+      String firstSlice = explain(() -> repository.findFirstSliceByName("refri", Pageable.ofSize(21)), "refri", 0, 21);
+      String nextSlice = explain(() -> repository.findByNameAfter("refri", "A", 1L, Pageable.ofSize(21)), "refri", "A", "A", 1L, 0, 21);
+
+      // validation
+      assertThat(firstSlice).contains("IX_PRODUCT_NAME_LIST").contains("index sorted");
+      assertThat(nextSlice).contains("IX_PRODUCT_NAME_LIST").contains("index sorted");
+   }
+
+   /**
+    * EXPLAINs the first statement the repository call sends, bound to the passed arguments.
+    */
+   private String explain(Runnable call, Object... args) {
+      return jdbcTemplate.queryForObject("EXPLAIN " + CapturedStatements.firstOf(call), String.class, args);
+   }
+
 }
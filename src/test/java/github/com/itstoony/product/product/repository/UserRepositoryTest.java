@@ -0,0 +1,66 @@
+package github.com.itstoony.product.product.repository;
+
+import github.com.itstoony.product.model.Product.User;
+import github.com.itstoony.product.repository.UserRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@DataJpaTest(properties = CapturedStatements.PROPERTY)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class UserRepositoryTest {
+
+   @Autowired
+   UserRepository repository;
+
+   @Autowired
+   JdbcTemplate jdbcTemplate;
+
+   @Test
+   @DisplayName("Should find a user by login through the unique login index")
+   void findByLoginTest() {
+      // scenery
+      repository.saveAndFlush(User.builder().login("tony").password("hash").build());
+
+      // execution
+      String findPlan = explain(() -> repository.findByLogin("tony"), "tony");
+      String existsPlan = explain(() -> repository.existsByLogin("tony"), "tony", 1);
+
+      // validation
+      assertThat(repository.findByLogin("tony").getUsername()).isEqualTo("tony");
+      assertThat(findPlan).contains("UX_USERS_LOGIN: LOGIN = ");
+      assertThat(existsPlan).contains("UX_USERS_LOGIN: LOGIN = ");
+   }
+
+   @Test
+   @DisplayName("Should reject a second user with the same login")
+   void duplicateLoginTest() {
+      // scenery
+      repository.saveAndFlush(User.builder().login("tony").password("hash").build());
+      assertThat(repository.existsByLogin("tony")).isTrue();
+
+      // execution
+      Throwable exception = catchThrowable(() -> repository.saveAndFlush(User.builder().login("tony").password("other").build()));
+
+      // validation
+      assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+   }
+
+   /**
+    * EXPLAINs the first statement the repository call sends, bound to the passed arguments.
+    */
+   private String explain(Runnable call, Object... args) {
+      return jdbcTemplate.queryForObject("EXPLAIN " + CapturedStatements.firstOf(call), String.class, args);
+   }
+
+}
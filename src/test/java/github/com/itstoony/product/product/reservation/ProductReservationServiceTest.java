@@ -0,0 +1,212 @@
+package github.com.itstoony.product.product.reservation;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.dto.StockMovementResultDTO;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductBatchRepository.ProductStock;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.reservation.ProductReservationService;
+import github.com.itstoony.product.reservation.ProductReservationStore;
+import github.com.itstoony.product.reservation.Reservation;
+import github.com.itstoony.product.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@SpringBootTest(properties = "product.outbox.relay.enabled=false")
+@ActiveProfiles("test")
+class ProductReservationServiceTest {
+
+   @Autowired
+   ProductReservationService reservationService;
+
+   @Autowired
+   ProductReservationStore store;
+
+   @Autowired
+   ProductService productService;
+
+   @Autowired
+   ProductRepository repository;
+
+   @Autowired
+   PlatformTransactionManager transactionManager;
+
+   @Autowired
+   JdbcTemplate jdbcTemplate;
+
+   Long productId;
+
+   @BeforeEach
+   void setUp() {
+      Product product = createValidProduct();
+      product.setId(null);
+      product.setQuantity(10);
+      productId = productService.register(product).getId();
+   }
+
+   @AfterEach
+   void tearDown() {
+      jdbcTemplate.update("DELETE FROM product_reservation");
+      jdbcTemplate.update("DELETE FROM product_outbox");
+      repository.deleteAll();
+   }
+
+   @Test
+   @DisplayName("Should hold units without writing the product row and refuse holds beyond the available quantity")
+   void reserveTest() {
+      // execution
+      Reservation reservation = reservationService.reserve(productId, 7, Duration.ofMinutes(1)).orElseThrow();
+      Throwable exception = catchThrowable(() -> reservationService.reserve(productId, 4, null));
+
+      // validation
+      assertThat(reservation.quantity()).isEqualTo(7);
+      assertThat(repository.findQuantityById(productId)).contains(10);
+      assertThat(repository.findAvailableQuantityById(productId)).contains(3);
+      assertThat(repository.findById(productId)).map(Product::getVersion).contains(0L);
+      assertThat(store.findAll()).containsExactly(reservation);
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's available quantity is less than passed quantity");
+   }
+
+   @Test
+   @DisplayName("Should take the reserved units out of the product's quantity on confirmation")
+   void confirmTest() {
+      // scenery
+      Reservation reservation = reservationService.reserve(productId, 3, null).orElseThrow();
+
+      // execution
+      Optional<Product> product = reservationService.confirm(reservation.id());
+
+      // validation
+      assertThat(product).map(Product::getQuantity).contains(7);
+      assertThat(repository.findQuantityById(productId)).contains(7);
+      assertThat(repository.findAvailableQuantityById(productId)).contains(7);
+      assertThat(productService.findById(productId)).map(Product::getQuantity).contains(7);
+      assertThat(store.findAll()).isEmpty();
+      assertThat(reservationService.confirm(reservation.id())).isEmpty();
+   }
+
+   @Test
+   @DisplayName("Should free the held units when a reservation is released or expires")
+   void releaseAndExpireTest() {
+      // scenery
+      Reservation released = reservationService.reserve(productId, 4, Duration.ofMinutes(10)).orElseThrow();
+      Reservation expiring = reservationService.reserve(productId, 5, Duration.ofSeconds(1)).orElseThrow();
+
+      // execution
+      boolean releasedFirst = reservationService.release(released.id());
+      reservationService.expireDue(expiring.expiresAt().plusSeconds(1));
+
+      // validation
+      assertThat(releasedFirst).isTrue();
+      assertThat(reservationService.release(released.id())).isFalse();
+      assertThat(reservationService.findById(expiring.id())).isEmpty();
+      assertThat(store.findAll()).isEmpty();
+      assertThat(repository.findQuantityById(productId)).contains(10);
+      assertThat(repository.findAvailableQuantityById(productId)).contains(10);
+   }
+
+   @Test
+   @DisplayName("Should keep held units out of every other stock removal")
+   void heldUnitsTest() {
+      // scenery
+      Reservation reservation = reservationService.reserve(productId, 8, null).orElseThrow();
+
+      // execution
+      Throwable removal = catchThrowable(() -> productService.removeStorage(productId, 3));
+      List<StockMovementResultDTO> movements = productService.applyStockMovements(List.of(
+              new StockMovementDTO(productId, -3), new StockMovementDTO(productId, 5)));
+      Throwable update = catchThrowable(() -> productService.update(productId,
+              ProductDTO.builder().quantity(7).build(), null));
+      Optional<Product> removed = productService.removeStorage(productId, 2);
+      Optional<Product> confirmed = reservationService.confirm(reservation.id());
+
+      // validation
+      assertThat(removal)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's current quantity is less than passed quantity");
+      assertThat(movements).extracting(StockMovementResultDTO::status)
+              .containsExactly(StockMovementResultDTO.Status.REJECTED, StockMovementResultDTO.Status.APPLIED);
+      assertThat(update)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's quantity can't be lower than its reserved quantity");
+      assertThat(removed).map(Product::getQuantity).contains(13);
+      assertThat(confirmed).map(Product::getQuantity).contains(5);
+      assertThat(productService.findStock(productId)).map(ProductStock::held).contains(0);
+   }
+
+   @Test
+   @DisplayName("Should confirm, release and find the holds taken on another node")
+   void otherNodeTest() {
+      // scenery
+      Reservation confirmed = reservationService.reserve(productId, 2, null).orElseThrow();
+      Reservation released = reservationService.reserve(productId, 3, null).orElseThrow();
+      ProductReservationService otherNode = newNode();
+
+      // execution
+      Optional<Reservation> found = otherNode.findById(confirmed.id());
+      Optional<Product> product = otherNode.confirm(confirmed.id());
+      boolean release = otherNode.release(released.id());
+
+      // validation
+      try {
+         assertThat(found).contains(confirmed);
+         assertThat(product).map(Product::getQuantity).contains(8);
+         assertThat(release).isTrue();
+         assertThat(reservationService.findById(confirmed.id())).isEmpty();
+         assertThat(reservationService.confirm(confirmed.id())).isEmpty();
+         assertThat(reservationService.release(released.id())).isFalse();
+         assertThat(repository.findAvailableQuantityById(productId)).contains(8);
+      } finally {
+         otherNode.destroy();
+      }
+   }
+
+   @Test
+   @DisplayName("Should stop counting expired holds right away and let any node sweep them")
+   void sweepTest() {
+      // scenery
+      Reservation active = store.insert(productId, 2, Instant.now().plus(Duration.ofMinutes(5)));
+      store.insert(productId, 6, Instant.now().minus(Duration.ofMinutes(5)));
+      ProductReservationService otherNode = newNode();
+
+      // execution
+      Optional<Integer> availableBeforeSweep = repository.findAvailableQuantityById(productId);
+      otherNode.sweepExpired(Instant.now());
+
+      // validation
+      try {
+         assertThat(availableBeforeSweep).contains(8);
+         assertThat(repository.findAvailableQuantityById(productId)).contains(8);
+         assertThat(store.findAll()).containsExactly(active);
+      } finally {
+         otherNode.destroy();
+      }
+   }
+
+   private ProductReservationService newNode() {
+      return new ProductReservationService(productService, store, transactionManager, new SimpleMeterRegistry(),
+              Duration.ofMinutes(5), Duration.ofMinutes(30), Duration.ofMillis(100), 64, Duration.ofMinutes(1));
+   }
+
+}
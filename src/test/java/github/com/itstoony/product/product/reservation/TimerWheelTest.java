@@ -0,0 +1,65 @@
+package github.com.itstoony.product.product.reservation;
+
+import github.com.itstoony.product.reservation.TimerWheel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimerWheelTest {
+
+   static final Instant START = Instant.parse("2023-03-01T10:00:00Z");
+
+   @Test
+   @DisplayName("Should fire timers on the first tick at or after their deadline")
+   void advanceFiresDueTimersTest() {
+      // scenery
+      TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(100), 8, START);
+      wheel.schedule("first", START.plusMillis(250));
+      wheel.schedule("second", START.plusMillis(300));
+      wheel.schedule("third", START.plusSeconds(5));
+
+      // execution / validation
+      assertThat(wheel.advance(START.plusMillis(250))).isEmpty();
+      assertThat(wheel.advance(START.plusMillis(300))).containsExactlyInAnyOrder("first", "second");
+      assertThat(wheel.size()).isEqualTo(1);
+      assertThat(wheel.advance(START.plusMillis(4900))).isEmpty();
+      assertThat(wheel.advance(START.plusSeconds(5))).containsExactly("third");
+      assertThat(wheel.size()).isZero();
+   }
+
+   @Test
+   @DisplayName("Should keep timers further than one turn away until their own turn")
+   void timersBeyondOneTurnTest() {
+      // scenery
+      TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(100), 4, START);
+      wheel.schedule("same bucket, next turn", START.plusMillis(500));
+      wheel.schedule("same bucket, this turn", START.plusMillis(100));
+
+      // execution / validation
+      assertThat(wheel.advance(START.plusMillis(100))).containsExactly("same bucket, this turn");
+      assertThat(wheel.advance(START.plusMillis(400))).isEmpty();
+      assertThat(wheel.advance(START.plusMillis(500))).containsExactly("same bucket, next turn");
+   }
+
+   @Test
+   @DisplayName("Should catch up on every due timer after lagging more than one turn")
+   void advanceAfterLongPauseTest() {
+      // scenery
+      TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(100), 4, START);
+      wheel.schedule("past", START.minusSeconds(1));
+      wheel.schedule("due", START.plusMillis(700));
+      wheel.schedule("later", START.plusSeconds(60));
+
+      // execution
+      var expired = wheel.advance(START.plusSeconds(10));
+
+      // validation
+      assertThat(expired).containsExactlyInAnyOrder("past", "due");
+      assertThat(wheel.size()).isEqualTo(1);
+   }
+
+}
@@ -0,0 +1,80 @@
+package github.com.itstoony.product.product.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductEvent;
+import github.com.itstoony.product.search.ProductSearchIndex;
+import github.com.itstoony.product.search.ProductSearchIndexFeed;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class ProductSearchIndexFeedTest {
+
+   ProductSearchIndex searchIndex;
+
+   ObjectMapper objectMapper;
+
+   ProductSearchIndexFeed feed;
+
+   @BeforeEach
+   void setUp() {
+      this.searchIndex = Mockito.mock(ProductSearchIndex.class);
+      this.objectMapper = new ObjectMapper().findAndRegisterModules();
+      this.feed = new ProductSearchIndexFeed(searchIndex, objectMapper, new ProductMapper());
+   }
+
+   @Test
+   @DisplayName("Should index products created or updated on other nodes")
+   void indexUpdatedProductTest() throws Exception {
+      // scenery
+      ProductDTO product = new ProductDTO(7L, "Suco de uva", "Integral 1L", BigDecimal.TEN, 3, 2L);
+
+      // execution
+      feed.onEvent(event(ProductEvent.Type.UPDATED, objectMapper.writeValueAsString(product)));
+
+      // validation
+      ArgumentCaptor<Product> indexed = ArgumentCaptor.forClass(Product.class);
+      verify(searchIndex).index(indexed.capture());
+      assertThat(indexed.getValue().getId()).isEqualTo(7L);
+      assertThat(indexed.getValue().getName()).isEqualTo("Suco de uva");
+      assertThat(indexed.getValue().getDescription()).isEqualTo("Integral 1L");
+   }
+
+   @Test
+   @DisplayName("Should remove products deleted on other nodes")
+   void removeDeletedProductTest() throws Exception {
+      // execution
+      feed.onEvent(event(ProductEvent.Type.DELETED, "{}"));
+
+      // validation
+      verify(searchIndex).remove(7L);
+   }
+
+   @Test
+   @DisplayName("Should leave the index alone for stock changes and unreadable events")
+   void skipTest() throws Exception {
+      // execution
+      feed.onEvent(event(ProductEvent.Type.STOCK_CHANGED, "{}"));
+      feed.onEvent("not json");
+
+      // validation
+      verifyNoInteractions(searchIndex);
+   }
+
+   private String event(ProductEvent.Type type, String payload) throws Exception {
+      return objectMapper.writeValueAsString(new ProductEvent(1, 7L, type, Instant.EPOCH, payload));
+   }
+
+}
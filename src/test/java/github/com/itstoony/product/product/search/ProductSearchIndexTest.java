@@ -0,0 +1,174 @@
+package github.com.itstoony.product.product.search;
+
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.search.ProductSearchIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class ProductSearchIndexTest {
+
+   ProductSearchIndex index;
+
+   @MockBean
+   ProductRepository repository;
+
+   @BeforeEach
+   void setUp() {
+      when( repository.findAll(any(Pageable.class)) ).thenReturn(Page.empty());
+      this.index = new ProductSearchIndex(repository, "lucene", "");
+      this.index.rebuild();
+      this.index.index(List.of(
+              product(1L, "Refrigerante", "Guaraná 2L"),
+              product(2L, "Suco de laranja", "Refrigerado 1L"),
+              product(3L, "Água mineral", "Garrafa 500ml")
+      ));
+   }
+
+   @AfterEach
+   void tearDown() throws IOException {
+      index.close();
+   }
+
+   @Test
+   @DisplayName("Should match token prefixes ranking name matches first")
+   void searchByPrefixTest() {
+      // execution
+      Optional<ProductSearchIndex.SearchHits> hits = index.search("refri", PageRequest.of(0, 10));
+
+      // validation
+      assertThat(hits).isPresent();
+      assertThat(hits.get().ids()).containsExactly(1L, 2L);
+      assertThat(hits.get().totalHits()).isEqualTo(2);
+   }
+
+   @Test
+   @DisplayName("Should ignore accents and case and require every token")
+   void searchEveryTokenTest() {
+      // execution
+      Optional<ProductSearchIndex.SearchHits> hits = index.search("AGUA min", PageRequest.of(0, 10));
+
+      // validation
+      assertThat(hits).isPresent();
+      assertThat(hits.get().ids()).containsExactly(3L);
+   }
+
+   @Test
+   @DisplayName("Should page through the hits")
+   void searchPageTest() {
+      // execution
+      Optional<ProductSearchIndex.SearchHits> hits = index.search("refri", PageRequest.of(1, 1));
+
+      // validation
+      assertThat(hits).isPresent();
+      assertThat(hits.get().ids()).containsExactly(2L);
+      assertThat(hits.get().totalHits()).isEqualTo(2);
+   }
+
+   @Test
+   @DisplayName("Should not find removed or updated products by their old text")
+   void removeAndUpdateTest() {
+      // execution
+      index.remove(1L);
+      index.index(product(2L, "Suco de uva", "Integral 1L"));
+
+      // validation
+      assertThat(index.search("refri", PageRequest.of(0, 10)).get().ids()).isEmpty();
+      assertThat(index.search("uva", PageRequest.of(0, 10)).get().ids()).containsExactly(2L);
+   }
+
+   @Test
+   @DisplayName("Should only apply changes made inside a transaction once it commits")
+   void transactionalChangesTest() {
+      // scenery
+      TransactionSynchronizationManager.initSynchronization();
+      index.index(product(4L, "Suco de uva", "Integral 1L"));
+      index.remove(1L);
+
+      // execution
+      List<Long> beforeCommit = index.search("uva", PageRequest.of(0, 10)).get().ids();
+      TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+      TransactionSynchronizationManager.clearSynchronization();
+
+      TransactionSynchronizationManager.initSynchronization();
+      index.index(product(5L, "Suco de caju", "Integral 1L"));
+      TransactionSynchronizationManager.clearSynchronization();
+
+      // validation
+      assertThat(beforeCommit).isEmpty();
+      assertThat(index.search("uva", PageRequest.of(0, 10)).get().ids()).containsExactly(4L);
+      assertThat(index.search("refri", PageRequest.of(0, 10)).get().ids()).containsExactly(2L);
+      assertThat(index.search("caju", PageRequest.of(0, 10)).get().ids()).isEmpty();
+   }
+
+   @Test
+   @DisplayName("Should return empty so callers fall back to the LIKE query")
+   void fallbackTest() throws IOException {
+      // scenery
+      ProductSearchIndex likeIndex = new ProductSearchIndex(repository, "like", "");
+
+      // execution
+      Optional<ProductSearchIndex.SearchHits> disabledHits = likeIndex.search("refri", PageRequest.of(0, 10));
+      Optional<ProductSearchIndex.SearchHits> blankHits = index.search("  ", PageRequest.of(0, 10));
+
+      // validation
+      assertThat(disabledHits).isNotPresent();
+      assertThat(blankHits).isNotPresent();
+      likeIndex.close();
+   }
+
+   @Test
+   @DisplayName("Should return empty until the index is rebuilt so callers fall back to the LIKE query")
+   void notReadyTest() throws IOException {
+      // scenery
+      ProductSearchIndex starting = new ProductSearchIndex(repository, "lucene", "");
+      starting.index(product(1L, "Refrigerante", "Guaraná 2L"));
+
+      // execution
+      Optional<ProductSearchIndex.SearchHits> beforeRebuild = starting.search("refri", PageRequest.of(0, 10));
+      when( repository.findAll(any(Pageable.class)) ).thenReturn(new PageImpl<>(
+              List.of(product(1L, "Refrigerante", "Guaraná 2L"))));
+      starting.rebuild();
+      Optional<ProductSearchIndex.SearchHits> afterRebuild = starting.search("refri", PageRequest.of(0, 10));
+
+      // validation
+      assertThat(beforeRebuild).isNotPresent();
+      assertThat(afterRebuild).isPresent();
+      assertThat(afterRebuild.get().ids()).containsExactly(1L);
+      starting.close();
+   }
+
+   private Product product(Long id, String name, String description) {
+      return Product.builder()
+              .id(id)
+              .name(name)
+              .description(description)
+              .productValue(BigDecimal.ONE)
+              .quantity(1)
+              .build();
+   }
+
+}
@@ -0,0 +1,117 @@
+package github.com.itstoony.product.product.security;
+
+import github.com.itstoony.product.exception.ServiceOverloadedException;
+import github.com.itstoony.product.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class BoundedPasswordEncoderTest {
+
+   SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+   BoundedPasswordEncoder encoder;
+
+   CountDownLatch release = new CountDownLatch(1);
+
+   @AfterEach
+   void tearDown() {
+      release.countDown();
+      encoder.destroy();
+   }
+
+   @Test
+   @DisplayName("Should hash and verify passwords on the pool recording their latency")
+   void encodeAndMatchTest() {
+      // scenery
+      encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), 1, 1, Duration.ofSeconds(5), registry);
+
+      // execution
+      String hash = encoder.encode("secret");
+
+      // validation
+      assertThat(encoder.matches("secret", hash)).isTrue();
+      assertThat(encoder.matches("wrong", hash)).isFalse();
+      assertThat(registry.get("password.hash").tag("operation", "encode").timer().count()).isEqualTo(1);
+      assertThat(registry.get("password.hash").tag("operation", "matches").timer().count()).isEqualTo(2);
+   }
+
+   @Test
+   @DisplayName("Should reject hashing once the pool and its queue are full")
+   void rejectWhenSaturatedTest() throws Exception {
+      // scenery
+      CountDownLatch started = new CountDownLatch(1);
+      encoder = new BoundedPasswordEncoder(blocking(started), 1, 1, Duration.ofSeconds(5), registry);
+
+      CompletableFuture.runAsync(() -> encoder.encode("running"));
+      assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+      CompletableFuture.runAsync(() -> encoder.encode("queued"));
+      waitForQueueDepth(1);
+
+      // execution
+      Throwable exception = catchThrowable(() -> encoder.encode("rejected"));
+
+      // validation
+      assertThat(exception).isInstanceOf(ServiceOverloadedException.class);
+      assertThat(registry.get("password.hash.rejected").counter().count()).isEqualTo(1);
+   }
+
+   @Test
+   @DisplayName("Should give up on a hash that waits longer than the timeout")
+   void timeoutTest() throws Exception {
+      // scenery
+      CountDownLatch started = new CountDownLatch(1);
+      encoder = new BoundedPasswordEncoder(blocking(started), 1, 1, Duration.ofMillis(50), registry);
+
+      // execution
+      Throwable exception = catchThrowable(() -> encoder.encode("slow"));
+
+      // validation
+      assertThat(exception).isInstanceOf(ServiceOverloadedException.class);
+      assertThat(registry.get("password.hash.rejected").counter().count()).isEqualTo(1);
+   }
+
+   private PasswordEncoder blocking(CountDownLatch started) {
+      return new PasswordEncoder() {
+         @Override
+         public String encode(CharSequence rawPassword) {
+            started.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException ex) {
+               Thread.currentThread().interrupt();
+            }
+            return rawPassword.toString();
+         }
+
+         @Override
+         public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return rawPassword.toString().equals(encodedPassword);
+         }
+      };
+   }
+
+   private void waitForQueueDepth(int depth) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (registry.get("password.hash.queue").gauge().value() < depth && System.nanoTime() < deadline) {
+         Thread.sleep(10);
+      }
+   }
+
+}
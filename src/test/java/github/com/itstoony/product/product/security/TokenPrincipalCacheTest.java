@@ -0,0 +1,130 @@
+package github.com.itstoony.product.product.security;
+
+import github.com.itstoony.product.model.Product.User;
+import github.com.itstoony.product.security.TokenPrincipalCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class TokenPrincipalCacheTest {
+
+   TokenPrincipalCache cache;
+
+   AtomicInteger loads;
+
+   @BeforeEach
+   void setUp() {
+      this.cache = new TokenPrincipalCache(100);
+      this.loads = new AtomicInteger();
+   }
+
+   @Test
+   @DisplayName("Should verify a token only once while it's valid")
+   void cacheHitTest() {
+      // scenery
+      User user = User.builder().login("tony").build();
+      Instant expiresAt = Instant.now().plus(1, ChronoUnit.HOURS);
+
+      // execution
+      UserDetails first = cache.get("token", () -> load(user, expiresAt));
+      UserDetails second = cache.get("token", () -> load(user, expiresAt));
+
+      // validation
+      assertThat(first).isSameAs(user);
+      assertThat(second).isSameAs(user);
+      assertThat(loads.get()).isEqualTo(1);
+   }
+
+   @Test
+   @DisplayName("Should not cache expired tokens nor unknown users")
+   void noCacheTest() {
+      // scenery
+      User user = User.builder().login("tony").build();
+      Instant expired = Instant.now().minus(1, ChronoUnit.MINUTES);
+
+      // execution
+      cache.get("expired", () -> load(user, expired));
+      cache.get("expired", () -> load(user, expired));
+      UserDetails unknown = cache.get("unknown", () -> load(null, Instant.now().plus(1, ChronoUnit.HOURS)));
+
+      // validation
+      assertThat(unknown).isNull();
+      assertThat(loads.get()).isEqualTo(3);
+   }
+
+   @Test
+   @DisplayName("Should evict every token of a user")
+   void evictUserTest() {
+      // scenery
+      User user = User.builder().login("tony").build();
+      Instant expiresAt = Instant.now().plus(1, ChronoUnit.HOURS);
+      cache.get("first", () -> load(user, expiresAt));
+      cache.get("second", () -> load(user, expiresAt));
+
+      // execution
+      cache.evictUser("tony");
+      cache.get("first", () -> load(user, expiresAt));
+
+      // validation
+      assertThat(loads.get()).isEqualTo(3);
+   }
+
+   @Test
+   @DisplayName("Should share the principals put by callers resolving misses themselves")
+   void putTest() {
+      // scenery
+      User user = User.builder().login("tony").build();
+      Instant expiresAt = Instant.now().plus(1, ChronoUnit.HOURS);
+
+      // execution
+      UserDetails miss = cache.getIfPresent("token");
+      cache.put("token", new TokenPrincipalCache.VerifiedPrincipal(user, expiresAt));
+      cache.put("unknown", new TokenPrincipalCache.VerifiedPrincipal(null, expiresAt));
+
+      // validation
+      assertThat(miss).isNull();
+      assertThat(cache.getIfPresent("token")).isSameAs(user);
+      assertThat(cache.get("token", () -> load(user, expiresAt))).isSameAs(user);
+      assertThat(cache.getIfPresent("unknown")).isNull();
+      assertThat(loads.get()).isZero();
+   }
+
+   @Test
+   @DisplayName("Should expose hit and miss metrics")
+   void metricsTest() {
+      // scenery
+      SimpleMeterRegistry registry = new SimpleMeterRegistry();
+      cache.bindTo(registry);
+      User user = User.builder().login("tony").build();
+      Instant expiresAt = Instant.now().plus(1, ChronoUnit.HOURS);
+
+      // execution
+      cache.get("token", () -> load(user, expiresAt));
+      cache.get("token", () -> load(user, expiresAt));
+
+      // validation
+      assertThat(registry.get("cache.gets").tag("cache", "jwt.principals").tag("result", "hit").functionCounter().count())
+              .isEqualTo(1);
+      assertThat(registry.get("cache.gets").tag("cache", "jwt.principals").tag("result", "miss").functionCounter().count())
+              .isEqualTo(1);
+   }
+
+   private TokenPrincipalCache.VerifiedPrincipal load(User user, Instant expiresAt) {
+      loads.incrementAndGet();
+      return new TokenPrincipalCache.VerifiedPrincipal(user, expiresAt);
+   }
+
+}
@@ -0,0 +1,144 @@
+package github.com.itstoony.product.product.service;
+
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.service.ProductService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ProductCacheTest {
+
+   @Autowired
+   ProductService service;
+
+   @SpyBean
+   ProductRepository repository;
+
+   @Autowired
+   CacheManager cacheManager;
+
+   @Autowired
+   MeterRegistry meterRegistry;
+
+   @Autowired
+   JdbcTemplate jdbcTemplate;
+
+   @AfterEach
+   void tearDown() {
+      repository.deleteAll();
+      cacheManager.getCache("products").clear();
+   }
+
+   @Test
+   @DisplayName("Should serve repeated lookups from the cache")
+   void findByIdCachedTest() {
+      // scenery
+      Long id = registerProduct();
+
+      // execution
+      service.findById(id);
+      service.findById(id);
+
+      // validation
+      verify(repository, never()).findById(id);
+   }
+
+   @Test
+   @DisplayName("Should refresh the cached product when its storage changes")
+   void storageRefreshesCacheTest() {
+      // scenery
+      Long id = registerProduct();
+
+      // execution
+      service.addStorage(id, 5);
+      clearInvocations(repository);
+      Product cached = service.findById(id).orElseThrow();
+
+      // validation
+      assertThat(cached.getQuantity()).isEqualTo(25);
+      verify(repository, never()).findById(id);
+   }
+
+   @Test
+   @DisplayName("Should evict products moved by a batch and forget deleted products")
+   void batchAndDeleteEvictCacheTest() {
+      // scenery
+      Long id = registerProduct();
+
+      // execution
+      service.applyStockMovements(List.of(new StockMovementDTO(id, -5)));
+      clearInvocations(repository);
+      Product reloaded = service.findById(id).orElseThrow();
+      service.delete(reloaded);
+
+      // validation
+      assertThat(reloaded.getQuantity()).isEqualTo(15);
+      assertThat(service.findById(id)).isNotPresent();
+      verify(repository, times(3)).findById(id);
+   }
+
+   @Test
+   @DisplayName("Should delete a product whose cached copy is behind the row's version")
+   void deleteStaleCachedProductTest() {
+      // scenery
+      Long id = registerProduct();
+      Product cached = service.findById(id).orElseThrow();
+      // another node's write, not seen by this node's cache
+      jdbcTemplate.update("UPDATE product SET quantity = quantity + 5, version = version + 1 WHERE id = ?", id);
+
+      // execution
+      service.delete(cached);
+
+      // validation
+      assertThat(repository.findById(id)).isNotPresent();
+      assertThat(service.findById(id)).isNotPresent();
+   }
+
+   @Test
+   @DisplayName("Should publish hit and miss metrics of the product cache")
+   void cacheMetricsTest() {
+      // scenery
+      Long id = registerProduct();
+      cacheManager.getCache("products").evict(id);
+
+      // execution
+      service.findById(id);
+      service.findById(id);
+
+      // validation
+      assertThat(meterRegistry.get("cache.gets").tag("cache", "products").tag("result", "hit").functionCounter().count())
+              .isPositive();
+      assertThat(meterRegistry.get("cache.gets").tag("cache", "products").tag("result", "miss").functionCounter().count())
+              .isPositive();
+      assertThat(meterRegistry.find("cache.evictions").tag("cache", "products").functionCounter()).isNotNull();
+   }
+
+   private Long registerProduct() {
+      Product product = createValidProduct();
+      product.setId(null);
+      Long id = service.register(product).getId();
+      clearInvocations(repository);
+      return id;
+   }
+
+}
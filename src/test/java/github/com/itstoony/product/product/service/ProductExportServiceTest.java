@@ -0,0 +1,98 @@
+package github.com.itstoony.product.product.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.com.itstoony.product.mapper.ProductMapper;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.service.ProductExportService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class ProductExportServiceTest {
+
+   ProductExportService service;
+
+   @MockBean
+   ProductRepository repository;
+
+   EntityManager entityManager;
+
+   @BeforeEach
+   void setUp() {
+      this.entityManager = mock(EntityManager.class);
+      this.service = new ProductExportService(
+              repository,
+              entityManager,
+              mock(PlatformTransactionManager.class),
+              new ObjectMapper(),
+              new ProductMapper(),
+              2
+      );
+   }
+
+   @Test
+   @DisplayName("Should write one JSON product per line clearing the persistence context periodically")
+   void exportTest() throws Exception {
+      // scenery
+      when(repository.streamAll()).thenReturn(Stream.of(product(1L), product(2L), product(3L)));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      // execution
+      long exported = service.exportProducts(out);
+
+      // validation
+      String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+
+      assertThat(exported).isEqualTo(3);
+      assertThat(lines).hasSize(4);
+      assertThat(lines[0]).startsWith("{\"id\":1,").contains("\"name\":\"Refrigerante\"");
+      assertThat(lines[1]).startsWith("{\"id\":2,");
+      assertThat(lines[2]).startsWith("{\"id\":3,");
+      assertThat(lines[3]).isEmpty();
+      verify(entityManager, times(1)).clear();
+   }
+
+   @Test
+   @DisplayName("Should write nothing for an empty catalog")
+   void exportEmptyTest() throws Exception {
+      // scenery
+      when(repository.streamAll()).thenReturn(Stream.empty());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      // execution
+      long exported = service.exportProducts(out);
+
+      // validation
+      assertThat(exported).isZero();
+      assertThat(out.size()).isZero();
+      verify(entityManager, never()).clear();
+   }
+
+   private Product product(Long id) {
+      Product product = createValidProduct();
+      product.setId(id);
+      return product;
+   }
+
+}
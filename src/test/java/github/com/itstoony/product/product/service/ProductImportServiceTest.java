@@ -0,0 +1,162 @@
+package github.com.itstoony.product.product.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import github.com.itstoony.product.dto.ProductImportReportDTO;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductOutbox;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.search.ProductSearchIndex;
+import github.com.itstoony.product.service.ProductImportService;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class ProductImportServiceTest {
+
+   ProductImportService service;
+
+   @MockBean
+   ProductRepository repository;
+
+   @MockBean
+   ProductSearchIndex searchIndex;
+
+   @BeforeEach
+   void setUp() {
+      this.service = new ProductImportService(
+              repository,
+              searchIndex,
+              mock(ProductOutbox.class),
+              mock(PlatformTransactionManager.class),
+              new ObjectMapper(),
+              Validation.buildDefaultValidatorFactory().getValidator(),
+              2
+      );
+   }
+
+   @Test
+   @DisplayName("Should import a JSON array in fixed-size batches reporting rejected rows")
+   void importJsonTest() {
+      // scenery
+      String json = """
+              [
+                {"name": "Refrigerante", "description": "Guaraná 2L", "productValue": 10.0, "quantity": 20},
+                {"name": "", "description": "Sem nome", "productValue": 1.0, "quantity": 1},
+                {"name": "Suco", "description": "Laranja 1L", "productValue": 7.5, "quantity": 10},
+                {"name": "Água", "description": "Mineral 500ml", "productValue": 2.0, "quantity": 100}
+              ]
+              """;
+
+      // execution
+      ProductImportReportDTO report = service.importProducts(toStream(json), MediaType.APPLICATION_JSON);
+
+      // validation
+      assertThat(report.imported()).isEqualTo(3);
+      assertThat(report.rejected()).isEqualTo(1);
+      assertThat(report.rejectedRows()).containsExactly(2L);
+
+      @SuppressWarnings("unchecked")
+      ArgumentCaptor<List<Product>> captor = ArgumentCaptor.forClass(List.class);
+      verify(repository, times(2)).insertAll(captor.capture());
+      assertThat(captor.getAllValues().get(0)).extracting(Product::getName).containsExactly("Refrigerante", "Suco");
+      assertThat(captor.getAllValues().get(1)).extracting(Product::getName).containsExactly("Água");
+   }
+
+   @Test
+   @DisplayName("Should import a CSV body with a header row")
+   void importCsvTest() {
+      // scenery
+      String csv = """
+              name,description,productValue,quantity
+              Refrigerante,Guaraná 2L,10.0,20
+              Suco,,7.5,10
+              """;
+
+      // execution
+      ProductImportReportDTO report = service.importProducts(toStream(csv), MediaType.parseMediaType("text/csv"));
+
+      // validation
+      assertThat(report.imported()).isEqualTo(1);
+      assertThat(report.rejectedRows()).containsExactly(2L);
+      verify(repository, times(1)).insertAll(anyList());
+   }
+
+   @Test
+   @DisplayName("Should reject unreadable records and keep importing the following ones")
+   void importUnreadableRecordsTest() {
+      // scenery
+      String json = """
+              [
+                {"name": "Refrigerante", "description": "Guaraná 2L", "productValue": 10.0, "quantity": "vinte"},
+                {"name": "Suco", "description": "Laranja 1L", "productValue": 7.5, "quantity": 10},
+                {"name": "Água", "description": {"tipo": "Mineral"}, "productValue": 2.0, "quantity": 100},
+                {"name": "Café", "description": "Torrado 500g", "productValue": 15.0, "quantity": 5}
+              ]
+              """;
+      String csv = """
+              name,description,productValue,quantity
+              Refrigerante,Guaraná 2L,10.0,vinte
+              Suco,Laranja 1L,7.5,10,extra
+              Água,Mineral 500ml,2.0,100
+              """;
+
+      // execution
+      ProductImportReportDTO jsonReport = service.importProducts(toStream(json), MediaType.APPLICATION_JSON);
+      ProductImportReportDTO csvReport = service.importProducts(toStream(csv), MediaType.parseMediaType("text/csv"));
+
+      // validation
+      assertThat(jsonReport.imported()).isEqualTo(2);
+      assertThat(jsonReport.rejectedRows()).containsExactly(1L, 3L);
+      assertThat(csvReport.imported()).isEqualTo(1);
+      assertThat(csvReport.rejectedRows()).containsExactly(1L, 2L);
+
+      @SuppressWarnings("unchecked")
+      ArgumentCaptor<List<Product>> captor = ArgumentCaptor.forClass(List.class);
+      verify(repository, times(2)).insertAll(captor.capture());
+      assertThat(captor.getAllValues().get(0)).extracting(Product::getName).containsExactly("Suco", "Café");
+      assertThat(captor.getAllValues().get(1)).extracting(Product::getName).containsExactly("Água");
+   }
+
+   @Test
+   @DisplayName("Should throw BusinessException when the payload is malformed")
+   void importMalformedPayloadTest() {
+      // scenery
+      String json = "[{\"name\": \"Refrigerante\", ";
+
+      // execution
+      Throwable exception = catchThrowable(() -> service.importProducts(toStream(json), MediaType.APPLICATION_JSON));
+
+      // validation
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessageStartingWith("Malformed import payload");
+   }
+
+   private InputStream toStream(String content) {
+      return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+   }
+
+}
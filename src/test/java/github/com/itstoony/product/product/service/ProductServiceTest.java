@@ -1,11 +1,20 @@
 package github.com.itstoony.product.product.service;
 
+import github.com.itstoony.product.config.CacheConfig;
+import github.com.itstoony.product.dto.ProductCursor;
 import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.dto.StockMovementDTO;
+import github.com.itstoony.product.dto.StockMovementResultDTO;
 import github.com.itstoony.product.service.ProductService;
 import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.exception.StaleVersionException;
 import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductEvent;
+import github.com.itstoony.product.outbox.ProductOutbox;
 
 import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.search.ProductSearchIndex;
+import github.com.itstoony.product.stream.ProductStockBroadcaster;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -13,18 +22,28 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static github.com.itstoony.product.product.utils.Utils.createValidProductDTO;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.Mockito.*;
@@ -38,9 +57,22 @@ class ProductServiceTest {
    @MockBean
    ProductRepository repository;
 
+   @MockBean
+   ProductSearchIndex searchIndex;
+
+   @MockBean
+   ProductOutbox outbox;
+
+   @MockBean
+   ProductStockBroadcaster stockBroadcaster;
+
+   ConcurrentMapCacheManager cacheManager;
+
    @BeforeEach
    void setUp() {
-      this.service = new ProductService(repository);
+      this.cacheManager = new ConcurrentMapCacheManager(CacheConfig.PRODUCTS);
+      this.service = new ProductService(repository, searchIndex, cacheManager, outbox, stockBroadcaster,
+              mock(PlatformTransactionManager.class), 3, Duration.ZERO, 2);
    }
 
    @Test
@@ -59,6 +91,7 @@ class ProductServiceTest {
       assertThat(savedProduct.getName()).isEqualTo(product.getName());
       assertThat(savedProduct.getQuantity()).isEqualTo(product.getQuantity());
       assertThat(savedProduct.getDescription()).isEqualTo(product.getDescription());
+      verify(outbox, times(1)).append(ProductEvent.Type.CREATED, product);
    }
 
    @Test
@@ -73,15 +106,104 @@ class ProductServiceTest {
               .productValue(new BigDecimal("9.0"))
               .build();
 
+      when( repository.findById(1L) ).thenReturn(Optional.of(product));
+      when( repository.save(product) ).thenReturn(product);
+
       // execution
-      Product updatedProduct = service.update(product, dto);
+      Product updatedProduct = service.update(1L, dto, null).orElseThrow();
 
       // validation
       assertThat( updatedProduct.getId() ).isEqualTo(product.getId());
-      assertThat( updatedProduct.getName() ).isEqualTo(product.getName());
-      assertThat( updatedProduct.getQuantity() ).isEqualTo(product.getQuantity());
-      assertThat( updatedProduct.getDescription() ).isEqualTo(product.getDescription());
+      assertThat( updatedProduct.getName() ).isEqualTo("Refrigerante light");
+      assertThat( updatedProduct.getQuantity() ).isEqualTo(15);
+      assertThat( updatedProduct.getDescription() ).isEqualTo("Convenção Guaraná 2L");
+      verify(outbox, times(1)).append(ProductEvent.Type.UPDATED, product);
+      verify(stockBroadcaster, times(1)).publish(product);
+   }
+
+   @Test
+   @DisplayName("Should return empty when updating an unknown product")
+   void updateUnknownProductTest() {
+      // scenery
+      when( repository.findById(1L) ).thenReturn(Optional.empty());
+
+      // execution
+      Optional<Product> result = service.update(1L, createValidProductDTO(), null);
+
+      // validation
+      assertThat(result).isEmpty();
+      verify(repository, never()).save(any(Product.class));
+   }
+
+   @Test
+   @DisplayName("Should retry an update that lost against a concurrent write on a fresh copy")
+   void updateRetriesOnOptimisticLockTest() {
+      // scenery
+      Product stale = createValidProduct();
+      stale.setVersion(1L);
+      Product fresh = createValidProduct();
+      fresh.setVersion(2L);
+
+      when( repository.findById(1L) ).thenReturn(Optional.of(stale), Optional.of(fresh));
+      when( repository.save(stale) ).thenThrow(new ObjectOptimisticLockingFailureException(Product.class, 1L));
+      when( repository.save(fresh) ).thenReturn(fresh);
 
+      // execution
+      Product updatedProduct = service.update(1L, ProductDTO.builder().quantity(5).build(), null).orElseThrow();
+
+      // validation
+      assertThat(updatedProduct).isSameAs(fresh);
+      assertThat(updatedProduct.getQuantity()).isEqualTo(5);
+      verify(repository, times(2)).findById(1L);
+      verify(searchIndex).index(fresh);
+   }
+
+   @Test
+   @DisplayName("Should give up after the maximum number of update attempts")
+   void updateGivesUpTest() {
+      // scenery
+      when( repository.findById(1L) ).thenAnswer(invocation -> Optional.of(createValidProduct()));
+      when( repository.save(any(Product.class)) ).thenThrow(new ObjectOptimisticLockingFailureException(Product.class, 1L));
+
+      // execution
+      Throwable exception = catchThrowable(() -> service.update(1L, createValidProductDTO(), null));
+
+      // validation
+      assertThat(exception).isInstanceOf(OptimisticLockingFailureException.class);
+      verify(repository, times(3)).save(any(Product.class));
+   }
+
+   @Test
+   @DisplayName("Should reject an update expecting an outdated version")
+   void updateWithStaleVersionTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setVersion(3L);
+      when( repository.findById(1L) ).thenReturn(Optional.of(product));
+
+      // execution
+      Throwable exception = catchThrowable(() -> service.update(1L, createValidProductDTO(), 2L));
+
+      // validation
+      assertThat(exception).isInstanceOf(StaleVersionException.class);
+      verify(repository, never()).save(any(Product.class));
+   }
+
+   @Test
+   @DisplayName("Should not retry a conditional update that lost against a concurrent write")
+   void conditionalUpdateIsNotRetriedTest() {
+      // scenery
+      Product product = createValidProduct();
+      product.setVersion(2L);
+      when( repository.findById(1L) ).thenReturn(Optional.of(product));
+      when( repository.save(product) ).thenThrow(new ObjectOptimisticLockingFailureException(Product.class, 1L));
+
+      // execution
+      Throwable exception = catchThrowable(() -> service.update(1L, createValidProductDTO(), 2L));
+
+      // validation
+      assertThat(exception).isInstanceOf(StaleVersionException.class);
+      verify(repository, times(1)).save(product);
    }
 
    @Test
@@ -126,11 +248,14 @@ class ProductServiceTest {
       Product product = createValidProduct();
       product.setId(1L);
 
+      when(repository.findById(1L)).thenReturn(Optional.of(product));
+
       // execution
       service.delete(product);
 
       // validation
       verify(repository, Mockito.times(1)).delete(product);
+      verify(searchIndex, Mockito.times(1)).remove(product.getId());
 
    }
 
@@ -158,18 +283,18 @@ class ProductServiceTest {
    @DisplayName("Should return a page of products filtering by it's name")
    void findAllTest() {
       // scenery
-      Product product = createValidProduct();
+      ProductDTO product = createValidProductDTO();
       product.setId(1L);
 
       String name = "Refrigerante";
       PageRequest pageable = PageRequest.of(0, 10);
-      PageImpl<Product> page = new PageImpl<>(Collections.singletonList(product), pageable, 1);
+      PageImpl<ProductDTO> page = new PageImpl<>(Collections.singletonList(product), pageable, 1);
 
-      when( repository.findByName(Mockito.any(String.class), Mockito.any(Pageable.class)) )
+      when( repository.findDTOsByName(Mockito.any(String.class), Mockito.any(Pageable.class)) )
               .thenReturn(page);
 
       // execution
-      Page<Product> result = service.listAll(name, pageable);
+      Page<ProductDTO> result = service.listAll(name, pageable);
 
       // validation
       assertThat(result.getTotalElements()).isEqualTo(1);
@@ -180,96 +305,323 @@ class ProductServiceTest {
    }
 
 
+   @Test
+   @DisplayName("Should return a page of products ordered by search relevance")
+   void findAllBySearchIndexTest() {
+      // scenery
+      ProductDTO first = createValidProductDTO();
+      first.setId(1L);
+      ProductDTO second = createValidProductDTO();
+      second.setId(2L);
+
+      PageRequest pageable = PageRequest.of(0, 10);
+
+      when( searchIndex.search("refri", pageable) )
+              .thenReturn(Optional.of(new ProductSearchIndex.SearchHits(List.of(2L, 1L), 2)));
+      when( repository.findDTOsByIdIn(List.of(2L, 1L)) ).thenReturn(List.of(first, second));
+
+      // execution
+      Page<ProductDTO> result = service.listAll("refri", pageable);
+
+      // validation
+      assertThat(result.getTotalElements()).isEqualTo(2);
+      assertThat(result.getContent()).containsExactly(second, first);
+      verify(repository, never()).findDTOsByName(anyString(), any(Pageable.class));
+      verify(repository, never()).findAllById(anyList());
+   }
+
+   @Test
+   @DisplayName("Should list through the database query when a sort is requested")
+   void findAllSortedTest() {
+      // scenery
+      PageRequest pageable = PageRequest.of(0, 10, Sort.by("productValue").descending());
+      PageImpl<ProductDTO> page = new PageImpl<>(List.of(createValidProductDTO()), pageable, 1);
+
+      when( repository.findDTOsByName("refri", pageable) ).thenReturn(page);
+
+      // execution
+      Page<ProductDTO> result = service.listAll("refri", pageable);
+
+      // validation
+      assertThat(result).isSameAs(page);
+      verifyNoInteractions(searchIndex);
+   }
+
+   @Test
+   @DisplayName("Should not query the database when the search has no hits on the page")
+   void findAllBySearchIndexWithoutHitsTest() {
+      // scenery
+      PageRequest pageable = PageRequest.of(3, 10);
+
+      when( searchIndex.search("refri", pageable) )
+              .thenReturn(Optional.of(new ProductSearchIndex.SearchHits(List.of(), 2)));
+
+      // execution
+      Page<ProductDTO> result = service.listAll("refri", pageable);
+
+      // validation
+      assertThat(result.getContent()).isEmpty();
+      assertThat(result.getTotalElements()).isEqualTo(2);
+      verifyNoInteractions(repository);
+   }
+
+   @Test
+   @DisplayName("Should index a registered product")
+   void registerIndexesProductTest() {
+      // scenery
+      Product product = createValidProduct();
+      when(repository.save(product)).thenReturn(product);
+
+      // execution
+      service.register(product);
+
+      // validation
+      verify(searchIndex, times(1)).index(product);
+   }
+
+   @Test
+   @DisplayName("Should return a slice after the passed cursor reading one extra row")
+   void listAfterTest() {
+      // scenery
+      Product first = createValidProduct();
+      Product second = createValidProduct();
+      second.setId(2L);
+      ProductCursor cursor = new ProductCursor("Refri", 10L);
+
+      when( repository.findByNameAfter("refri", "Refri", 10L, Pageable.ofSize(2)) ).thenReturn(List.of(first, second));
+
+      // execution
+      Slice<Product> result = service.listAfter("refri", cursor, 1);
+
+      // validation
+      assertThat(result.getContent()).containsExactly(first);
+      assertThat(result.hasNext()).isTrue();
+      verify(repository, never()).countByName(anyString());
+   }
+
    @Test
    @DisplayName("Should add quantity to a product")
    void addStorageTest() {
       // scenery
-      Product updatingProduct = createValidProduct();
+      Product updatedProduct = createValidProduct();
+      long id = updatedProduct.getId();
+      int quantity = 5;
+
+      when(repository.increaseQuantity(id, quantity)).thenReturn(1);
+      when(repository.findById(id)).thenReturn(Optional.of(updatedProduct));
+
+      // execution
+      Optional<Product> result = service.addStorage(id, quantity);
+
+      // validation
+      assertThat(result).isPresent();
+      assertThat(result.get().getId()).isEqualTo(id);
+      assertThat(result.get().getQuantity()).isEqualTo(updatedProduct.getQuantity());
+
+      verify(repository, times(1)).increaseQuantity(id, quantity);
+      verify(repository, never()).save(any(Product.class));
+      verify(stockBroadcaster, times(1)).publish(updatedProduct);
+
+   }
+
+   @Test
+   @DisplayName("Should return empty optional when adding quantity to an invalid id")
+   void addStorageInvalidIdTest() {
+      // scenery
+      long id = 1L;
       int quantity = 5;
 
-      when(repository.save(updatingProduct)).thenReturn(updatingProduct);
+      when(repository.increaseQuantity(id, quantity)).thenReturn(0);
 
       // execution
-      Product updatedProduct = service.addStorage(updatingProduct, quantity);
+      Optional<Product> result = service.addStorage(id, quantity);
 
       // validation
-      assertThat(updatedProduct.getId()).isEqualTo(updatingProduct.getId());
-      assertThat(updatedProduct.getQuantity()).isEqualTo(updatingProduct.getQuantity());
+      assertThat(result).isNotPresent();
+      verify(repository, never()).findById(id);
+   }
 
-      verify(repository, times(1)).save(any(Product.class));
+   @Test
+   @DisplayName("Should throw BusinessException when adding quantity would overflow the product's quantity")
+   void addStorageOverflowTest() {
+      // scenery
+      long id = 1L;
+      int quantity = 5;
+
+      when(repository.increaseQuantity(id, quantity)).thenReturn(0);
+      when(repository.findQuantityById(id)).thenReturn(Optional.of(Integer.MAX_VALUE));
+
+      // execution
+      Throwable exception = catchThrowable(() -> service.addStorage(id, quantity));
 
+      // validation
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's quantity can't go beyond " + Integer.MAX_VALUE);
    }
 
    @Test
    @DisplayName("Should throw BusinessException when passed quantity is equal or less then 0")
    void addQuantityLessThanZeroTest() {
       // scenery
-      Product product = createValidProduct();
+      long id = 1L;
       int quantity = -2;
 
       // execution
-      Throwable exception = catchThrowable(() -> service.addStorage(product, quantity));
+      Throwable exception = catchThrowable(() -> service.addStorage(id, quantity));
 
       // validation
       assertThat(exception)
               .isInstanceOf(BusinessException.class)
               .hasMessage("Passed quantity should be equal or higher than 1");
 
-      verify(repository, never()).save(any(Product.class));
+      verify(repository, never()).increaseQuantity(anyLong(), anyInt());
    }
 
    @Test
    @DisplayName("Should remove quantity from a product")
    void removeStorage() {
       // scenery
-      Product updatingProduct = createValidProduct();
+      Product updatedProduct = createValidProduct();
+      long id = updatedProduct.getId();
       int quantity = 5;
 
-      when(repository.save(updatingProduct)).thenReturn(updatingProduct);
+      when(repository.decreaseQuantity(id, quantity)).thenReturn(1);
+      when(repository.findById(id)).thenReturn(Optional.of(updatedProduct));
 
       // execution
-      Product updatedProduct = service.addStorage(updatingProduct, quantity);
+      Optional<Product> result = service.removeStorage(id, quantity);
 
       // validation
-      assertThat(updatedProduct.getId()).isEqualTo(updatingProduct.getId());
-      assertThat(updatedProduct.getQuantity()).isEqualTo(updatingProduct.getQuantity());
+      assertThat(result).isPresent();
+      assertThat(result.get().getId()).isEqualTo(id);
+      assertThat(result.get().getQuantity()).isEqualTo(updatedProduct.getQuantity());
 
-      verify(repository, times(1)).save(any(Product.class));
+      verify(repository, times(1)).decreaseQuantity(id, quantity);
+      verify(repository, never()).save(any(Product.class));
    }
 
    @Test
    @DisplayName("Should throw BusinessException when passed quantity is equal or less then 0")
    void removeQuantityLessThanZeroTest() {
       // scenery
-      Product product = createValidProduct();
+      long id = 1L;
       int quantity = -2;
 
       // execution
-      Throwable exception = catchThrowable(() -> service.addStorage(product, quantity));
+      Throwable exception = catchThrowable(() -> service.removeStorage(id, quantity));
 
       // validation
       assertThat(exception)
               .isInstanceOf(BusinessException.class)
               .hasMessage("Passed quantity should be equal or higher than 1");
 
-      verify(repository, never()).save(any(Product.class));
+      verify(repository, never()).decreaseQuantity(anyLong(), anyInt());
    }
 
    @Test
    @DisplayName("Should throw BusinessException when passed quantity is higher than products current quantity")
    void removeQuantityHigherThanProductsCurrentQuantityTest() {
       // scenery
-      Product product = createValidProduct();
-      int quantity = -2;
+      long id = 1L;
+      int quantity = 50;
+
+      when(repository.decreaseQuantity(id, quantity)).thenReturn(0);
+      when(repository.findQuantityById(id)).thenReturn(Optional.of(20));
 
       // execution
-      Throwable exception = catchThrowable(() -> service.addStorage(product, quantity));
+      Throwable exception = catchThrowable(() -> service.removeStorage(id, quantity));
 
       // validation
       assertThat(exception)
               .isInstanceOf(BusinessException.class)
-              .hasMessage("Passed quantity should be equal or higher than 1");
+              .hasMessage("Product's current quantity is less than passed quantity");
+   }
 
-      verify(repository, never()).save(any(Product.class));
+   @Test
+   @DisplayName("Should return empty optional when removing quantity from an invalid id")
+   void removeStorageInvalidIdTest() {
+      // scenery
+      long id = 1L;
+      int quantity = 5;
+
+      when(repository.decreaseQuantity(id, quantity)).thenReturn(0);
+      when(repository.findQuantityById(id)).thenReturn(Optional.empty());
+
+      // execution
+      Optional<Product> result = service.removeStorage(id, quantity);
+
+      // validation
+      assertThat(result).isNotPresent();
+   }
+
+   @Test
+   @DisplayName("Should look up many products serving cache hits and loading misses in chunks")
+   void findAllByIdTest() {
+      // scenery
+      Product first = createValidProduct();
+      Product cached = createValidProduct();
+      cached.setId(2L);
+      Product third = createValidProduct();
+      third.setId(3L);
+      Product fourth = createValidProduct();
+      fourth.setId(4L);
+
+      cacheManager.getCache(CacheConfig.PRODUCTS).put(2L, cached);
+
+      BDDMockito.given( repository.findAllById(List.of(4L, 1L)) ).willReturn(List.of(first, fourth));
+      BDDMockito.given( repository.findAllById(List.of(3L, 9L)) ).willReturn(List.of(third));
+
+      // execution
+      Map<Long, Product> result = service.findAllById(List.of(4L, 2L, 1L, 3L, 4L, 9L));
+
+      // validation
+      assertThat(result.keySet()).containsExactly(4L, 2L, 1L, 3L);
+      assertThat(result.get(2L)).isSameAs(cached);
+      verify(repository, times(2)).findAllById(anyList());
+      assertThat(cacheManager.getCache(CacheConfig.PRODUCTS).get(3L, Product.class)).isSameAs(third);
+   }
+
+   @Test
+   @DisplayName("Should apply a batch of stock movements reporting each item's result in request order")
+   void applyStockMovementsTest() {
+      // scenery
+      Product first = createValidProduct();
+      Product second = createValidProduct();
+      second.setId(2L);
+      second.setQuantity(3);
+
+      List<StockMovementDTO> movements = List.of(
+              new StockMovementDTO(2L, -5),
+              new StockMovementDTO(1L, 10),
+              new StockMovementDTO(1L, 0),
+              new StockMovementDTO(3L, 1)
+      );
+
+      when(repository.adjustQuantities(anyList())).thenReturn(new int[]{1, 0, 0});
+      when(repository.findAllById(anyList())).thenReturn(List.of(first, second));
+
+      // execution
+      List<StockMovementResultDTO> results = service.applyStockMovements(movements);
+
+      // validation
+      assertThat(results).extracting(StockMovementResultDTO::id).containsExactly(2L, 1L, 1L, 3L);
+      assertThat(results).extracting(StockMovementResultDTO::status).containsExactly(
+              StockMovementResultDTO.Status.REJECTED,
+              StockMovementResultDTO.Status.APPLIED,
+              StockMovementResultDTO.Status.REJECTED,
+              StockMovementResultDTO.Status.REJECTED
+      );
+      assertThat(results.get(0).message()).isEqualTo("Product's current quantity is less than passed quantity");
+      assertThat(results.get(1).quantity()).isEqualTo(first.getQuantity());
+      assertThat(results.get(2).message()).isEqualTo("Passed quantity should be equal or higher than 1");
+      assertThat(results.get(3).message()).isEqualTo("Product not found");
+
+      verify(repository, times(1)).adjustQuantities(List.of(
+              new StockMovementDTO(1L, 10),
+              new StockMovementDTO(2L, -5),
+              new StockMovementDTO(3L, 1)
+      ));
+      verify(outbox, times(1)).appendAll(ProductEvent.Type.STOCK_CHANGED, List.of(first));
    }
 }
@@ -0,0 +1,171 @@
+package github.com.itstoony.product.product.service;
+
+import github.com.itstoony.product.dto.ProductDTO;
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ProductStorageConcurrencyTest {
+
+   static final int THREADS = 16;
+
+   static final int CALLS_PER_THREAD = 50;
+
+   static final int UPDATE_CALLS_PER_THREAD = 10;
+
+   @Autowired
+   ProductService service;
+
+   @Autowired
+   ProductRepository repository;
+
+   @AfterEach
+   void tearDown() {
+      repository.deleteAll();
+   }
+
+   @Test
+   @DisplayName("Should not lose updates when many threads add and remove storage of the same product")
+   void concurrentAddAndRemoveStorageTest() throws Exception {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      product.setQuantity(1000);
+      Long id = repository.save(product).getId();
+
+      // execution
+      runConcurrently(index -> {
+         if (index % 2 == 0) {
+            service.addStorage(id, 3);
+         } else {
+            service.removeStorage(id, 1);
+         }
+      });
+
+      // validation
+      int adds = THREADS / 2 * CALLS_PER_THREAD;
+      int removes = THREADS / 2 * CALLS_PER_THREAD;
+      assertThat(repository.findQuantityById(id)).contains(1000 + adds * 3 - removes);
+   }
+
+   @Test
+   @DisplayName("Should never remove more units than a product holds under concurrent calls")
+   void concurrentRemoveStorageNeverUnderflowsTest() throws Exception {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      product.setQuantity(100);
+      Long id = repository.save(product).getId();
+
+      AtomicInteger succeeded = new AtomicInteger();
+      AtomicInteger rejected = new AtomicInteger();
+
+      // execution
+      runConcurrently(index -> {
+         try {
+            service.removeStorage(id, 1);
+            succeeded.incrementAndGet();
+         } catch (BusinessException ex) {
+            rejected.incrementAndGet();
+         }
+      });
+
+      // validation
+      assertThat(succeeded.get()).isEqualTo(100);
+      assertThat(rejected.get()).isEqualTo(THREADS * CALLS_PER_THREAD - 100);
+      assertThat(repository.findQuantityById(id)).contains(0);
+   }
+
+   @Test
+   @DisplayName("Should not let product updates overwrite concurrent storage changes")
+   void concurrentUpdateAndAddStorageTest() throws Exception {
+      // scenery
+      Product product = createValidProduct();
+      product.setId(null);
+      product.setQuantity(0);
+      Long id = repository.save(product).getId();
+
+      AtomicInteger conflicts = new AtomicInteger();
+      AtomicInteger names = new AtomicInteger();
+
+      // execution
+      runConcurrently(UPDATE_CALLS_PER_THREAD, index -> {
+         if (index % 2 == 0) {
+            service.addStorage(id, 1);
+         } else {
+            try {
+               service.update(id, ProductDTO.builder().name("Refrigerante " + names.incrementAndGet()).build(), null);
+            } catch (OptimisticLockingFailureException ex) {
+               conflicts.incrementAndGet();
+            }
+         }
+      });
+
+      // validation
+      Product updated = repository.findById(id).orElseThrow();
+      int adds = THREADS / 2 * UPDATE_CALLS_PER_THREAD;
+      int updates = THREADS / 2 * UPDATE_CALLS_PER_THREAD - conflicts.get();
+
+      assertThat(updated.getQuantity()).isEqualTo(adds);
+      assertThat(updated.getVersion()).isEqualTo((long) adds + updates);
+   }
+
+   private void runConcurrently(ThreadTask task) throws Exception {
+      runConcurrently(CALLS_PER_THREAD, task);
+   }
+
+   private void runConcurrently(int callsPerThread, ThreadTask task) throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+
+      try {
+         for (int thread = 0; thread < THREADS; thread++) {
+            int index = thread;
+            futures.add(executor.submit(() -> {
+               start.await();
+               for (int call = 0; call < callsPerThread; call++) {
+                  task.run(index);
+               }
+               return null;
+            }));
+         }
+
+         start.countDown();
+
+         for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   @FunctionalInterface
+   interface ThreadTask {
+      void run(int index);
+   }
+
+}
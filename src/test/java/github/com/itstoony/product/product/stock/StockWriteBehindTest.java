@@ -0,0 +1,346 @@
+package github.com.itstoony.product.product.stock;
+
+import github.com.itstoony.product.exception.BusinessException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.outbox.ProductOutbox;
+import github.com.itstoony.product.repository.ProductRepository;
+import github.com.itstoony.product.service.ProductService;
+import github.com.itstoony.product.stock.StockWriteBehind;
+import github.com.itstoony.product.stream.ProductStockBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@SpringBootTest(properties = {
+        "product.outbox.relay.enabled=false",
+        "product.stock.write-behind.enabled=true",
+        "product.stock.write-behind.flush-interval=1h"
+})
+@ActiveProfiles("test")
+class StockWriteBehindTest {
+
+   @TempDir
+   static Path logDirectory;
+
+   @DynamicPropertySource
+   static void logDirectory(DynamicPropertyRegistry registry) {
+      registry.add("product.stock.write-behind.log-directory", () -> logDirectory.resolve("node").toString());
+   }
+
+   @Autowired
+   StockWriteBehind writeBehind;
+
+   @Autowired
+   ProductService productService;
+
+   @Autowired
+   ProductRepository repository;
+
+   @Autowired
+   ProductOutbox outbox;
+
+   @Autowired
+   ProductStockBroadcaster stockBroadcaster;
+
+   @Autowired
+   CacheManager cacheManager;
+
+   @Autowired
+   JdbcTemplate jdbcTemplate;
+
+   @Autowired
+   PlatformTransactionManager transactionManager;
+
+   Long productId;
+
+   @BeforeEach
+   void setUp() {
+      Product product = createValidProduct();
+      product.setId(null);
+      product.setQuantity(10);
+      productId = productService.register(product).getId();
+      jdbcTemplate.update("DELETE FROM product_outbox");
+   }
+
+   @AfterEach
+   void tearDown() {
+      writeBehind.flush();
+      jdbcTemplate.update("DELETE FROM product_reservation");
+      jdbcTemplate.update("DELETE FROM product_outbox");
+      repository.deleteAll();
+   }
+
+   @Test
+   @DisplayName("Should coalesce the accepted deltas of a product into a single update")
+   void coalesceDeltasTest() {
+      // execution
+      writeBehind.addStorage(productId, 5, false);
+      writeBehind.addStorage(productId, 5, false);
+      Product afterLastChange = writeBehind.removeStorage(productId, 4, false).orElseThrow();
+      Integer beforeFlush = repository.findQuantityById(productId).orElseThrow();
+
+      writeBehind.flush();
+
+      // validation
+      assertThat(afterLastChange.getQuantity()).isEqualTo(16);
+      assertThat(beforeFlush).isEqualTo(10);
+      assertThat(repository.findById(productId).orElseThrow())
+              .extracting(Product::getQuantity, Product::getVersion)
+              .containsExactly(16, 1L);
+      assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM product_outbox WHERE type = 'STOCK_CHANGED'", Integer.class))
+              .isEqualTo(1);
+   }
+
+   @Test
+   @DisplayName("Should refuse removing more than the accepted count before it is written")
+   void validateUnderflowTest() {
+      // scenery
+      writeBehind.removeStorage(productId, 8, false);
+
+      // execution
+      Throwable exception = catchThrowable(() -> writeBehind.removeStorage(productId, 3, false));
+
+      // validation
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's current quantity is less than passed quantity");
+   }
+
+   @Test
+   @DisplayName("Should leave the units held by reservations out of the accepted count")
+   void reservedUnitsTest() {
+      // scenery
+      jdbcTemplate.update("INSERT INTO product_reservation (product_id, quantity, expires_at) VALUES (?, 6, ?)",
+              productId, Timestamp.from(Instant.now().plus(Duration.ofMinutes(5))));
+
+      // execution
+      Throwable exception = catchThrowable(() -> writeBehind.removeStorage(productId, 5, false));
+      writeBehind.removeStorage(productId, 4, false);
+      writeBehind.flush();
+
+      // validation
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's current quantity is less than passed quantity");
+      assertThat(repository.findQuantityById(productId)).contains(6);
+      assertThat(repository.findAvailableQuantityById(productId)).contains(0);
+   }
+
+   @Test
+   @DisplayName("Should keep the units of acknowledged removals away from other writers until they are written")
+   void acknowledgedRemovalTest() {
+      // scenery
+      writeBehind.removeStorage(productId, 6, false);
+
+      // execution
+      Throwable exception = catchThrowable(() -> productService.removeStorage(productId, 8));
+      writeBehind.flush();
+      writeBehind.flush();
+      productService.removeStorage(productId, 4);
+
+      // validation
+      assertThat(exception).isInstanceOf(BusinessException.class);
+      assertThat(repository.findQuantityById(productId)).contains(0);
+      assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM product_reservation", Integer.class)).isZero();
+   }
+
+   @Test
+   @DisplayName("Should refuse a removal up front once other writers took the units")
+   void refusedRemovalTest() {
+      // scenery
+      writeBehind.addStorage(productId, 5, false);
+      productService.removeStorage(productId, 8);
+
+      // execution
+      Throwable exception = catchThrowable(() -> writeBehind.removeStorage(productId, 3, false));
+      writeBehind.flush();
+      Product product = writeBehind.removeStorage(productId, 7, false).orElseThrow();
+      writeBehind.flush();
+
+      // validation
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's current quantity is less than passed quantity");
+      assertThat(product.getQuantity()).isZero();
+      assertThat(repository.findQuantityById(productId)).contains(0);
+   }
+
+   @Test
+   @DisplayName("Should accept exactly the available units among concurrent removals")
+   void concurrentRemovalsTest() throws Exception {
+      // scenery
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Callable<Boolean>> removals = Collections.nCopies(40, () -> {
+         try {
+            writeBehind.removeStorage(productId, 1, false);
+            return true;
+         } catch (BusinessException ex) {
+            return false;
+         }
+      });
+
+      // execution
+      long accepted;
+      try {
+         accepted = executor.invokeAll(removals).stream().filter(future -> {
+            try {
+               return future.get();
+            } catch (Exception ex) {
+               throw new IllegalStateException(ex);
+            }
+         }).count();
+      } finally {
+         executor.shutdown();
+      }
+      writeBehind.flush();
+
+      // validation
+      assertThat(accepted).isEqualTo(10);
+      assertThat(repository.findQuantityById(productId)).contains(0);
+   }
+
+   @Test
+   @DisplayName("Should refuse a sync removal the database can't cover")
+   void syncRefusedRemovalTest() {
+      // scenery
+      writeBehind.addStorage(productId, 1, false);
+      productService.removeStorage(productId, 8);
+
+      // execution
+      Throwable exception = catchThrowable(() -> writeBehind.removeStorage(productId, 6, true));
+      writeBehind.flush();
+
+      // validation
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's current quantity is less than passed quantity");
+      assertThat(repository.findQuantityById(productId)).contains(3);
+   }
+
+   @Test
+   @DisplayName("Should refuse additions beyond what the quantity column can hold")
+   void overflowTest() {
+      // execution
+      Throwable exception = catchThrowable(() -> writeBehind.addStorage(productId, Integer.MAX_VALUE, false));
+      writeBehind.flush();
+
+      // validation
+      assertThat(exception)
+              .isInstanceOf(BusinessException.class)
+              .hasMessage("Product's quantity can't go beyond " + Integer.MAX_VALUE);
+      assertThat(repository.findQuantityById(productId)).contains(10);
+   }
+
+   @Test
+   @DisplayName("Should write a sync change before answering")
+   void syncChangeTest() {
+      // execution
+      Product product = writeBehind.removeStorage(productId, 3, true).orElseThrow();
+
+      // validation
+      assertThat(product.getQuantity()).isEqualTo(7);
+      assertThat(repository.findQuantityById(productId)).contains(7);
+   }
+
+   @Test
+   @DisplayName("Should follow quantity changes made outside write-behind once they are flushed")
+   void rebaseOnDatabaseQuantityTest() {
+      // scenery
+      writeBehind.removeStorage(productId, 2, false);
+      productService.addStorage(productId, 20);
+
+      // execution
+      writeBehind.flush();
+      Product product = writeBehind.removeStorage(productId, 25, false).orElseThrow();
+
+      // validation
+      assertThat(product.getQuantity()).isEqualTo(3);
+   }
+
+   @Test
+   @DisplayName("Should replay the logged deltas that never reached the database on startup")
+   void recoveryTest() throws Exception {
+      // scenery
+      Path directory = logDirectory.resolve("recovery");
+      Files.createDirectories(directory);
+      Files.writeString(directory.resolve("stock-deltas-3.log"), productId + " 4\n" + productId + " -1\n" + productId + " 9");
+
+      StockWriteBehind restarted = newInstance(directory, "recovery-test");
+
+      // execution
+      try {
+         restarted.afterSingletonsInstantiated();
+      } finally {
+         restarted.destroy();
+      }
+
+      // validation
+      assertThat(repository.findQuantityById(productId)).contains(13);
+      assertThat(Files.exists(directory.resolve("stock-deltas-3.log"))).isFalse();
+      assertThat(jdbcTemplate.queryForObject(
+              "SELECT epoch FROM stock_write_behind_checkpoint WHERE node = 'recovery-test'", Long.class)).isEqualTo(3L);
+   }
+
+   @Test
+   @DisplayName("Should refuse to start on a node id in use by another instance")
+   void nodeInUseTest() throws Exception {
+      // scenery
+      StockWriteBehind running = newInstance(logDirectory.resolve("node-in-use"), "");
+      StockWriteBehind second = newInstance(logDirectory.resolve("node-in-use"), "");
+
+      // execution
+      Throwable exception;
+      try {
+         running.afterSingletonsInstantiated();
+         exception = catchThrowable(second::afterSingletonsInstantiated);
+      } finally {
+         running.destroy();
+      }
+      StockWriteBehind restarted = newInstance(logDirectory.resolve("node-in-use"), "");
+      try {
+         restarted.afterSingletonsInstantiated();
+      } finally {
+         restarted.destroy();
+      }
+
+      // validation
+      assertThat(exception)
+              .isInstanceOf(IllegalStateException.class)
+              .hasMessageContaining("is in use by another instance");
+      assertThat(restarted.getNode()).isEqualTo(running.getNode()).isNotBlank();
+      assertThat(Files.readString(logDirectory.resolve("node-in-use").resolve("node-id"))).isEqualTo(running.getNode());
+   }
+
+   private StockWriteBehind newInstance(Path directory, String node) {
+      return new StockWriteBehind(productService, repository, outbox, stockBroadcaster, cacheManager, jdbcTemplate,
+              transactionManager, new SimpleMeterRegistry(), true, directory, true, node, Duration.ofSeconds(30), 100,
+              Duration.ofMinutes(10), Duration.ofHours(1), Duration.ofSeconds(2));
+   }
+
+}
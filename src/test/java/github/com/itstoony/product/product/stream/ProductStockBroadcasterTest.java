@@ -0,0 +1,242 @@
+package github.com.itstoony.product.product.stream;
+
+import github.com.itstoony.product.dto.ProductStockDTO;
+import github.com.itstoony.product.exception.ServiceOverloadedException;
+import github.com.itstoony.product.model.Product.Product;
+import github.com.itstoony.product.stream.ProductStockBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static github.com.itstoony.product.product.utils.Utils.createValidProduct;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class ProductStockBroadcasterTest {
+
+   ProductStockBroadcaster broadcaster;
+
+   @BeforeEach
+   void setUp() {
+      broadcaster = new ProductStockBroadcaster(new SimpleMeterRegistry(), 1, 2, Duration.ofMinutes(1), Duration.ofMillis(100), 1, 1000, 100);
+   }
+
+   @AfterEach
+   void tearDown() {
+      broadcaster.destroy();
+   }
+
+   @Test
+   @DisplayName("Should send the snapshot and then every change of the watched products only")
+   void publishToWatchingSubscribersTest() throws Exception {
+      // scenery
+      CapturingEmitter emitter = new CapturingEmitter(null);
+      broadcaster.subscribe(emitter, Set.of(1L), List.of(new ProductStockDTO(1L, 20, 0L)));
+      emitter.awaitEvents(1);
+
+      // execution
+      broadcaster.publish(product(2L, 5, 1L));
+      broadcaster.publish(product(1L, 25, 1L));
+
+      // validation
+      emitter.awaitEvents(2);
+      assertThat(emitter.events).containsExactly(
+              new ProductStockDTO(1L, 20, 0L),
+              new ProductStockDTO(1L, 25, 1L)
+      );
+   }
+
+   @Test
+   @DisplayName("Should only send the latest stock of a product to a slow subscriber")
+   void conflateChangesForSlowSubscriberTest() throws Exception {
+      // scenery
+      CountDownLatch release = new CountDownLatch(1);
+      CapturingEmitter slow = new CapturingEmitter(release);
+      broadcaster.subscribe(slow, Set.of(1L), List.of(new ProductStockDTO(1L, 20, 0L)));
+      assertThat(slow.sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+      // execution
+      for (long version = 1; version <= 5; version++) {
+         broadcaster.publish(product(1L, 20 + (int) version, version));
+      }
+      release.countDown();
+
+      // validation
+      slow.awaitEvents(2);
+      assertThat(slow.events).containsExactly(
+              new ProductStockDTO(1L, 20, 0L),
+              new ProductStockDTO(1L, 25, 5L)
+      );
+   }
+
+   @Test
+   @DisplayName("Should drop a subscriber whose connection failed")
+   void dropFailedSubscriberTest() throws Exception {
+      // scenery
+      SseEmitter broken = new SseEmitter() {
+         @Override
+         public void send(SseEventBuilder builder) throws IOException {
+            throw new IOException("Broken pipe");
+         }
+      };
+      broadcaster.subscribe(broken, Set.of(1L), List.of(new ProductStockDTO(1L, 20, 0L)));
+
+      // execution
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (broadcaster.subscriberCount() > 0 && System.nanoTime() < deadline) {
+         Thread.sleep(10);
+      }
+
+      // validation
+      assertThat(broadcaster.subscriberCount()).isZero();
+   }
+
+   @Test
+   @DisplayName("Should drop a subscriber whose send stays blocked and keep serving the others")
+   void dropStalledSubscriberTest() throws Exception {
+      // scenery
+      CountDownLatch release = new CountDownLatch(1);
+      CapturingEmitter stalled = new CapturingEmitter(release);
+      CapturingEmitter healthy = new CapturingEmitter(null);
+      broadcaster.subscribe(stalled, Set.of(1L), List.of(new ProductStockDTO(1L, 20, 0L)));
+      assertThat(stalled.sending.await(5, TimeUnit.SECONDS)).isTrue();
+      broadcaster.subscribe(healthy, Set.of(1L), List.of(new ProductStockDTO(1L, 20, 0L)));
+      Thread.sleep(150);
+
+      // execution
+      broadcaster.dropStalledSubscribers();
+      healthy.awaitEvents(1);
+      broadcaster.publish(product(1L, 25, 1L));
+
+      // validation
+      healthy.awaitEvents(2);
+      assertThat(healthy.events).containsExactly(
+              new ProductStockDTO(1L, 20, 0L),
+              new ProductStockDTO(1L, 25, 1L)
+      );
+      assertThat(broadcaster.subscriberCount()).isEqualTo(1);
+      release.countDown();
+   }
+
+   @Test
+   @DisplayName("Should refuse subscribers beyond the configured maximum")
+   void maxSubscribersTest() {
+      // scenery
+      broadcaster.subscribe(new SseEmitter(), Set.of(1L), List.of());
+      broadcaster.subscribe(new SseEmitter(), Set.of(1L), List.of());
+
+      // execution
+      Throwable exception = catchThrowable(() -> broadcaster.subscribe(new SseEmitter(), Set.of(1L), List.of()));
+
+      // validation
+      assertThat(exception).isInstanceOf(ServiceOverloadedException.class);
+   }
+
+   @Test
+   @DisplayName("Should admit no more subscribers than the connections left by Tomcat")
+   void maxConnectionsTest() {
+      // scenery
+      ProductStockBroadcaster capped = new ProductStockBroadcaster(new SimpleMeterRegistry(), 1, 100,
+              Duration.ofMinutes(1), Duration.ofMillis(100), 1, 3, 2);
+      capped.subscribe(new SseEmitter(), Set.of(1L), List.of());
+
+      // execution
+      Throwable exception = catchThrowable(() -> capped.subscribe(new SseEmitter(), Set.of(1L), List.of()));
+
+      // validation
+      assertThat(exception).isInstanceOf(ServiceOverloadedException.class);
+      assertThat(capped.subscriberCount()).isEqualTo(1);
+      capped.destroy();
+   }
+
+   @Test
+   @DisplayName("Should not admit more than the maximum when subscribers arrive together")
+   void concurrentSubscribeTest() throws Exception {
+      // scenery
+      ExecutorService clients = Executors.newFixedThreadPool(8);
+      CountDownLatch start = new CountDownLatch(1);
+      AtomicInteger refused = new AtomicInteger();
+
+      // execution
+      for (int i = 0; i < 64; i++) {
+         clients.execute(() -> {
+            try {
+               start.await();
+               broadcaster.subscribe(new SseEmitter(), Set.of(1L), List.of());
+            } catch (ServiceOverloadedException ex) {
+               refused.incrementAndGet();
+            } catch (InterruptedException ex) {
+               Thread.currentThread().interrupt();
+            }
+         });
+      }
+      start.countDown();
+      clients.shutdown();
+      assertThat(clients.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+      // validation
+      assertThat(broadcaster.subscriberCount()).isEqualTo(2);
+      assertThat(refused.get()).isEqualTo(62);
+   }
+
+   private static Product product(Long id, int quantity, long version) {
+      Product product = createValidProduct();
+      product.setId(id);
+      product.setQuantity(quantity);
+      product.setVersion(version);
+      return product;
+   }
+
+   static class CapturingEmitter extends SseEmitter {
+
+      final List<ProductStockDTO> events = new CopyOnWriteArrayList<>();
+
+      final CountDownLatch sending = new CountDownLatch(1);
+
+      final CountDownLatch release;
+
+      CapturingEmitter(CountDownLatch release) {
+         this.release = release;
+      }
+
+      @Override
+      public void send(SseEventBuilder builder) throws IOException {
+         sending.countDown();
+         try {
+            if (release != null) {
+               release.await(5, TimeUnit.SECONDS);
+            }
+         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+         }
+         builder.build().stream()
+                 .map(DataWithMediaType::getData)
+                 .filter(ProductStockDTO.class::isInstance)
+                 .map(ProductStockDTO.class::cast)
+                 .forEach(events::add);
+      }
+
+      void awaitEvents(int count) throws InterruptedException {
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+         while (events.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+         }
+      }
+
+   }
+
+}